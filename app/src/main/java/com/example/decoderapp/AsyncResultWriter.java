@@ -0,0 +1,138 @@
+package com.example.decoderapp;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes result files off the compute thread.
+ *
+ * Writes run in submission order on one background thread through the
+ * NIO writers (NpyWriter / ObjWriter / PlyWriter). The submitter hands
+ * over ownership of the arrays: they must not be modified after the
+ * call. At most {@code capacity} writes may be queued; beyond that
+ * submit blocks, so a fast producer cannot pile up hundreds of MB of
+ * grids waiting for flash.
+ *
+ * Each submit returns a CompletableFuture that completes with the file
+ * (or the IOException). close() flushes everything that was queued.
+ *
+ * Usage:
+ *   writer.writeNpy(file, grid, new int[]{128, 128, 128, 4})
+ *         .thenAccept(f -&gt; Log.i(TAG, "saved " + f));
+ */
+public final class AsyncResultWriter implements Closeable {
+
+    private static final String TAG = "AsyncResultWriter";
+
+    /** One write; runs on the writer thread */
+    public interface Job {
+        void write(File target) throws IOException;
+    }
+
+    private final ExecutorService thread;
+    private final int capacity;
+    private final Semaphore slots;
+    private volatile boolean closed;
+
+    public AsyncResultWriter(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("capacity must be > 0: " + capacity);
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+        this.thread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ResultWriter");
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /** Queues job; blocks while capacity writes are already pending */
+    public CompletableFuture<File> submit(File target, Job job) {
+        if (closed) throw new IllegalStateException("writer closed");
+        try {
+            slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            CompletableFuture<File> f = new CompletableFuture<>();
+            f.completeExceptionally(e);
+            return f;
+        }
+
+        CompletableFuture<File> done = new CompletableFuture<>();
+        try {
+            thread.execute(() -> {
+                long t0 = System.nanoTime();
+                try {
+                    job.write(target);
+                    Log.i(TAG, String.format("💾 %s written in %.1f ms", target.getName(), (System.nanoTime() - t0) / 1e6));
+                    done.complete(target);
+                } catch (Throwable e) {
+                    Log.e(TAG, "Write failed: " + target, e);
+                    done.completeExceptionally(e);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+        return done;
+    }
+
+    public CompletableFuture<File> writeNpy(File target, float[] data, int[] shape) {
+        return submit(target, f -> NpyWriter.writeNpy(f.getAbsolutePath(), data, shape));
+    }
+
+    public CompletableFuture<File> writeObj(File target, float[] vertices, int[] faces) {
+        return submit(target, f -> ObjWriter.shared().write(f.getAbsolutePath(), vertices, faces));
+    }
+
+    public CompletableFuture<File> writePly(File target, float[] vertices, int[] faces) {
+        return submit(target, f -> PlyWriter.writePly(f.getAbsolutePath(), vertices, faces));
+    }
+
+    /** Writes queued or in progress */
+    public int pending() {
+        return capacity - slots.availablePermits();
+    }
+
+    /** Waits until everything submitted before this call is on disk */
+    public void flush() throws IOException {
+        try {
+            thread.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("flush interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("flush failed", e.getCause());
+        }
+    }
+
+    /** Flushes, then stops the writer thread; waits at most timeoutMs */
+    public void close(long timeoutMs) throws IOException {
+        closed = true;
+        thread.shutdown();
+        try {
+            if (!thread.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new IOException("pending writes did not finish in " + timeoutMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("close interrupted", e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        close(Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.decoderapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Axis-aligned box of marching cubes cells [x0,x1) × [y0,y1) × [z0,z1).
+ * Cell (x,y,z) spans voxels x..x+1, y..y+1, z..z+1.
+ */
+public final class CellBox {
+    public final int x0, y0, z0, x1, y1, z1;
+
+    public CellBox(int x0, int y0, int z0, int x1, int y1, int z1) {
+        this.x0 = x0; this.y0 = y0; this.z0 = z0;
+        this.x1 = x1; this.y1 = y1; this.z1 = z1;
+    }
+
+    public boolean isEmpty() {
+        return x1 <= x0 || y1 <= y0 || z1 <= z0;
+    }
+
+    public int cellCount() {
+        return isEmpty() ? 0 : (x1 - x0) * (y1 - y0) * (z1 - z0);
+    }
+
+    /** Split into bricks of up to n×n×n cells, in z, y, x order */
+    public List<CellBox> bricks(int n) {
+        if (n <= 0) throw new IllegalArgumentException("brick size must be > 0: " + n);
+        List<CellBox> out = new ArrayList<>();
+        for (int z = z0; z < z1; z += n)
+            for (int y = y0; y < y1; y += n)
+                for (int x = x0; x < x1; x += n)
+                    out.add(new CellBox(x, y, z,
+                            Math.min(x + n, x1), Math.min(y + n, y1), Math.min(z + n, z1)));
+        return out;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + x0 + "," + x1 + ")x[" + y0 + "," + y1 + ")x[" + z0 + "," + z1 + ")";
+    }
+}
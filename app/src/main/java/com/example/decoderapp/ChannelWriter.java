@@ -0,0 +1,113 @@
+package com.example.decoderapp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Little-endian bulk writes into a FileChannel through one reusable
+ * direct staging buffer. Arrays are copied into the staging buffer with
+ * bulk FloatBuffer / IntBuffer puts, never element by element.
+ */
+final class ChannelWriter implements Closeable {
+
+    static final int DEFAULT_BUFFER = 1 << 20;
+
+    private final FileChannel ch;
+    private final ByteBuffer buf;
+
+    ChannelWriter(FileChannel ch) {
+        this(ch, DEFAULT_BUFFER);
+    }
+
+    ChannelWriter(FileChannel ch, int bufferBytes) {
+        this(ch, ByteBuffer.allocateDirect(Math.max(bufferBytes, 64)));
+    }
+
+    /** Writes through a caller-owned staging buffer (cleared here), so it can be reused across files */
+    ChannelWriter(FileChannel ch, ByteBuffer staging) {
+        this.ch = ch;
+        this.buf = staging;
+        buf.clear();
+        buf.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /** Staging buffer with at least n bytes free, for small hand-packed records */
+    ByteBuffer reserve(int n) throws IOException {
+        if (buf.remaining() < n) flush();
+        return buf;
+    }
+
+    void put(byte[] b) throws IOException {
+        put(b, 0, b.length);
+    }
+
+    void put(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buf.hasRemaining()) flush();
+            int n = Math.min(buf.remaining(), len);
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    void putZeros(int n) throws IOException {
+        for (int i = 0; i < n; i++) reserve(1).put((byte) 0);
+    }
+
+    void putFloats(float[] a, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buf.remaining() < 4) flush();
+            int n = Math.min(buf.remaining() / 4, len);
+            buf.asFloatBuffer().put(a, off, n);
+            buf.position(buf.position() + n * 4);
+            off += n;
+            len -= n;
+        }
+    }
+
+    void putFloats(FloatBuffer src) throws IOException {
+        FloatBuffer in = src.duplicate();
+        while (in.hasRemaining()) {
+            if (buf.remaining() < 4) flush();
+            int n = Math.min(buf.remaining() / 4, in.remaining());
+            FloatBuffer part = in.duplicate();
+            part.limit(part.position() + n);
+            buf.asFloatBuffer().put(part);
+            buf.position(buf.position() + n * 4);
+            in.position(in.position() + n);
+        }
+    }
+
+    void putInts(int[] a, int off, int len) throws IOException {
+        while (len > 0) {
+            if (buf.remaining() < 4) flush();
+            int n = Math.min(buf.remaining() / 4, len);
+            buf.asIntBuffer().put(a, off, n);
+            buf.position(buf.position() + n * 4);
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** File offset of the next byte written */
+    long position() throws IOException {
+        return ch.position() + buf.position();
+    }
+
+    void flush() throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) ch.write(buf);
+        buf.clear();
+    }
+
+    /** Flushes; the channel itself is owned by the caller */
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
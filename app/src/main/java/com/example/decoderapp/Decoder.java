@@ -4,16 +4,39 @@ import android.content.Context;
 import android.os.Environment;
 import android.util.Log;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import ai.onnxruntime.*;
 
 public class Decoder {
     private OrtEnvironment env;
-    private OrtSession session;
+    private volatile OrtSession session;
+    private DiskCache cache;
+    private int intraOpThreads;
+    /* intra-op threads the loaded session was created with */
+    private int sessionThreads;
+    /* decodes share the session (read); loading or closing it waits for them (write) */
+    private final ReentrantReadWriteLock sessionLock = new ReentrantReadWriteLock();
+    private String modelId = "decoder_feature_ae";
 
+    /* NCDHW staging for DHWC inputs, one per decoding thread */
+    private static final ThreadLocal<FloatBuffer> INPUT = new ThreadLocal<FloatBuffer>() {
+        @Override
+        protected FloatBuffer initialValue() {
+            return ByteBuffer.allocateDirect(128 * 64 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    };
+
+    /** Loads the model; returns at once when already loaded with the current intra-op thread count */
     public boolean initModel(Context ctx) {
+        sessionLock.writeLock().lock();
         try {
+            if (session != null && sessionThreads == intraOpThreads) return true;
+            close();
             env = OrtEnvironment.getEnvironment();
 
             // assets/decoder_feature_ae.onnx  ← 刚导出的那个 (输入 1x128x4x4x4, 输出 1x4x128x128x128)
@@ -23,7 +46,12 @@ public class Decoder {
             while ((n = is.read(buf)) > 0) baos.write(buf, 0, n);
             is.close();
 
-            session = env.createSession(baos.toByteArray(), new OrtSession.SessionOptions());
+            byte[] model = baos.toByteArray();
+            modelId = "decoder_feature_ae-" + DiskCache.digest(model);
+            OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+            if (intraOpThreads > 0) opts.setIntraOpNumThreads(intraOpThreads);
+            session = env.createSession(model, opts);
+            sessionThreads = intraOpThreads;
             Log.i("DecoderApp", "✅ ONNX Loaded");
             for (NodeInfo info : session.getInputInfo().values()) {
                 TensorInfo ti = (TensorInfo) info.getInfo();
@@ -37,6 +65,33 @@ public class Decoder {
         } catch (Exception e) {
             Log.e("DecoderApp", "Model Load ERR: ", e);
             return false;
+        } finally {
+            sessionLock.writeLock().unlock();
+        }
+    }
+
+    /** ONNX intra-op threads (0 = ONNX Runtime default, one per core); the next initModel reloads a loaded session when this changes it */
+    public void setIntraOpThreads(int threads) {
+        this.intraOpThreads = Math.max(0, threads);
+    }
+
+    public boolean isLoaded() {
+        return session != null;
+    }
+
+    /** Releases the session once decodes in flight finish; initModel loads it again */
+    public void close() {
+        sessionLock.writeLock().lock();
+        try {
+            if (session == null) return;
+            try {
+                session.close();
+            } catch (OrtException e) {
+                Log.w("DecoderApp", "Session close failed", e);
+            }
+            session = null;
+        } finally {
+            sessionLock.writeLock().unlock();
         }
     }
 
@@ -58,6 +113,11 @@ public class Decoder {
     public static class DecodeResult {
         public float[] data;
         public double prepMs, inferMs, flattenMs, totalMs;
+        /** DiskCache key of this grid (null without a cache); pass to MarchingCubes.generate(cache, key) */
+        public String cacheKey;
+        public boolean fromCache;
+        /** LatentGate found the latent unchanged: data and cacheKey are the previous frame's */
+        public boolean reused;
 
         public DecodeResult(float[] data, double prepMs, double inferMs, double flattenMs, double totalMs) {
             this.data = data;
@@ -75,37 +135,129 @@ public class Decoder {
                             "Flatten: %.2f ms\n" +
                             "Total: %.2f ms",
                     prepMs, inferMs, flattenMs, totalMs
-            );
+            ) + (fromCache ? "\n(disk cache hit, ONNX skipped)" : "")
+              + (reused ? "\n(latent unchanged, previous grid reused)" : "");
         }
     }
 
+    /** Decoded grids are looked up in / stored to this cache (null disables it) */
+    public void setCache(DiskCache cache) {
+        this.cache = cache;
+    }
+
+    /** Decodes a latent of either layout; NCDHW goes in as is, DHWC is reordered once */
+    public DecodeResult decodeFeatureGrid(Latent latent) throws Exception {
+        return decodeFeatureGrid(latent, null);
+    }
+
+    /** Same, with gate (may be null) in front: a near-identical latent reuses gate's last decode */
+    public DecodeResult decodeFeatureGrid(Latent latent, LatentGate<DecodeResult> gate) throws Exception {
+        if (latent.channels != 128) {
+            throw new IllegalArgumentException("Decoder needs a 128-channel latent, got " + latent);
+        }
+        return decodeFeatureGrid(FloatBuffer.wrap(latent.data), latent.layout, gate);
+    }
+
+    /**
+     * DHWC input (e.g. an Interpolator.interpolateViews frame) is reordered
+     * straight into a per-thread direct input buffer, so no float[] is
+     * created between interpolation and decode.
+     */
+    public DecodeResult decodeFeatureGrid(FloatBuffer latent, Latent.Layout layout) throws Exception {
+        return decodeFeatureGrid(latent, layout, null);
+    }
+
+    public DecodeResult decodeFeatureGrid(FloatBuffer latent, Latent.Layout layout, LatentGate<DecodeResult> gate) throws Exception {
+        if (layout == Latent.Layout.NCDHW) return decodeFeatureGrid(latent, gate);
+        FloatBuffer ncdhw = INPUT.get();
+        Latent.reorder(latent, 128, Latent.Layout.DHWC, ncdhw);
+        return decodeFeatureGrid(ncdhw, gate);
+    }
+
     public DecodeResult decodeFeatureGrid(float[] ncdhw) throws Exception {
-        String inName = session.getInputNames().iterator().next();
-        long[] shape = {1,128,4,4,4};
+        return decodeFeatureGrid(FloatBuffer.wrap(ncdhw));
+    }
+
+    /**
+     * Same as the float[] version; a direct native-order NCDHW buffer
+     * becomes the input tensor without a copy. Reads
+     * [position, position + 128*64) without moving it.
+     */
+    public DecodeResult decodeFeatureGrid(FloatBuffer ncdhw) throws Exception {
+        return decodeFeatureGrid(ncdhw, (LatentGate<DecodeResult>) null);
+    }
 
+    /**
+     * Gated decode: the gate is an argument rather than decoder state, so
+     * one loaded session serves both the gated playback path and the
+     * one-shot decodes that must run every time.
+     */
+    public DecodeResult decodeFeatureGrid(FloatBuffer ncdhw, LatentGate<DecodeResult> gate) throws Exception {
         long t0 = System.nanoTime();
+        FloatBuffer latent = ncdhw.duplicate();
+        latent.limit(latent.position() + 128 * 64);
 
-        // 构建 tensor
-        OnnxTensor input = OnnxTensor.createTensor(env, FloatBuffer.wrap(ncdhw), shape);
-        long tTensor = System.nanoTime();
+        if (gate != null) {
+            DecodeResult prev = gate.reuse(latent);
+            if (prev != null) {
+                double checkMs = (System.nanoTime() - t0) / 1e6;
+                DecodeResult same = new DecodeResult(prev.data, 0, 0, 0, checkMs);
+                same.cacheKey = prev.cacheKey;
+                same.reused = true;
+                return same;
+            }
+        }
+
+        String key = cache != null ? DiskCache.key(modelId, 128, "ncdhw", latent) : null;
+        if (key != null) {
+            FloatBuffer cached = cache.getGrid(key, 128, 128, 128, 4);
+            if (cached != null) {
+                // memory-tier hits are whole heap arrays: no copy
+                boolean whole = cached.hasArray() && cached.remaining() == cached.array().length;
+                float[] dhwc = whole ? cached.array() : new float[cached.remaining()];
+                if (!whole) cached.get(dhwc);
+                double loadMs = (System.nanoTime() - t0) / 1e6;
+                DecodeResult hit = new DecodeResult(dhwc, 0, 0, loadMs, loadMs);
+                hit.cacheKey = key;
+                hit.fromCache = true;
+                if (gate != null) gate.decoded(latent, hit, loadMs);
+                return hit;
+            }
+        }
+
+        float[] dhwc;
+        long tTensor, tInfer, tFlatten;
+        sessionLock.readLock().lock();
+        try {
+            OrtSession session = this.session;
+            if (session == null) throw new IllegalStateException("Model not initialized");
+            String inName = session.getInputNames().iterator().next();
+            long[] shape = {1,128,4,4,4};
 
-        // 推理
-        OrtSession.Result result = session.run(Collections.singletonMap(inName, input));
-        long tInfer = System.nanoTime();
+            // 构建 tensor
+            OnnxTensor input = OnnxTensor.createTensor(env, latent, shape);
+            tTensor = System.nanoTime();
 
-        // 扁平化
-        float[][][][][] out5 = (float[][][][][]) result.get(0).getValue();
-        float[] dhwc = new float[128*128*128*4];
-        int i = 0;
-        for (int z=0; z<128; z++)
-            for (int h=0; h<128; h++)
-                for (int w=0; w<128; w++)
-                    for (int c=0; c<4; c++)
-                        dhwc[i++] = out5[0][c][z][h][w];
-        long tFlatten = System.nanoTime();
+            // 推理
+            OrtSession.Result result = session.run(Collections.singletonMap(inName, input));
+            tInfer = System.nanoTime();
 
-        input.close();
-        result.close();
+            // 扁平化
+            float[][][][][] out5 = (float[][][][][]) result.get(0).getValue();
+            dhwc = new float[128*128*128*4];
+            int i = 0;
+            for (int z=0; z<128; z++)
+                for (int h=0; h<128; h++)
+                    for (int w=0; w<128; w++)
+                        for (int c=0; c<4; c++)
+                            dhwc[i++] = out5[0][c][z][h][w];
+            tFlatten = System.nanoTime();
+
+            input.close();
+            result.close();
+        } finally {
+            sessionLock.readLock().unlock();
+        }
 
         double prepMs = (tTensor - t0) / 1e6;
         double inferMs = (tInfer - tTensor) / 1e6;
@@ -116,15 +268,17 @@ public class Decoder {
                 "🧠 ONNX detail — tensor: %.2f ms, infer: %.2f ms, flatten: %.2f ms, total: %.2f ms",
                 prepMs, inferMs, flattenMs, totalMs));
 
-        return new DecodeResult(dhwc, prepMs, inferMs, flattenMs, totalMs);
+        if (key != null) cache.putGrid(key, dhwc, new int[]{128, 128, 128, 4});
+        DecodeResult res = new DecodeResult(dhwc, prepMs, inferMs, flattenMs, totalMs);
+        res.cacheKey = key;
+        if (gate != null) gate.decoded(latent, res, res.totalMs);
+        return res;
     }
 
     /** Step 2: Save to Download folder, DecoderAppResults/DecodedNPY subfolder */
     public File saveDecodedNpy(float[] decoded_dhwc) throws IOException {
         long t0 = System.currentTimeMillis();
-        File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), "DecoderAppResults/DecodedNPY128");
-        if (!dir.exists()) dir.mkdirs();
-        File npy = new File(dir, "decoder_debug_" + System.currentTimeMillis() + ".npy");
+        File npy = decodedNpyFile();
 
         NpyWriter.writeNpy(npy.getAbsolutePath(), decoded_dhwc, new int[]{128,128,128,4});
         long t1 = System.currentTimeMillis();
@@ -133,4 +287,15 @@ public class Decoder {
         Log.i("DecoderApp", "✅ Saved: " + npy.getAbsolutePath());
         return npy;
     }
+
+    /** Step 2 (async): hands decoded_dhwc to the writer thread; do not modify it afterwards */
+    public CompletableFuture<File> saveDecodedNpyAsync(float[] decoded_dhwc, AsyncResultWriter writer) {
+        return writer.writeNpy(decodedNpyFile(), decoded_dhwc, new int[]{128,128,128,4});
+    }
+
+    private static File decodedNpyFile() {
+        File dir = new File(Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS), "DecoderAppResults/DecodedNPY128");
+        if (!dir.exists()) dir.mkdirs();
+        return new File(dir, "decoder_debug_" + System.currentTimeMillis() + ".npy");
+    }
 }
@@ -4,8 +4,12 @@ import android.content.Context;
 import android.os.Environment;
 import android.util.Log;
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import ai.onnxruntime.*;
 
 /**
@@ -14,13 +18,32 @@ import ai.onnxruntime.*;
 public class Decoder64 {
 
     private OrtEnvironment env;
-    private OrtSession session;
+    private volatile OrtSession session;
+    private DiskCache cache;
+    private int intraOpThreads;
+    /* intra-op threads the loaded session was created with */
+    private int sessionThreads;
+    /* decodes share the session (read); loading or closing it waits for them (write) */
+    private final ReentrantReadWriteLock sessionLock = new ReentrantReadWriteLock();
+    private String modelId = "decoder_feature64";
+
+    /* NCDHW staging for DHWC inputs, one per decoding thread */
+    private static final ThreadLocal<FloatBuffer> INPUT = new ThreadLocal<FloatBuffer>() {
+        @Override
+        protected FloatBuffer initialValue() {
+            return ByteBuffer.allocateDirect(64 * 64 * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+        }
+    };
 
     /** -----------------------------
-     *  Load ONNX model (assets/decoder_feature64.onnx)
+     *  Load ONNX model (assets/decoder_feature64.onnx); returns at once
+     *  when already loaded with the current intra-op thread count
      *  ----------------------------- */
     public boolean initModel(Context ctx) {
+        sessionLock.writeLock().lock();
         try {
+            if (session != null && sessionThreads == intraOpThreads) return true;
+            close();
             env = OrtEnvironment.getEnvironment();
 
             InputStream is = ctx.getAssets().open("decoder_feature64.onnx");
@@ -30,18 +53,55 @@ public class Decoder64 {
             while ((n = is.read(buf)) > 0) baos.write(buf, 0, n);
             is.close();
 
-            session = env.createSession(baos.toByteArray(), new OrtSession.SessionOptions());
+            byte[] model = baos.toByteArray();
+            modelId = "decoder_feature64-" + DiskCache.digest(model);
+            OrtSession.SessionOptions opts = new OrtSession.SessionOptions();
+            if (intraOpThreads > 0) opts.setIntraOpNumThreads(intraOpThreads);
+            session = env.createSession(model, opts);
+            sessionThreads = intraOpThreads;
             Log.i("DecoderApp", "✅ Decoder64 ONNX Loaded");
 
             return true;
         } catch (Exception e) {
             Log.e("DecoderApp", "❌ Decoder64 Load ERR", e);
             return false;
+        } finally {
+            sessionLock.writeLock().unlock();
         }
     }
 
 
 
+    /** -----------------------------
+     *  ONNX intra-op threads (0 = ONNX Runtime default, one per core);
+     *  the next initModel reloads a loaded session when this changes it
+     *  ----------------------------- */
+    public void setIntraOpThreads(int threads) {
+        this.intraOpThreads = Math.max(0, threads);
+    }
+
+    public boolean isLoaded() {
+        return session != null;
+    }
+
+    /** -----------------------------
+     *  Release the session once decodes in flight finish; initModel loads it again
+     *  ----------------------------- */
+    public void close() {
+        sessionLock.writeLock().lock();
+        try {
+            if (session == null) return;
+            try {
+                session.close();
+            } catch (OrtException e) {
+                Log.w("DecoderApp", "Decoder64 session close failed", e);
+            }
+            session = null;
+        } finally {
+            sessionLock.writeLock().unlock();
+        }
+    }
+
     /** -----------------------------
      *  (4,4,4,64) DHWC → (1,64,4,4,4) NCDHW
      *  ----------------------------- */
@@ -68,6 +128,11 @@ public class Decoder64 {
     public static class DecodeResult {
         public float[] data;
         public double prepMs, inferMs, flattenMs, totalMs;
+        /** DiskCache key of this grid (null without a cache); pass to MarchingCubes.generate(cache, key) */
+        public String cacheKey;
+        public boolean fromCache;
+        /** LatentGate found the latent unchanged: data and cacheKey are the previous frame's */
+        public boolean reused;
 
         public DecodeResult(float[] data, double prepMs, double inferMs, double flattenMs, double totalMs) {
             this.data = data;
@@ -85,53 +150,152 @@ public class Decoder64 {
                             "Flatten: %.2f ms\n" +
                             "Total: %.2f ms",
                     prepMs, inferMs, flattenMs, totalMs
-            );
+            ) + (fromCache ? "\n(disk cache hit, ONNX skipped)" : "")
+              + (reused ? "\n(latent unchanged, previous grid reused)" : "");
         }
     }
 
 
 
     /** -----------------------------
-     *  Run ONNX: input (1,64,4,4,4) → output (1,4,64,64,64)
+     *  Decoded grids are looked up in / stored to this cache (null disables it)
      *  ----------------------------- */
-    public DecodeResult decodeFeatureGrid64(float[] ncdhw) throws Exception {
-        String inName = session.getInputNames().iterator().next();
-        long[] shape = {1, 64, 4, 4, 4};
+    public void setCache(DiskCache cache) {
+        this.cache = cache;
+    }
 
-        long t0 = System.nanoTime();
+    /** Decodes a latent of either layout; NCDHW goes in as is, DHWC is reordered once */
+    public DecodeResult decodeFeatureGrid64(Latent latent) throws Exception {
+        return decodeFeatureGrid64(latent, null);
+    }
 
-        // tensor
-        OnnxTensor input = OnnxTensor.createTensor(env, FloatBuffer.wrap(ncdhw), shape);
-        long tTensor = System.nanoTime();
+    /** Same, with gate (may be null) in front: a near-identical latent reuses gate's last decode */
+    public DecodeResult decodeFeatureGrid64(Latent latent, LatentGate<DecodeResult> gate) throws Exception {
+        if (latent.channels != 64) {
+            throw new IllegalArgumentException("Decoder needs a 64-channel latent, got " + latent);
+        }
+        return decodeFeatureGrid64(FloatBuffer.wrap(latent.data), latent.layout, gate);
+    }
+
+    /**
+     * DHWC input (e.g. an Interpolator.interpolateViews frame) is reordered
+     * straight into a per-thread direct input buffer, so no float[] is
+     * created between interpolation and decode.
+     */
+    public DecodeResult decodeFeatureGrid64(FloatBuffer latent, Latent.Layout layout) throws Exception {
+        return decodeFeatureGrid64(latent, layout, null);
+    }
+
+    public DecodeResult decodeFeatureGrid64(FloatBuffer latent, Latent.Layout layout, LatentGate<DecodeResult> gate) throws Exception {
+        if (layout == Latent.Layout.NCDHW) return decodeFeatureGrid64(latent, gate);
+        FloatBuffer ncdhw = INPUT.get();
+        Latent.reorder(latent, 64, Latent.Layout.DHWC, ncdhw);
+        return decodeFeatureGrid64(ncdhw, gate);
+    }
+
+    /** -----------------------------
+     *  Run ONNX: input (1,64,4,4,4) → output (1,4,64,64,64)
+     *  ----------------------------- */
+    public DecodeResult decodeFeatureGrid64(float[] ncdhw) throws Exception {
+        return decodeFeatureGrid64(FloatBuffer.wrap(ncdhw));
+    }
 
-        // inference
-        OrtSession.Result result = session.run(Collections.singletonMap(inName, input));
-        long tInfer = System.nanoTime();
+    /**
+     * Same as the float[] version; a direct native-order NCDHW buffer
+     * becomes the input tensor without a copy. Reads
+     * [position, position + 64*64) without moving it.
+     */
+    public DecodeResult decodeFeatureGrid64(FloatBuffer ncdhw) throws Exception {
+        return decodeFeatureGrid64(ncdhw, (LatentGate<DecodeResult>) null);
+    }
 
-        // flatten (DHWC)
-        float[][][][][] out5 = (float[][][][][]) result.get(0).getValue();
-        float[] dhwc = new float[64 * 64 * 64 * 4];
-        int i = 0;
+    /**
+     * Gated decode: the gate is an argument rather than decoder state, so
+     * one loaded session serves both the gated playback path and the
+     * one-shot decodes that must run every time.
+     */
+    public DecodeResult decodeFeatureGrid64(FloatBuffer ncdhw, LatentGate<DecodeResult> gate) throws Exception {
+        long t0 = System.nanoTime();
+        FloatBuffer latent = ncdhw.duplicate();
+        latent.limit(latent.position() + 64 * 64);
+
+        if (gate != null) {
+            DecodeResult prev = gate.reuse(latent);
+            if (prev != null) {
+                double checkMs = (System.nanoTime() - t0) / 1e6;
+                DecodeResult same = new DecodeResult(prev.data, 0, 0, 0, checkMs);
+                same.cacheKey = prev.cacheKey;
+                same.reused = true;
+                return same;
+            }
+        }
 
-        for (int z = 0; z < 64; z++)
-            for (int y = 0; y < 64; y++)
-                for (int x = 0; x < 64; x++)
-                    for (int c = 0; c < 4; c++)
-                        dhwc[i++] = out5[0][c][z][y][x];
+        String key = cache != null ? DiskCache.key(modelId, 64, "ncdhw", latent) : null;
+        if (key != null) {
+            FloatBuffer cached = cache.getGrid(key, 64, 64, 64, 4);
+            if (cached != null) {
+                // memory-tier hits are whole heap arrays: no copy
+                boolean whole = cached.hasArray() && cached.remaining() == cached.array().length;
+                float[] dhwc = whole ? cached.array() : new float[cached.remaining()];
+                if (!whole) cached.get(dhwc);
+                double loadMs = (System.nanoTime() - t0) / 1e6;
+                DecodeResult hit = new DecodeResult(dhwc, 0, 0, loadMs, loadMs);
+                hit.cacheKey = key;
+                hit.fromCache = true;
+                if (gate != null) gate.decoded(latent, hit, loadMs);
+                return hit;
+            }
+        }
 
-        long tFlatten = System.nanoTime();
+        float[] dhwc;
+        long tTensor, tInfer, tFlatten;
+        sessionLock.readLock().lock();
+        try {
+            OrtSession session = this.session;
+            if (session == null) throw new IllegalStateException("Model not initialized");
+            String inName = session.getInputNames().iterator().next();
+            long[] shape = {1, 64, 4, 4, 4};
+
+            // tensor
+            OnnxTensor input = OnnxTensor.createTensor(env, latent, shape);
+            tTensor = System.nanoTime();
+
+            // inference
+            OrtSession.Result result = session.run(Collections.singletonMap(inName, input));
+            tInfer = System.nanoTime();
+
+            // flatten (DHWC)
+            float[][][][][] out5 = (float[][][][][]) result.get(0).getValue();
+            dhwc = new float[64 * 64 * 64 * 4];
+            int i = 0;
+
+            for (int z = 0; z < 64; z++)
+                for (int y = 0; y < 64; y++)
+                    for (int x = 0; x < 64; x++)
+                        for (int c = 0; c < 4; c++)
+                            dhwc[i++] = out5[0][c][z][y][x];
+
+            tFlatten = System.nanoTime();
+
+            input.close();
+            result.close();
+        } finally {
+            sessionLock.readLock().unlock();
+        }
 
-        input.close();
-        result.close();
+        if (key != null) cache.putGrid(key, dhwc, new int[]{64, 64, 64, 4});
 
         // timing
-        return new DecodeResult(
+        DecodeResult res = new DecodeResult(
                 dhwc,
                 (tTensor - t0) / 1e6,
                 (tInfer - tTensor) / 1e6,
                 (tFlatten - tInfer) / 1e6,
                 (tFlatten - t0) / 1e6
         );
+        res.cacheKey = key;
+        if (gate != null) gate.decoded(latent, res, res.totalMs);
+        return res;
     }
 
 
@@ -140,17 +304,28 @@ public class Decoder64 {
      *  Save decoded NPY (64×64×64×4)
      *  ----------------------------- */
     public File saveDecodedNpy64(float[] decoded_dhwc) throws IOException {
+        File npy = decodedNpyFile64();
+
+        NpyWriter.writeNpy(npy.getAbsolutePath(), decoded_dhwc, new int[]{64, 64, 64, 4});
+
+        Log.i("DecoderApp", "💾 Saved 64-ch NPY: " + npy.getAbsolutePath());
+        return npy;
+    }
+
+    /** -----------------------------
+     *  Same, on the writer thread (decoded_dhwc is handed over)
+     *  ----------------------------- */
+    public CompletableFuture<File> saveDecodedNpy64Async(float[] decoded_dhwc, AsyncResultWriter writer) {
+        return writer.writeNpy(decodedNpyFile64(), decoded_dhwc, new int[]{64, 64, 64, 4});
+    }
+
+    private static File decodedNpyFile64() {
         File dir = new File(
                 Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DOWNLOADS),
                 "DecoderAppResults/DecodedNPY64"
         );
         if (!dir.exists()) dir.mkdirs();
 
-        File npy = new File(dir, "decoder64_" + System.currentTimeMillis() + ".npy");
-
-        NpyWriter.writeNpy(npy.getAbsolutePath(), decoded_dhwc, new int[]{64, 64, 64, 4});
-
-        Log.i("DecoderApp", "💾 Saved 64-ch NPY: " + npy.getAbsolutePath());
-        return npy;
+        return new File(dir, "decoder64_" + System.currentTimeMillis() + ".npy");
     }
 }
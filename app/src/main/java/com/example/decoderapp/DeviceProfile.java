@@ -0,0 +1,327 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Consumer;
+
+/**
+ * Measured decode + mesh throughput of this device at 64³ and 128³, and
+ * the default resolution and ONNX thread counts picked from it for a
+ * target frame rate.
+ *
+ * calibrate() decodes a small latent set with each candidate intra-op
+ * thread count (1, 2, 4, all cores) and meshes the grids, with the
+ * DiskCache and LatentGate bypassed so only real work is timed. Decode
+ * time does not depend on the latent, but mesh time follows the surface
+ * area: noise decodes to a grid full of small blobs, far from a capture.
+ * Pass a real latent per resolution (e.g. the file the user picked) and
+ * the meshes are timed on it; without one the resolution falls back to
+ * seeded noise and is marked as such (sampled64 / sampled128). The
+ * highest resolution whose decode + mesh time meets the target wins;
+ * when neither does, 64³ is the fallback. A resolution whose model does
+ * not load is skipped.
+ *
+ * Profiles are saved in SharedPreferences under the build fingerprint,
+ * so a restored backup or an OS update triggers a new calibration, as
+ * do a changed target and profiles older than MAX_AGE_MS.
+ *
+ * Usage:
+ *   DeviceProfile p = DeviceProfile.load(ctx);
+ *   if (p == null || p.isStale(targetFps)) p = DeviceProfile.calibrate(ctx, targetFps, null).save(ctx);
+ *   decoder.setIntraOpThreads(p.threads128);
+ */
+public final class DeviceProfile {
+
+    private static final String TAG = "DeviceProfile";
+    private static final String PREFS = "device_profile";
+    private static final int VERSION = 2;
+
+    /** Recalibrate after a week: thermal state, background load and ORT updates drift */
+    public static final long MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+    /** Latents decoded per resolution and thread count; the first one is also the warm-up */
+    static final int LATENTS = 3;
+
+    /** Build fingerprint the profile was measured on */
+    public final String device;
+    public final float targetFps;
+    /** Recommended decode resolution: 64, 128, or 0 when no model loaded */
+    public final int resolution;
+    /** Fastest intra-op thread count per resolution (0 = not measured) */
+    public final int threads64, threads128;
+    /** Decode and mesh time per frame at the best thread count, NaN if not measured */
+    public final double decodeMs64, meshMs64, decodeMs128, meshMs128;
+    /** Mesh time measured on a real latent rather than synthetic noise */
+    public final boolean sampled64, sampled128;
+    public final long measuredAt;
+
+    DeviceProfile(String device, float targetFps, int threads64, double decodeMs64, double meshMs64, boolean sampled64,
+                  int threads128, double decodeMs128, double meshMs128, boolean sampled128, long measuredAt) {
+        this.device = device;
+        this.targetFps = targetFps;
+        this.threads64 = threads64;
+        this.decodeMs64 = decodeMs64;
+        this.meshMs64 = meshMs64;
+        this.sampled64 = sampled64;
+        this.threads128 = threads128;
+        this.decodeMs128 = decodeMs128;
+        this.meshMs128 = meshMs128;
+        this.sampled128 = sampled128;
+        this.measuredAt = measuredAt;
+        this.resolution = choose(targetFps, decodeMs64 + meshMs64, decodeMs128 + meshMs128);
+    }
+
+    /** 128 if it meets the target, else 64 if measured, else whichever loaded */
+    static int choose(float targetFps, double frameMs64, double frameMs128) {
+        double budget = 1000.0 / targetFps;
+        if (frameMs128 <= budget) return 128;
+        if (!Double.isNaN(frameMs64)) return 64;
+        return Double.isNaN(frameMs128) ? 0 : 128;
+    }
+
+    /** Sustained frames per second at resolution (decode then mesh, back to back) */
+    public double fps(int resolution) {
+        double ms = resolution == 128 ? decodeMs128 + meshMs128 : decodeMs64 + meshMs64;
+        return 1000.0 / ms;
+    }
+
+    public boolean meetsTarget() {
+        return resolution != 0 && fps(resolution) >= targetFps;
+    }
+
+    /** Intra-op threads to use at resolution */
+    public int threads(int resolution) {
+        return resolution == 128 ? threads128 : threads64;
+    }
+
+    /** Measured on another build, for another target, or too long ago */
+    public boolean isStale(float targetFps) {
+        return !device.equals(fingerprint())
+                || this.targetFps != targetFps
+                || System.currentTimeMillis() - measuredAt > MAX_AGE_MS;
+    }
+
+    @Override
+    public String toString() {
+        return line(64, decodeMs64, meshMs64, threads64, sampled64) + "\n"
+                + line(128, decodeMs128, meshMs128, threads128, sampled128) + "\n"
+                + (resolution == 0 ? "→ no decoder available"
+                   : String.format("→ %d³ at a %.0f fps target%s", resolution, targetFps, meetsTarget() ? "" : " (below target)"));
+    }
+
+    private String line(int resolution, double decodeMs, double meshMs, int threads, boolean sampled) {
+        if (Double.isNaN(decodeMs)) return resolution + "³: not available";
+        return String.format("%d³: %.1f fps (decode %.1f ms + mesh %.1f ms%s, %d thread%s)",
+                resolution, fps(resolution), decodeMs, meshMs, sampled ? "" : " on noise",
+                threads, threads == 1 ? "" : "s");
+    }
+
+    /* ---------------- persistence ---------------- */
+
+    /** Saved profile, or null if none was saved (check isStale before trusting it) */
+    public static DeviceProfile load(Context ctx) {
+        SharedPreferences p = ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        if (p.getInt("version", 0) != VERSION) return null;
+        return new DeviceProfile(
+                p.getString("device", ""), p.getFloat("targetFps", 0),
+                p.getInt("threads64", 0), p.getFloat("decodeMs64", Float.NaN), p.getFloat("meshMs64", Float.NaN),
+                p.getBoolean("sampled64", false),
+                p.getInt("threads128", 0), p.getFloat("decodeMs128", Float.NaN), p.getFloat("meshMs128", Float.NaN),
+                p.getBoolean("sampled128", false),
+                p.getLong("measuredAt", 0));
+    }
+
+    /** Returns this, for chaining after calibrate() */
+    public DeviceProfile save(Context ctx) {
+        ctx.getSharedPreferences(PREFS, Context.MODE_PRIVATE).edit()
+                .putInt("version", VERSION)
+                .putString("device", device)
+                .putFloat("targetFps", targetFps)
+                .putInt("threads64", threads64)
+                .putFloat("decodeMs64", (float) decodeMs64)
+                .putFloat("meshMs64", (float) meshMs64)
+                .putBoolean("sampled64", sampled64)
+                .putInt("threads128", threads128)
+                .putFloat("decodeMs128", (float) decodeMs128)
+                .putFloat("meshMs128", (float) meshMs128)
+                .putBoolean("sampled128", sampled128)
+                .putLong("measuredAt", measuredAt)
+                .apply();
+        return this;
+    }
+
+    /*
+     * Build and ABIs only: availableProcessors() counts online cores, which
+     * come and go with thermal / power state and would force recalibration
+     */
+    static String fingerprint() {
+        return Build.FINGERPRINT + "/" + TextUtils.join(",", Build.SUPPORTED_ABIS);
+    }
+
+    /* ---------------- calibration ---------------- */
+
+    /** Calibration on synthetic latents, see calibrate(Context, float, Latent, Latent, Consumer) */
+    public static DeviceProfile calibrate(Context ctx, float targetFps, Consumer<String> progress) {
+        return calibrate(ctx, targetFps, null, null, progress);
+    }
+
+    /**
+     * Runs the calibration on the calling thread (seconds, not
+     * milliseconds: keep it off the UI thread). sample64 / sample128, if
+     * not null, are real 64- / 128-channel latents to decode and mesh
+     * instead of noise. progress, if not null, gets a line per step.
+     */
+    public static DeviceProfile calibrate(Context ctx, float targetFps, Latent sample64, Latent sample128,
+                                          Consumer<String> progress) {
+        if (!(targetFps > 0)) throw new IllegalArgumentException("targetFps must be > 0: " + targetFps);
+        List<Integer> threads = candidateThreads(Runtime.getRuntime().availableProcessors());
+
+        double[] r64 = measure(64, threads, latents(sample64, 64), progress, new Bench() {
+            Decoder64 d;
+
+            public boolean load(int threads) {
+                d = new Decoder64();
+                d.setIntraOpThreads(threads);
+                return d.initModel(ctx);
+            }
+
+            public float[] decode(Latent latent) throws Exception {
+                return d.decodeFeatureGrid64(latent).data;
+            }
+
+            public void mesh(float[] grid) {
+                MarchingCubes64.fromDecoderOutput64(grid).generate();
+            }
+
+            public void close() {
+                d.close();
+            }
+        });
+        double[] r128 = measure(128, threads, latents(sample128, 128), progress, new Bench() {
+            Decoder d;
+
+            public boolean load(int threads) {
+                d = new Decoder();
+                d.setIntraOpThreads(threads);
+                return d.initModel(ctx);
+            }
+
+            public float[] decode(Latent latent) throws Exception {
+                return d.decodeFeatureGrid(latent).data;
+            }
+
+            public void mesh(float[] grid) {
+                MarchingCubes.fromDecoderOutput(grid).generate();
+            }
+
+            public void close() {
+                d.close();
+            }
+        });
+
+        DeviceProfile profile = new DeviceProfile(fingerprint(), targetFps,
+                (int) r64[0], r64[1], r64[2], sample64 != null,
+                (int) r128[0], r128[1], r128[2], sample128 != null, System.currentTimeMillis());
+        Log.i(TAG, "Calibrated:\n" + profile);
+        return profile;
+    }
+
+    /** 1, 2, 4 and all cores, whichever exist */
+    static List<Integer> candidateThreads(int cores) {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int t : new int[]{1, 2, 4, cores}) {
+            if (t >= 1 && t <= cores) set.add(t);
+        }
+        return new ArrayList<>(set);
+    }
+
+    /** LATENTS runs of sample, or synthetic latents without one */
+    static List<Latent> latents(Latent sample, int channels) {
+        if (sample == null) return synthetic(channels);
+        if (sample.channels != channels) {
+            throw new IllegalArgumentException("need a " + channels + "-channel sample, got " + sample);
+        }
+        return Collections.nCopies(LATENTS, sample);
+    }
+
+    /** Seeded Gaussian NCDHW latents, the same on every run */
+    static List<Latent> synthetic(int channels) {
+        Random r = new Random(channels);
+        List<Latent> list = new ArrayList<>(LATENTS);
+        for (int i = 0; i < LATENTS; i++) {
+            float[] x = new float[channels * Latent.SPATIAL];
+            for (int j = 0; j < x.length; j++) x[j] = (float) r.nextGaussian();
+            list.add(Latent.ncdhw(x, channels));
+        }
+        return list;
+    }
+
+    /* one resolution under test; a fresh decoder (no cache, no gate) per thread count */
+    private interface Bench {
+        boolean load(int threads);
+
+        float[] decode(Latent latent) throws Exception;
+
+        /** fromDecoderOutput + generate, as the app meshes a decoded grid */
+        void mesh(float[] grid);
+
+        void close();
+    }
+
+    /**
+     * {best threads, decode ms, mesh ms} for one resolution, or
+     * {0, NaN, NaN} when its model does not load. Meshing is timed on the
+     * first thread count only; it does not use the ONNX threads.
+     */
+    private static double[] measure(int resolution, List<Integer> threads, List<Latent> latents,
+                                    Consumer<String> progress, Bench bench) {
+        int bestThreads = 0;
+        double bestDecode = Double.NaN, meshMs = Double.NaN;
+        for (int t : threads) {
+            try {
+                if (!bench.load(t)) {
+                    Log.w(TAG, resolution + "³ decoder did not load, skipping");
+                    if (progress != null) progress.accept(resolution + "³: model not available");
+                    return new double[]{0, Double.NaN, Double.NaN};
+                }
+                bench.decode(latents.get(0));   // warm-up: the first run sets up the session's buffers
+                double decode = 0, mesh = 0;
+                for (Latent l : latents) {
+                    long t0 = System.nanoTime();
+                    float[] grid = bench.decode(l);
+                    long t1 = System.nanoTime();
+                    decode += (t1 - t0) / 1e6;
+                    if (Double.isNaN(meshMs)) {
+                        bench.mesh(grid);
+                        mesh += (System.nanoTime() - t1) / 1e6;
+                    }
+                }
+                decode /= latents.size();
+                if (Double.isNaN(meshMs)) meshMs = mesh / latents.size();
+                if (progress != null) {
+                    progress.accept(String.format("%d³, %d thread(s): decode %.1f ms", resolution, t, decode));
+                }
+                if (Double.isNaN(bestDecode) || decode < bestDecode) {
+                    bestDecode = decode;
+                    bestThreads = t;
+                } else if (decode > bestDecode * 1.1) {
+                    break;   // past the knee, more threads only contend
+                }
+            } catch (Exception e) {
+                Log.e(TAG, resolution + "³ calibration failed at " + t + " thread(s)", e);
+                break;
+            } finally {
+                bench.close();
+            }
+        }
+        return new double[]{bestThreads, bestDecode, meshMs};
+    }
+}
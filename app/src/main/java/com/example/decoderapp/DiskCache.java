@@ -0,0 +1,442 @@
+package com.example.decoderapp;
+
+import android.util.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Content-addressed disk cache of decoded grids and generated meshes.
+ *
+ * Keys are SHA-256 hex digests of (model id, resolution, options, latent
+ * bytes); derived keys chain a mesh to the grid it came from, so a mesh
+ * is found without hashing 32 MB of grid. Grids are stored as NPY and
+ * come back memory-mapped; meshes are stored with MeshCodec.
+ *
+ * Writes go to a .tmp file that is synced and then renamed into place,
+ * so neither a crash nor a power loss leaves a half-written entry under a
+ * valid name. Grids are written on a background thread outside the cache
+ * lock: putGrid returns once the grid is in memory, and getGrid serves it
+ * from there until its file is in place. The write queue is bounded by
+ * bytes (MAX_PENDING_BYTES); a put that finds it full waits up to
+ * PUT_WAIT_MS, and after that its key is deferred and the grid written
+ * from the memory tier once the queue has room again, so sustained
+ * decoding still fills the cache. Entries are evicted in
+ * LRU order (file mtime survives restarts) once the size budget is
+ * exceeded. An optional in-memory tier (FrameCache) is consulted first
+ * and filled on disk hits and puts; its hits refresh the disk entry too,
+ * so a frame that is only ever served from memory is not evicted from
+ * disk as cold.
+ *
+ * Usage:
+ *   DiskCache cache = new DiskCache(new File(ctx.getCacheDir(), "decoded"), 512L << 20);
+ *   decoder.setCache(cache);
+ */
+public final class DiskCache {
+
+    private static final String TAG = "DiskCache";
+    private static final String GRID = ".npy";
+    private static final String MESH = ".mesh";
+    private static final String TMP = ".tmp";
+    private static final String FORMAT_FILE = "format";
+
+    /** On-disk layout version; a directory written by another version is emptied on open */
+    static final int FORMAT = 2;
+
+    /** Bytes of grid writes queued at most: two 128³ grids or sixteen 64³ ones */
+    static final long MAX_PENDING_BYTES = 64L << 20;
+
+    /** How long putGrid waits for room in the write queue before deferring the write */
+    static final long PUT_WAIT_MS = 20;
+
+    /** Deferred grid keys remembered at most; older ones are given up */
+    static final int MAX_DEFERRED = 64;
+
+    private final File dir;
+    private FrameCache memory;
+    private long maxBytes;
+    private long totalBytes;
+    private long pendingBytes;
+    private long hits, misses, evictions, skippedWrites;
+
+    /* file name → size, in access order (eldest first) */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    /* key → grid handed to putGrid whose file is not committed yet */
+    private final Map<String, float[]> pendingGrids = new HashMap<>();
+    /* key → shape of grids that found the queue full, oldest first; the data stays in the memory tier */
+    private final LinkedHashMap<String, int[]> deferred = new LinkedHashMap<>();
+    /* daemon: an interrupted write only leaves a .tmp file, which load() deletes */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "DiskCacheWriter");
+        t.setPriority(Thread.NORM_PRIORITY - 1);
+        t.setDaemon(true);
+        return t;
+    });
+
+    public DiskCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        if (!dir.exists() && !dir.mkdirs()) Log.w(TAG, "Cannot create " + dir);
+        checkFormat();
+        load();
+    }
+
+    /** In-memory tier in front of the disk (null removes it) */
+    public synchronized void setMemoryTier(FrameCache memory) {
+        this.memory = memory;
+    }
+
+    /* ---------------- keys ---------------- */
+
+    /** Key of a decode: model id, output resolution, free-form options and the latent itself */
+    public static String key(String modelId, int resolution, String options, float[] latent) {
+        return key(modelId, resolution, options, FloatBuffer.wrap(latent));
+    }
+
+    public static String key(String modelId, int resolution, String options, FloatBuffer latent) {
+        MessageDigest md = sha256();
+        md.update(utf8(modelId + "\n" + resolution + "\n" + options + "\n"));
+        ByteBuffer bytes = ByteBuffer.allocate(4096).order(ByteOrder.LITTLE_ENDIAN);
+        FloatBuffer in = latent.duplicate();
+        while (in.hasRemaining()) {
+            bytes.clear();
+            int n = Math.min(in.remaining(), bytes.capacity() / 4);
+            for (int i = 0; i < n; i++) bytes.putFloat(in.get());
+            bytes.flip();
+            md.update(bytes);
+        }
+        return hex(md.digest());
+    }
+
+    /** Key of something computed from parent, e.g. the mesh of a cached grid */
+    public static String derive(String parentKey, String what) {
+        MessageDigest md = sha256();
+        md.update(utf8(parentKey + "\n" + what));
+        return hex(md.digest());
+    }
+
+    /** SHA-256 of arbitrary bytes, e.g. a model file, as a short id */
+    public static String digest(byte[] data) {
+        return hex(sha256().digest(data)).substring(0, 16);
+    }
+
+    /* ---------------- grids ---------------- */
+
+    /** Memory-mapped cached grid, or null */
+    public synchronized FloatBuffer getGrid(String key, int... shape) {
+        float[] inMemory = memory != null ? memory.getGrid(key) : null;
+        if (inMemory == null) inMemory = pendingGrids.get(key);
+        if (inMemory != null) {
+            touch(key + GRID);
+            return FloatBuffer.wrap(inMemory);
+        }
+
+        File f = hit(key + GRID);
+        if (f == null) return null;
+        try {
+            FloatBuffer mapped = NpyReader.map(f, shape);
+            if (memory == null) return mapped;
+            float[] grid = new float[mapped.remaining()];
+            mapped.get(grid);
+            memory.putGrid(key, grid);
+            return FloatBuffer.wrap(grid);
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable grid " + f.getName(), e);
+            remove(key + GRID);
+            return null;
+        }
+    }
+
+    /**
+     * Returns after the memory tier, or after at most PUT_WAIT_MS when the
+     * write queue is full; data is kept as is, do not modify it afterwards.
+     */
+    public synchronized void putGrid(String key, float[] data, int[] shape) {
+        if (memory != null) memory.putGrid(key, data);
+        long bytes = data.length * 4L;
+        long deadline = System.nanoTime() + PUT_WAIT_MS * 1_000_000L;
+        while (!pendingGrids.containsKey(key)) {
+            if (pendingBytes == 0 || pendingBytes + bytes <= MAX_PENDING_BYTES) {
+                enqueue(key, data, shape);
+                return;
+            }
+            long leftMs = (deadline - System.nanoTime()) / 1_000_000L;
+            if (leftMs <= 0) {
+                defer(key, shape);
+                return;
+            }
+            try {
+                wait(leftMs);   // a finished write makes room
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                defer(key, shape);
+                return;
+            }
+        }
+    }
+
+    private void enqueue(String key, float[] data, int[] shape) {
+        pendingGrids.put(key, data);
+        pendingBytes += data.length * 4L;
+        writer.execute(() -> writeGrid(key, data, shape));
+    }
+
+    /* only the key is kept: without a memory tier to hold the grid the write is lost */
+    private void defer(String key, int[] shape) {
+        if (memory == null) {
+            skippedWrites++;
+            return;
+        }
+        deferred.remove(key);
+        deferred.put(key, shape);
+        if (deferred.size() > MAX_DEFERRED) {
+            deferred.remove(deferred.keySet().iterator().next());
+            skippedWrites++;
+        }
+    }
+
+    /* queue has room again: deferred grids still in the memory tier go next, oldest first */
+    private void retryDeferred() {
+        while (!deferred.isEmpty()) {
+            Map.Entry<String, int[]> e = deferred.entrySet().iterator().next();
+            String key = e.getKey();
+            float[] data = memory != null ? memory.peekGrid(key) : null;
+            if (data != null && pendingBytes > 0 && pendingBytes + data.length * 4L > MAX_PENDING_BYTES) return;
+            deferred.remove(key);
+            if (data == null) {
+                skippedWrites++;   // left the memory tier meanwhile
+            } else if (!entries.containsKey(key + GRID) && !pendingGrids.containsKey(key)) {
+                enqueue(key, data, e.getValue());
+            }
+        }
+    }
+
+    /* a write finished (either way): free its queue bytes, wake waiting puts, refill from deferred */
+    private void release(String key, float[] data) {
+        if (!pendingGrids.remove(key, data)) return;   // cleared meanwhile
+        pendingBytes -= data.length * 4L;
+        notifyAll();
+        retryDeferred();
+    }
+
+    /* writer thread: the NPY is written without the lock, only the commit takes it */
+    private void writeGrid(String key, float[] data, int[] shape) {
+        File tmp = tmpFile(key + GRID);
+        try {
+            NpyWriter.writeNpySynced(tmp.getAbsolutePath(), data, shape);
+            synchronized (this) {
+                if (pendingGrids.get(key) != data) {
+                    tmp.delete();   // cleared meanwhile
+                    return;
+                }
+                commit(tmp, key + GRID);
+                release(key, data);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot cache grid " + key, e);
+            tmp.delete();
+            synchronized (this) {
+                release(key, data);
+            }
+        }
+    }
+
+    /* ---------------- meshes ---------------- */
+
+    /** Cached mesh, or null */
+    public synchronized MarchingCubes.Result getMesh(String key) {
+        MarchingCubes.Result inMemory = memory != null ? memory.getMesh(key) : null;
+        if (inMemory != null) {
+            touch(key + MESH);
+            return inMemory;
+        }
+
+        File f = hit(key + MESH);
+        if (f == null) return null;
+        try (FileInputStream in = new FileInputStream(f)) {
+            FileChannel ch = in.getChannel();
+            ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).order(ByteOrder.LITTLE_ENDIAN);
+            MarchingCubes.Result mesh = MeshCodec.decode(map);
+            if (memory != null) memory.putMesh(key, mesh);
+            return mesh;
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable mesh " + f.getName(), e);
+            remove(key + MESH);
+            return null;
+        }
+    }
+
+    /** Stored quantised (MeshCodec); the memory tier keeps the exact mesh */
+    public synchronized void putMesh(String key, float[] vertices, int[] faces) {
+        if (memory != null) memory.putMesh(key, new MarchingCubes.Result(vertices, faces));
+        File tmp = tmpFile(key + MESH);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            try (ChannelWriter w = new ChannelWriter(out.getChannel())) {
+                MeshCodec.encode(vertices, faces, w);
+            }
+            out.getFD().sync();   // on storage before the rename publishes it
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot cache mesh " + key, e);
+            tmp.delete();
+            return;
+        }
+        try {
+            commit(tmp, key + MESH);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot cache mesh " + key, e);
+            tmp.delete();
+        }
+    }
+
+    /* ---------------- budget / stats ---------------- */
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long sizeBytes() { return totalBytes; }
+
+    public synchronized long maxBytes() { return maxBytes; }
+
+    public synchronized String stats() {
+        return String.format("DiskCache %d entries, %.1f / %.1f MB, hits %d, misses %d, evictions %d, "
+                        + "grid writes pending %d (%.1f MB), deferred %d, skipped %d",
+                entries.size(), totalBytes / 1048576.0, maxBytes / 1048576.0, hits, misses, evictions,
+                pendingGrids.size(), pendingBytes / 1048576.0, deferred.size(), skippedWrites);
+    }
+
+    public synchronized void clear() {
+        pendingGrids.clear();
+        pendingBytes = 0;
+        deferred.clear();
+        notifyAll();
+        for (String name : new ArrayList<>(entries.keySet())) remove(name);
+    }
+
+    /* ---------------- internals ---------------- */
+
+    /** Empties a directory left by another FORMAT, then records the current one */
+    private void checkFormat() {
+        File marker = new File(dir, FORMAT_FILE);
+        try (BufferedReader r = new BufferedReader(new FileReader(marker))) {
+            if (String.valueOf(FORMAT).equals(r.readLine())) return;
+        } catch (IOException e) {
+            // missing: new directory, or one written before the marker existed
+        }
+        File[] files = dir.listFiles();
+        if (files != null && files.length > 0) {
+            Log.i(TAG, "Cache format changed, dropping " + files.length + " files in " + dir);
+            for (File f : files) f.delete();
+        }
+        try (FileWriter w = new FileWriter(marker)) {
+            w.write(FORMAT + "\n");
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write " + marker, e);
+        }
+    }
+
+    /** Index the directory oldest-first and drop leftovers of interrupted writes */
+    private void load() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(TMP)) {
+                f.delete();
+            } else if (name.endsWith(GRID) || name.endsWith(MESH)) {
+                entries.put(name, f.length());
+                totalBytes += f.length();
+            }
+        }
+        trim();
+    }
+
+    private File hit(String name) {
+        if (entries.get(name) == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        File f = new File(dir, name);
+        f.setLastModified(System.currentTimeMillis());   // LRU order across restarts
+        return f;
+    }
+
+    /** Memory-tier hit: keep the disk entry as recent as the one in memory */
+    private void touch(String name) {
+        if (entries.get(name) != null) {
+            new File(dir, name).setLastModified(System.currentTimeMillis());
+        }
+    }
+
+    private File tmpFile(String name) {
+        return new File(dir, name + "." + Thread.currentThread().getId() + TMP);
+    }
+
+    private void commit(File tmp, String name) throws IOException {
+        File dst = new File(dir, name);
+        if (!tmp.renameTo(dst)) throw new IOException("rename failed: " + tmp + " → " + dst);
+        Long old = entries.put(name, dst.length());
+        totalBytes += dst.length() - (old != null ? old : 0);
+        trim();
+    }
+
+    private void remove(String name) {
+        Long size = entries.remove(name);
+        if (size != null) totalBytes -= size;
+        new File(dir, name).delete();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        List<String> victims = new ArrayList<>();
+        long total = totalBytes;
+        while (total > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            victims.add(e.getKey());
+            total -= e.getValue();
+        }
+        for (String name : victims) {
+            remove(name);
+            evictions++;
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);   // mandatory on every Java / Android platform
+        }
+    }
+
+    private static byte[] utf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b) sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+        return sb.toString();
+    }
+}
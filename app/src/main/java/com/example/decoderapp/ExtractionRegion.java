@@ -0,0 +1,114 @@
+package com.example.decoderapp;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Region of interest for marching cubes, in voxel coordinates.
+ *
+ * Either an axis-aligned box or a set of view-frustum planes. The grid
+ * is split into fixed bricks anchored at the origin and only bricks that
+ * touch the region are extracted (a box ROI is additionally clipped to
+ * the cells it covers). A cell produces the same triangles no matter
+ * which ROI selected it, so meshes from different ROIs line up without
+ * cracks when the view moves.
+ *
+ * Frustum planes are (a, b, c, d) with a·x + b·y + c·z + d ≥ 0 inside.
+ */
+public final class ExtractionRegion {
+
+    public static final int DEFAULT_BRICK = 16;
+
+    /* offsets can push 64³ vertices out of their cell; test bricks with this padding */
+    private static final float PLANE_MARGIN = 1.0f;
+
+    private final float[] box;        // x0, y0, z0, x1, y1, z1 (voxels), or null
+    private final float[][] planes;   // or null
+    private final int brickSize;
+
+    private ExtractionRegion(float[] box, float[][] planes, int brickSize) {
+        if (brickSize <= 0) throw new IllegalArgumentException("brick size must be > 0: " + brickSize);
+        this.box = box;
+        this.planes = planes;
+        this.brickSize = brickSize;
+    }
+
+    /** Voxel-space AABB, corners inclusive */
+    public static ExtractionRegion box(float x0, float y0, float z0, float x1, float y1, float z1) {
+        return new ExtractionRegion(new float[]{
+                Math.min(x0, x1), Math.min(y0, y1), Math.min(z0, z1),
+                Math.max(x0, x1), Math.max(y0, y1), Math.max(z0, z1)}, null, DEFAULT_BRICK);
+    }
+
+    /** Frustum given as planes (a, b, c, d), inside where a·x + b·y + c·z + d ≥ 0 */
+    public static ExtractionRegion frustum(float[][] planes) {
+        for (float[] p : planes) {
+            if (p.length != 4) throw new IllegalArgumentException("plane needs 4 coefficients");
+        }
+        return new ExtractionRegion(null, planes.clone(), DEFAULT_BRICK);
+    }
+
+    /**
+     * Frustum of a column-major 4×4 matrix (android.opengl.Matrix layout)
+     * that maps voxel coordinates to clip space, i.e. projection × view × voxelToWorld.
+     */
+    public static ExtractionRegion fromViewProjection(float[] m) {
+        if (m.length < 16) throw new IllegalArgumentException("need a 4x4 matrix");
+        float[][] p = new float[6][4];
+        for (int i = 0; i < 4; i++) {
+            float r0 = m[i * 4], r1 = m[i * 4 + 1], r2 = m[i * 4 + 2], r3 = m[i * 4 + 3];
+            p[0][i] = r3 + r0;   // left
+            p[1][i] = r3 - r0;   // right
+            p[2][i] = r3 + r1;   // bottom
+            p[3][i] = r3 - r1;   // top
+            p[4][i] = r3 + r2;   // near
+            p[5][i] = r3 - r2;   // far
+        }
+        return new ExtractionRegion(null, p, DEFAULT_BRICK);
+    }
+
+    public ExtractionRegion withBrickSize(int n) {
+        return new ExtractionRegion(box, planes, n);
+    }
+
+    /** Cell boxes to extract, brick by brick in z, y, x order */
+    List<CellBox> select(CellBox full) {
+        List<CellBox> out = new ArrayList<>();
+        CellBox clip = box != null ? clipToBox(full) : full;
+        if (clip.isEmpty()) return out;
+
+        for (CellBox b : full.bricks(brickSize)) {
+            CellBox c = intersect(b, clip);
+            if (c.isEmpty()) continue;
+            if (planes != null && !insideAll(c)) continue;
+            out.add(c);
+        }
+        return out;
+    }
+
+    /** Cells whose voxel span [x, x+1] overlaps the box */
+    private CellBox clipToBox(CellBox full) {
+        return intersect(full, new CellBox(
+                (int) Math.ceil(box[0]) - 1, (int) Math.ceil(box[1]) - 1, (int) Math.ceil(box[2]) - 1,
+                (int) Math.floor(box[3]) + 1, (int) Math.floor(box[4]) + 1, (int) Math.floor(box[5]) + 1));
+    }
+
+    private static CellBox intersect(CellBox a, CellBox b) {
+        return new CellBox(
+                Math.max(a.x0, b.x0), Math.max(a.y0, b.y0), Math.max(a.z0, b.z0),
+                Math.min(a.x1, b.x1), Math.min(a.y1, b.y1), Math.min(a.z1, b.z1));
+    }
+
+    /** Conservative box/frustum test: the box's most-inside corner must pass every plane */
+    private boolean insideAll(CellBox c) {
+        float lx = c.x0 - PLANE_MARGIN, ly = c.y0 - PLANE_MARGIN, lz = c.z0 - PLANE_MARGIN;
+        float hx = c.x1 + PLANE_MARGIN, hy = c.y1 + PLANE_MARGIN, hz = c.z1 + PLANE_MARGIN;
+        for (float[] p : planes) {
+            float x = p[0] >= 0 ? hx : lx;
+            float y = p[1] >= 0 ? hy : ly;
+            float z = p[2] >= 0 ? hz : lz;
+            if (p[0] * x + p[1] * y + p[2] * z + p[3] < 0) return false;
+        }
+        return true;
+    }
+}
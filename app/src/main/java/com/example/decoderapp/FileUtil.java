@@ -27,138 +27,56 @@ public class FileUtil {
         return bos.toByteArray();
     }
 
+    /* one staging buffer per loading thread, reused across frames */
+    private static final ThreadLocal<LatentReader> READER = new ThreadLocal<LatentReader>() {
+        @Override
+        protected LatentReader initialValue() {
+            return new LatentReader();
+        }
+    };
+
     /** 读取 (1,4,4,4,128) 的 NPY 并返回 DHWC 扁平（8192 floats） */
     public static float[] loadEmbedNPY_DHWC(Context ctx, Uri uri) throws IOException {
-        byte[] bytes = readAll(ctx, uri);
-
-        // 极简 .npy 解析：略过 header，找到第一个 '[' 到 ']' 的 shape，然后找 data 起点。
-        // 为简单可靠，这里假设是 NumPy 1.0 规范 + '<f4' 小端 float32 + 非 Fortran
-        int magic = (bytes[0] & 0xFF);
-        if (magic != 0x93) throw new IOException("Not an NPY file (magic mismatch)");
-
-        int major = bytes[6] & 0xFF;
-        int minor = bytes[7] & 0xFF;
-        int headerLen;
-        if (major == 1) {
-            headerLen = ((bytes[9] & 0xFF) << 8) | (bytes[8] & 0xFF);
-        } else if (major == 2) {
-            headerLen = ((bytes[9] & 0xFF) << 8) | (bytes[8] & 0xFF); // 简化处理
-        } else {
-            headerLen = ((bytes[9] & 0xFF) << 8) | (bytes[8] & 0xFF);
-        }
-        int headerStart = 10;
-        int dataStart = headerStart + headerLen;
+        return loadEmbedNPY_DHWC(ctx, uri, null);
+    }
 
-        String header = new String(bytes, headerStart, headerLen, "ASCII");
-        if (!header.contains("<f4")) throw new IOException("NPY not float32");
-        if (!header.contains("fortran_order')") && !header.contains("fortran_order\":")) {
-            // 放宽检查
-        }
+    /** 同上，写入调用方复用的 dst（null 或太小时新建） */
+    public static float[] loadEmbedNPY_DHWC(Context ctx, Uri uri, float[] dst) throws IOException {
+        return READER.get().readDhwc(ctx, uri, 128, dst);
+    }
 
-        int dataBytes = bytes.length - dataStart;
-        int expectedFloats = 4 * 4 * 4 * 128; // = 8192
-        int expectedBytes = expectedFloats * 4; // = 32768
-        if (dataBytes != expectedBytes) {
-            // 大部分 numpy 的 (1,4,4,4,128) 都是 8192 floats
-            Log.w("DecoderApp", "NPY payload = "+dataBytes+" bytes (expect 32768)");
-            throw new IOException(
-                    "Latent file is not 4x4x4x128: payload = "
-                            + dataBytes + " bytes, expected " + expectedBytes
-                            + " (maybe this is 4x4x4x64 or other shape?)");
-        }
+    /** 读取 128 通道 latent（DHWC 或 NCDHW 文件均可），需要时读的同时转成 NCDHW (1,128,4,4,4)，可直接给 Decoder.decodeFeatureGrid */
+    public static float[] loadEmbedNPY_NCDHW(Context ctx, Uri uri, float[] dst) throws IOException {
+        return READER.get().readNcdhw(ctx, uri, 128, dst);
+    }
 
-        float[] out = new float[8192];
-        ByteBuffer.wrap(bytes, dataStart, Math.min(dataBytes, 8192*4))
-                .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(out);
-        return out; // 这是按 (D,H,W,C) 扁平（DHWC），需再转成 NCDHW
+    /** 读取 C 通道 latent，保持文件自身的布局（由 shape 推断：(4,4,4,C) 为 DHWC，(1,C,4,4,4) 为 NCDHW；旧插值帧 (C,4,4,4) 实为 DHWC，按 DHWC 读并告警） */
+    public static Latent loadLatent(Context ctx, Uri uri, int channels) throws IOException {
+        return READER.get().read(ctx, uri, channels, null);
     }
 
+    /** 读取 decoded grid 等任意 float32 NPY（整体拷贝到 float[]；大文件请直接用 NpyReader.map） */
     public static float[] loadNpyFloat(Context ctx, Uri uri) throws IOException {
-        try (InputStream is = ctx.getContentResolver().openInputStream(uri);
-             DataInputStream dis = new DataInputStream(new BufferedInputStream(is))) {
-
-            // 跳过 header（动态计算）
-            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
-            int b;
-            while ((b = dis.read()) != -1) {
-                headerBytes.write(b);
-                // header 以 '\n' 结尾
-                if (headerBytes.size() > 8 && headerBytes.toByteArray()[headerBytes.size() - 1] == '\n')
-                    break;
-            }
-
-            // 剩余部分全部读为 float
-            ByteArrayOutputStream data = new ByteArrayOutputStream();
-            byte[] buf = new byte[8192];
-            int len;
-            while ((len = dis.read(buf)) != -1) {
-                data.write(buf, 0, len);
-            }
-
-            byte[] arr = data.toByteArray();
-            int n = arr.length / 4;
-            float[] out = new float[n];
-            ByteBuffer bb = ByteBuffer.wrap(arr).order(ByteOrder.LITTLE_ENDIAN);
-            bb.asFloatBuffer().get(out);
+        NpyReader.Array npy = NpyReader.open(ctx, uri);
+        float[] out = new float[npy.data.remaining()];
+        npy.data.get(out);
 
-            Log.i("FileUtil", "✅ Loaded " + n + " floats");
-            return out;
-        }
+        Log.i("FileUtil", "✅ Loaded " + out.length + " floats " + npy.header);
+        return out;
     }
 
     /** 读取 (1,4,4,4,64) 的 NPY 并返回 DHWC 扁平（4096 floats） */
     public static float[] loadEmbedNPY_DHWC_64(Context ctx, Uri uri) throws IOException {
+        return loadEmbedNPY_DHWC_64(ctx, uri, null);
+    }
 
-        byte[] bytes = readAll(ctx, uri);
-
-        // -------- Parse NPY header exactly the same way --------
-        int magic = (bytes[0] & 0xFF);
-        if (magic != 0x93) throw new IOException("Not an NPY file");
-
-        int major = bytes[6] & 0xFF;
-        int minor = bytes[7] & 0xFF;
-
-        int headerLen;
-        if (major == 1) {
-            headerLen = ((bytes[9] & 0xFF) << 8) | (bytes[8] & 0xFF);
-        } else {
-            headerLen = ((bytes[9] & 0xFF) << 8) | (bytes[8] & 0xFF);
-        }
-
-        int headerStart = 10;
-        int dataStart = headerStart + headerLen;
-
-        String header = new String(bytes, headerStart, headerLen, "ASCII");
-
-        if (!header.contains("<f4"))
-            throw new IOException("NPY is not float32");
-
-        // 目标 shape = (4,4,4,64)
-        int expectedFloats = 4 * 4 * 4 * 64; // = 4096
-        int expectedBytes = expectedFloats * 4; // = 16384
-
-        int dataBytes = bytes.length - dataStart;
-
-        // 目标：严格只接受 (4,4,4,64) = 4096 floats = 16384 bytes 的 latent
-        if (dataBytes != expectedBytes) {
-            Log.w("DecoderApp", "NPY payload = "+dataBytes+" bytes (expect 16384)");
-            throw new IOException(
-                    "Latent file is not 4x4x4x64: payload = "
-                            + dataBytes + " bytes, expected " + expectedBytes
-                            + " (maybe this is 4x4x4x128 or other shape?)");
-        }
-
-        // -------- Read float values --------
-        float[] out = new float[expectedFloats];
-
-        ByteBuffer.wrap(bytes, dataStart, expectedBytes)
-                .order(ByteOrder.LITTLE_ENDIAN)
-                .asFloatBuffer()
-                .get(out);
-
-        Log.i("FileUtil", "✅ Loaded latent64 (4x4x4x64): " + out.length + " floats");
-        return out;
+    public static float[] loadEmbedNPY_DHWC_64(Context ctx, Uri uri, float[] dst) throws IOException {
+        return READER.get().readDhwc(ctx, uri, 64, dst);
+    }
 
+    /** 读取 64 通道 latent（DHWC 或 NCDHW 文件均可），需要时读的同时转成 NCDHW (1,64,4,4,4)，可直接给 Decoder64.decodeFeatureGrid64 */
+    public static float[] loadEmbedNPY_NCDHW_64(Context ctx, Uri uri, float[] dst) throws IOException {
+        return READER.get().readNcdhw(ctx, uri, 64, dst);
     }
 
     /* 2025.11.13 Update: Display file name on screen*/
@@ -213,6 +131,7 @@ public class FileUtil {
     /* 2025.12.4 Update: Add getDisplayPath() */
     /**
      * 加载latent codes (.pt) 文件
+     * 整个文件读进 heap；大 bank 请用 LatentBank（mmap，按 index 零拷贝取 code）
      */
     public static float[] loadLatentCodes(Context context, Uri uri) {
         try (InputStream is = context.getContentResolver().openInputStream(uri)) {
@@ -0,0 +1,168 @@
+package com.example.decoderapp;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.util.Log;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * In-memory LRU cache of decoded grids and meshes, bounded by bytes
+ * rather than entry count (a 128³×4 grid is 32 MB, a 64³×4 grid 4 MB).
+ *
+ * Eviction is least-recently-used by bytes: inserting evicts from the
+ * cold end until the new entry fits, and an entry larger than the whole
+ * budget is not cached at all instead of flushing everything else.
+ *
+ * Register it with Context.registerComponentCallbacks so it shrinks on
+ * memory pressure before the app gets anywhere near an OOM: half on
+ * TRIM_MEMORY_RUNNING_LOW / MODERATE and the background levels, empty on
+ * RUNNING_CRITICAL, COMPLETE and onLowMemory.
+ *
+ * Cached arrays are shared with every caller; treat them as read-only.
+ */
+public final class FrameCache implements ComponentCallbacks2 {
+
+    private static final String TAG = "FrameCache";
+
+    private static final class Entry {
+        final Object value;   // float[] grid or MarchingCubes.Result
+        final long bytes;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long maxBytes;
+    private long sizeBytes;
+    private long hits, misses, evictions, rejected;
+
+    public FrameCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /** A quarter of the per-app heap limit (ActivityManager.getMemoryClass) */
+    public static long defaultBudget(Context ctx) {
+        ActivityManager am = (ActivityManager) ctx.getSystemService(Context.ACTIVITY_SERVICE);
+        int mb = am != null ? am.getMemoryClass() : 128;
+        return (mb * 1048576L) / 4;
+    }
+
+    /* ---------------- grids ---------------- */
+
+    public synchronized float[] getGrid(String key) {
+        return (float[]) get("g:" + key);
+    }
+
+    /** Like getGrid, but not counted as a hit or miss (e.g. DiskCache retrying a deferred write) */
+    synchronized float[] peekGrid(String key) {
+        Entry e = map.get("g:" + key);
+        return e != null ? (float[]) e.value : null;
+    }
+
+    public synchronized void putGrid(String key, float[] grid) {
+        put("g:" + key, grid, grid.length * 4L);
+    }
+
+    /* ---------------- meshes ---------------- */
+
+    public synchronized MarchingCubes.Result getMesh(String key) {
+        return (MarchingCubes.Result) get("m:" + key);
+    }
+
+    public synchronized void putMesh(String key, MarchingCubes.Result mesh) {
+        put("m:" + key, mesh, (mesh.vertices.length + (long) mesh.faces.length) * 4);
+    }
+
+    /* ---------------- budget / metrics ---------------- */
+
+    public synchronized long sizeBytes() { return sizeBytes; }
+
+    public synchronized long maxBytes() { return maxBytes; }
+
+    public synchronized long hitCount() { return hits; }
+
+    public synchronized long missCount() { return misses; }
+
+    public synchronized long evictionCount() { return evictions; }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimTo(maxBytes);
+    }
+
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    /** Evicts LRU entries until at most bytes remain */
+    public synchronized void trimTo(long bytes) {
+        Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+        while (sizeBytes > bytes && it.hasNext()) {
+            sizeBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized String stats() {
+        long lookups = hits + misses;
+        return String.format("FrameCache %d entries, %.1f / %.1f MB, hit %d / %d (%.0f%%), evictions %d, too large %d",
+                map.size(), sizeBytes / 1048576.0, maxBytes / 1048576.0, hits, lookups,
+                lookups == 0 ? 0.0 : 100.0 * hits / lookups, evictions, rejected);
+    }
+
+    /* ---------------- memory pressure ---------------- */
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_COMPLETE || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if (level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW
+                || level == TRIM_MEMORY_RUNNING_MODERATE) {
+            synchronized (this) {
+                trimTo(sizeBytes / 2);
+            }
+        }
+        Log.i(TAG, "onTrimMemory(" + level + "): " + stats());
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {}
+
+    /* ---------------- internals ---------------- */
+
+    private Object get(String key) {
+        Entry e = map.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.value;
+    }
+
+    private void put(String key, Object value, long bytes) {
+        if (bytes > maxBytes) {
+            rejected++;
+            return;
+        }
+        Entry old = map.remove(key);
+        if (old != null) sizeBytes -= old.bytes;
+        trimTo(maxBytes - bytes);
+        map.put(key, new Entry(value, bytes));
+        sizeBytes += bytes;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.decoderapp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * glTF 2.0 binary (.glb) export of a marching cubes mesh:
+ * one triangle primitive, float32 POSITION + uint32 indices in a single
+ * BIN chunk, written with bulk little-endian channel copies.
+ * Loads directly in three.js, Filament, Blender, Unity glTFast, …
+ */
+public class GlbWriter {
+
+    private static final int MAGIC = 0x46546C67;        // "glTF"
+    private static final int CHUNK_JSON = 0x4E4F534A;   // "JSON"
+    private static final int CHUNK_BIN = 0x004E4942;    // "BIN\0"
+
+    private static String makeJson(float[] v, int vertexCount, int indexCount, int binLength) {
+        if (vertexCount == 0 || indexCount == 0) {
+            // accessors must have count >= 1, so an empty mesh is an empty scene
+            return "{\"asset\":{\"version\":\"2.0\",\"generator\":\"DecoderApp\"},"
+                    + "\"scene\":0,\"scenes\":[{\"nodes\":[]}]}";
+        }
+
+        float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+        float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+        for (int i = 0; i < vertexCount * 3; i += 3) {
+            for (int k = 0; k < 3; k++) {
+                min[k] = Math.min(min[k], v[i + k]);
+                max[k] = Math.max(max[k], v[i + k]);
+            }
+        }
+
+        int posBytes = vertexCount * 12;
+        return "{\"asset\":{\"version\":\"2.0\",\"generator\":\"DecoderApp\"},"
+                + "\"scene\":0,\"scenes\":[{\"nodes\":[0]}],\"nodes\":[{\"mesh\":0}],"
+                + "\"meshes\":[{\"primitives\":[{\"attributes\":{\"POSITION\":0},\"indices\":1,\"mode\":4}]}],"
+                + "\"accessors\":["
+                + "{\"bufferView\":0,\"componentType\":5126,\"count\":" + vertexCount + ",\"type\":\"VEC3\","
+                + "\"min\":[" + min[0] + "," + min[1] + "," + min[2] + "],"
+                + "\"max\":[" + max[0] + "," + max[1] + "," + max[2] + "]},"
+                + "{\"bufferView\":1,\"componentType\":5125,\"count\":" + indexCount + ",\"type\":\"SCALAR\"}],"
+                + "\"bufferViews\":["
+                + "{\"buffer\":0,\"byteOffset\":0,\"byteLength\":" + posBytes + ",\"target\":34962},"
+                + "{\"buffer\":0,\"byteOffset\":" + posBytes + ",\"byteLength\":" + indexCount * 4 + ",\"target\":34963}],"
+                + "\"buffers\":[{\"byteLength\":" + binLength + "}]}";
+    }
+
+    private static int pad4(int n) {
+        return (n + 3) & ~3;
+    }
+
+    public static void writeGlb(String path, float[] vertices, int[] faces) throws IOException {
+        int vertexCount = vertices.length / 3;
+        int indexCount = faces.length - faces.length % 3;
+        boolean empty = vertexCount == 0 || indexCount == 0;
+        int binLength = empty ? 0 : vertexCount * 12 + indexCount * 4;   // both already 4-aligned
+
+        byte[] json = makeJson(vertices, vertexCount, indexCount, binLength)
+                .getBytes(StandardCharsets.UTF_8);
+        int jsonLength = pad4(json.length);
+        int total = 12 + 8 + jsonLength + (empty ? 0 : 8 + binLength);
+
+        try (FileOutputStream fos = new FileOutputStream(path);
+             FileChannel ch = fos.getChannel();
+             ChannelWriter w = new ChannelWriter(ch)) {
+            w.reserve(12).putInt(MAGIC).putInt(2).putInt(total);
+
+            w.reserve(8).putInt(jsonLength).putInt(CHUNK_JSON);
+            w.put(json);
+            for (int i = json.length; i < jsonLength; i++) w.reserve(1).put((byte) ' ');
+
+            if (!empty) {
+                ByteBuffer b = w.reserve(8);
+                b.putInt(binLength).putInt(CHUNK_BIN);
+                w.putFloats(vertices, 0, vertexCount * 3);
+                w.putInts(faces, 0, indexCount);
+            }
+        }
+    }
+
+    public static void writeGlb(String path, MarchingCubes.Result res) throws IOException {
+        writeGlb(path, res.vertices, res.faces);
+    }
+
+    public static void writeGlb(String path, MarchingCubes64.Result res) throws IOException {
+        writeGlb(path, res.vertices, res.faces);
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.decoderapp;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GPU-ready marching cubes output.
+ *
+ * Vertices are written interleaved (px, py, pz, nx, ny, nz as float32,
+ * 24 bytes) straight into caller-provided direct ByteBuffers, in native
+ * byte order. Vertices shared by neighbouring triangles are welded, and
+ * the mesh is split into chunks of at most 65,535 vertices so every
+ * chunk can be drawn with GL_UNSIGNED_SHORT indices.
+ *
+ * Usage:
+ *   GpuMeshWriter w = new GpuMeshWriter(new GpuMeshWriter.BufferPool());
+ *   List&lt;GpuMeshWriter.Chunk&gt; chunks = mc.generateInto(w);
+ *   // glBufferData(..., chunk.vertices) / (..., chunk.indices) per chunk
+ */
+public final class GpuMeshWriter implements MarchingCubesCore.MeshSink {
+
+    public static final int MAX_CHUNK_VERTICES = 65535;
+    public static final int FLOATS_PER_VERTEX = 6;
+    public static final int VERTEX_STRIDE = FLOATS_PER_VERTEX * 4;   // bytes
+    public static final int NORMAL_OFFSET = 3 * 4;                    // bytes
+
+    /** Supplies the direct buffers chunk #chunk is written into */
+    public interface ChunkBuffers {
+        ByteBuffer vertexBuffer(int chunk);
+        ByteBuffer indexBuffer(int chunk);
+    }
+
+    /** One drawable piece of the mesh */
+    public static final class Chunk {
+        public final int index;
+        public final ByteBuffer vertices;   // [position, limit) = this chunk's vertices
+        public final ByteBuffer indices;    // [position, limit) = this chunk's shorts
+        public final int vertexCount;
+        public final int indexCount;
+
+        Chunk(int index, ByteBuffer vertices, ByteBuffer indices, int vertexCount, int indexCount) {
+            this.index = index;
+            this.vertices = vertices;
+            this.indices = indices;
+            this.vertexCount = vertexCount;
+            this.indexCount = indexCount;
+        }
+    }
+
+    /**
+     * Allocates full-size direct buffers the first time a chunk index is
+     * used and hands the same buffers out again on later frames.
+     * The chunks of the previous frame are overwritten.
+     */
+    public static final class BufferPool implements ChunkBuffers {
+        /** Welded MC meshes average ~2 triangles per vertex; 8 indices/vertex leaves headroom */
+        static final int INDEX_CAPACITY = MAX_CHUNK_VERTICES * 8;
+
+        private final List<ByteBuffer> vertexBuffers = new ArrayList<>();
+        private final List<ByteBuffer> indexBuffers = new ArrayList<>();
+
+        @Override
+        public ByteBuffer vertexBuffer(int chunk) {
+            while (vertexBuffers.size() <= chunk) {
+                vertexBuffers.add(ByteBuffer.allocateDirect(MAX_CHUNK_VERTICES * VERTEX_STRIDE));
+            }
+            ByteBuffer b = vertexBuffers.get(chunk);
+            b.clear();
+            return b;
+        }
+
+        @Override
+        public ByteBuffer indexBuffer(int chunk) {
+            while (indexBuffers.size() <= chunk) {
+                indexBuffers.add(ByteBuffer.allocateDirect(INDEX_CAPACITY * 2));
+            }
+            ByteBuffer b = indexBuffers.get(chunk);
+            b.clear();
+            return b;
+        }
+    }
+
+    /* edge key → local vertex index, open addressing, cleared per chunk */
+    private static final int TABLE_BITS = 17;               // 131072 slots > 2 × 65535
+    private static final int TABLE_MASK = (1 << TABLE_BITS) - 1;
+    private final int[] tableKeys = new int[1 << TABLE_BITS];
+    private final int[] tableVals = new int[1 << TABLE_BITS];
+
+    private final ChunkBuffers buffers;
+    private final List<Chunk> chunks = new ArrayList<>();
+
+    private ByteBuffer vb, ib;
+    private int vbStart, ibStart;
+    private int chunkVertices, chunkIndices;
+
+    public GpuMeshWriter(ChunkBuffers buffers) {
+        this.buffers = buffers;
+    }
+
+    /** Start a new mesh; previously returned chunks stay valid until their buffers are reused */
+    void begin() {
+        chunks.clear();
+        vb = null;
+        ib = null;
+    }
+
+    /** Close the last chunk and return all chunks of this mesh */
+    List<Chunk> finish() {
+        closeChunk();
+        return new ArrayList<>(chunks);
+    }
+
+    @Override
+    public boolean wantsNormals() { return true; }
+
+    @Override
+    public void triangle(float[] pos, float[] nrm, int[] key, int a, int b, int c) {
+        if (vb == null) openChunk();
+
+        // vertices this triangle would add to the current chunk
+        int fresh = (lookup(key[a]) < 0 ? 1 : 0)
+                + (lookup(key[b]) < 0 && key[b] != key[a] ? 1 : 0)
+                + (lookup(key[c]) < 0 && key[c] != key[a] && key[c] != key[b] ? 1 : 0);
+        if (chunkVertices + fresh > MAX_CHUNK_VERTICES
+                || vb.remaining() < fresh * VERTEX_STRIDE
+                || ib.remaining() < 3 * 2) {
+            closeChunk();
+            openChunk();
+        }
+
+        ib.putShort((short) vertex(pos, nrm, key, a));
+        ib.putShort((short) vertex(pos, nrm, key, b));
+        ib.putShort((short) vertex(pos, nrm, key, c));
+        chunkIndices += 3;
+    }
+
+    private int vertex(float[] pos, float[] nrm, int[] key, int e) {
+        int k = key[e];
+        int slot = slot(k);
+        if (tableKeys[slot] == k) return tableVals[slot];
+
+        int o = e * 3;
+        vb.putFloat(pos[o]).putFloat(pos[o + 1]).putFloat(pos[o + 2]);
+        vb.putFloat(nrm[o]).putFloat(nrm[o + 1]).putFloat(nrm[o + 2]);
+        tableKeys[slot] = k;
+        tableVals[slot] = chunkVertices;
+        return chunkVertices++;
+    }
+
+    private int lookup(int k) {
+        int slot = slot(k);
+        return tableKeys[slot] == k ? tableVals[slot] : -1;
+    }
+
+    /** Slot holding k, or the empty slot where it would go */
+    private int slot(int k) {
+        int h = (k * 0x9E3779B9) >>> (32 - TABLE_BITS);
+        while (tableKeys[h] != -1 && tableKeys[h] != k) {
+            h = (h + 1) & TABLE_MASK;
+        }
+        return h;
+    }
+
+    private void openChunk() {
+        int n = chunks.size();
+        vb = buffers.vertexBuffer(n).order(ByteOrder.nativeOrder());
+        ib = buffers.indexBuffer(n).order(ByteOrder.nativeOrder());
+        if (!vb.isDirect() || !ib.isDirect()) {
+            throw new IllegalArgumentException("GPU chunk buffers must be direct");
+        }
+        if (vb.remaining() < 3 * VERTEX_STRIDE || ib.remaining() < 3 * 2) {
+            throw new IllegalArgumentException("GPU chunk buffers too small for one triangle");
+        }
+        vbStart = vb.position();
+        ibStart = ib.position();
+        chunkVertices = 0;
+        chunkIndices = 0;
+        Arrays.fill(tableKeys, -1);
+    }
+
+    private void closeChunk() {
+        if (vb == null) return;
+        if (chunkIndices > 0) {
+            ByteBuffer v = vb.duplicate().order(ByteOrder.nativeOrder());
+            v.limit(vb.position()).position(vbStart);
+            ByteBuffer i = ib.duplicate().order(ByteOrder.nativeOrder());
+            i.limit(ib.position()).position(ibStart);
+            chunks.add(new Chunk(chunks.size(), v, i, chunkVertices, chunkIndices));
+        }
+        vb = null;
+        ib = null;
+    }
+}
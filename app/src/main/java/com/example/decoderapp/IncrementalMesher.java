@@ -0,0 +1,174 @@
+package com.example.decoderapp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Per-brick temporal state for volumetric video meshing.
+ *
+ * Each frame the new grid is compared brick by brick against the data
+ * the brick was last meshed from (max |Δ| over the brick's voxels, SDF
+ * and, for 64³, offsets). Only bricks above the threshold go through
+ * marching cubes again; the other bricks keep last frame's triangles and
+ * everything is spliced back into one mesh. For a mostly static capture
+ * the meshing cost follows the moving region.
+ *
+ * Neighbouring bricks share their face, edge and corner voxels, so each
+ * brick keeps its own copy of the voxels it was meshed from (about 1.2×
+ * the grid at 16³ bricks): re-meshing one brick never hides a change from
+ * the neighbours that share those voxels. With threshold 0 the result is
+ * the same triangle set as a full remesh.
+ *
+ * Keep the threshold small (well below a voxel of SDF change): an
+ * unchanged brick keeps vertices from slightly older data, so a large
+ * threshold can open hairline gaps against a re-meshed neighbour.
+ *
+ * Usage: one instance per sequence,
+ *   MarchingCubes.Result mesh = mc.generateIncremental(state);
+ */
+public final class IncrementalMesher {
+
+    private final int brickSize;
+    private final float threshold;
+
+    private int D, H, W;
+    private List<CellBox> bricks = Collections.emptyList();
+    private float[][] brickVertices;
+    private int[][] brickFaces;
+
+    /* voxels each brick was last meshed from, x fastest; null before the first update */
+    private float[][] refSdf;
+    private float[][] refOffsets;   // flat xyz per voxel, null when offsets are not used
+
+    private final List<CellBox> changed = new ArrayList<>();
+
+    public IncrementalMesher(int brickSize, float threshold) {
+        if (brickSize <= 0) throw new IllegalArgumentException("brick size must be > 0: " + brickSize);
+        this.brickSize = brickSize;
+        this.threshold = threshold;
+    }
+
+    /** Forget the previous frame; the next update re-meshes everything */
+    public void reset() {
+        refSdf = null;
+        refOffsets = null;
+        changed.clear();
+    }
+
+    /** Bricks that were re-meshed by the last update */
+    public List<CellBox> changedBricks() {
+        return Collections.unmodifiableList(changed);
+    }
+
+    public int brickCount() {
+        return bricks.size();
+    }
+
+    /** Re-mesh the bricks whose data moved by more than the threshold */
+    void update(MarchingCubesCore core, float[] sdf, float[][] offsets, int D, int H, int W) {
+        boolean fresh = refSdf == null
+                || this.D != D || this.H != H || this.W != W
+                || (offsets == null) != (refOffsets == null);
+        if (fresh) {
+            this.D = D; this.H = H; this.W = W;
+            bricks = core.fullBox().bricks(brickSize);
+            brickVertices = new float[bricks.size()][];
+            brickFaces = new int[bricks.size()][];
+            refSdf = new float[bricks.size()][];
+            refOffsets = offsets != null ? new float[bricks.size()][] : null;
+        }
+
+        // decide every brick against the previous frame first, then re-mesh
+        changed.clear();
+        List<Integer> dirty = new ArrayList<>();
+        for (int i = 0; i < bricks.size(); i++) {
+            if (fresh || exceeds(i, sdf, offsets)) dirty.add(i);
+        }
+        for (int i : dirty) {
+            CellBox b = bricks.get(i);
+            MeshBuilder mb = new MeshBuilder(1 << 10);
+            core.march(b, mb);
+            brickVertices[i] = mb.vertexArray();
+            brickFaces[i] = mb.faceArray();
+            remember(i, sdf, offsets);
+            changed.add(b);
+        }
+    }
+
+    /** max |new - ref| over brick i's voxels (cells x0..x1-1 read voxels x0..x1) */
+    private boolean exceeds(int brick, float[] sdf, float[][] offsets) {
+        CellBox b = bricks.get(brick);
+        float[] ref = refSdf[brick];
+        float[] refO = offsets != null ? refOffsets[brick] : null;
+        int k = 0;
+        for (int z = b.z0; z <= b.z1; z++) {
+            for (int y = b.y0; y <= b.y1; y++) {
+                int row = z * H * W + y * W;
+                for (int i = row + b.x0; i <= row + b.x1; i++, k++) {
+                    if (Math.abs(sdf[i] - ref[k]) > threshold) return true;
+                    if (refO != null) {
+                        float[] o = offsets[i];
+                        int r = k * 3;
+                        if (Math.abs(o[0] - refO[r]) > threshold
+                                || Math.abs(o[1] - refO[r + 1]) > threshold
+                                || Math.abs(o[2] - refO[r + 2]) > threshold) return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void remember(int brick, float[] sdf, float[][] offsets) {
+        CellBox b = bricks.get(brick);
+        int n = b.x1 - b.x0 + 1;
+        int voxels = n * (b.y1 - b.y0 + 1) * (b.z1 - b.z0 + 1);
+        if (refSdf[brick] == null) refSdf[brick] = new float[voxels];
+        if (offsets != null && refOffsets[brick] == null) refOffsets[brick] = new float[voxels * 3];
+        float[] ref = refSdf[brick];
+        int k = 0;
+        for (int z = b.z0; z <= b.z1; z++) {
+            for (int y = b.y0; y <= b.y1; y++, k += n) {
+                int start = z * H * W + y * W + b.x0;
+                System.arraycopy(sdf, start, ref, k, n);
+                if (offsets != null) {
+                    float[] refO = refOffsets[brick];
+                    for (int i = 0; i < n; i++) {
+                        float[] o = offsets[start + i];
+                        refO[(k + i) * 3] = o[0];
+                        refO[(k + i) * 3 + 1] = o[1];
+                        refO[(k + i) * 3 + 2] = o[2];
+                    }
+                }
+            }
+        }
+    }
+
+    /** All brick meshes spliced into one vertex array */
+    float[] vertices() {
+        int n = 0;
+        for (float[] v : brickVertices) n += v.length;
+        float[] out = new float[n];
+        int p = 0;
+        for (float[] v : brickVertices) {
+            System.arraycopy(v, 0, out, p, v.length);
+            p += v.length;
+        }
+        return out;
+    }
+
+    /** All brick faces, re-based onto {@link #vertices()} */
+    int[] faces() {
+        int n = 0;
+        for (int[] f : brickFaces) n += f.length;
+        int[] out = new int[n];
+        int p = 0, base = 0;
+        for (int i = 0; i < brickFaces.length; i++) {
+            int[] f = brickFaces[i];
+            for (int k = 0; k < f.length; k++) out[p++] = f[k] + base;
+            base += brickVertices[i].length / 3;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.decoderapp
+
+import android.util.Log
+
+/**
+ * Chooses per batch between the transformer interpolator and the
+ * analytic LatentBlend fallback, against a per-frame time budget.
+ *
+ * Each pair yields FRAMES_PER_PAIR in-between frames, so a batch of N
+ * pairs has 3N display frames to be ready in, whatever N is. AUTO keeps
+ * a running average of the model's cost per pair and blends analytically
+ * whenever that average spread over the pair's frames exceeds
+ * frameBudgetMs, one display frame by default. The decision does not
+ * depend on the batch size, so TemporalUpsampler's level-sized batches
+ * are judged the same as single pairs. Every
+ * PROBE_EVERY fallback batches a single pair goes through the model
+ * again and its time replaces the average, so one cold or contended run
+ * does not keep the model switched off. A failing model run falls back
+ * rather than dropping the frames, and the model is only probed after.
+ *
+ * interpolatePairs has the signature of Interpolator.interpolatePairs,
+ * so a scheduler plugs into TemporalUpsampler in place of the model:
+ *   val sched = InterpolationScheduler(interpolator::interpolatePairsNcdhw, 128, Latent.Layout.NCDHW, frameBudgetMs = 1000.0 / 60)
+ *   val up = TemporalUpsampler(keyframesNcdhw, sched::interpolatePairs)
+ *
+ * @param layout layout of the frames `neural` returns; the fallback matches it
+ */
+class InterpolationScheduler(
+    private val neural: (List<Pair<FloatArray, FloatArray>>) -> List<List<FloatArray>>,
+    private val channels: Int,
+    private val layout: Latent.Layout = Latent.Layout.DHWC,
+    /** Model time allowed per output frame: the display frame period */
+    @Volatile var frameBudgetMs: Double = 1000.0 / 90,
+    @Volatile var mode: Mode = Mode.AUTO,
+    @Volatile var blend: LatentBlend.Mode = LatentBlend.Mode.SLERP
+) {
+
+    enum class Mode { AUTO, NEURAL, ANALYTIC }
+
+    /** Running average of the model's cost per pair (ms), NaN until measured */
+    var neuralMsPerPair = Double.NaN
+        private set
+    var neuralPairs = 0L
+        private set
+    var analyticPairs = 0L
+        private set
+
+    private var sinceProbe = 0
+
+    @Synchronized
+    fun interpolatePairs(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        if (pairs.isEmpty()) return emptyList()
+        return when (mode) {
+            Mode.NEURAL -> runNeural(pairs)
+            Mode.ANALYTIC -> runAnalytic(pairs)
+            Mode.AUTO -> {
+                val msPerFrame = neuralMsPerPair / FRAMES_PER_PAIR
+                when {
+                    neuralMsPerPair.isNaN() || msPerFrame <= frameBudgetMs -> runNeuralOrFallBack(pairs)
+                    ++sinceProbe >= PROBE_EVERY -> {
+                        sinceProbe = 0
+                        neuralMsPerPair = Double.NaN   // the probe's time replaces the average
+                        runNeuralOrFallBack(pairs.take(1)) + runAnalytic(pairs.drop(1))
+                    }
+                    else -> runAnalytic(pairs)
+                }
+            }
+        }
+    }
+
+    fun stats(): String = String.format(
+        "neural %d pair(s) @ %.2f ms/frame, analytic %d pair(s), budget %.2f ms/frame (%s)",
+        neuralPairs, neuralMsPerPair / FRAMES_PER_PAIR, analyticPairs, frameBudgetMs, mode
+    )
+
+    private fun runNeuralOrFallBack(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> =
+        try {
+            runNeural(pairs)
+        } catch (e: Exception) {
+            Log.w("InterpolationScheduler", "Model run failed, blending ${pairs.size} pair(s) instead", e)
+            neuralMsPerPair = Double.POSITIVE_INFINITY   // probe only
+            runAnalytic(pairs)
+        }
+
+    private fun runNeural(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        val t0 = System.nanoTime()
+        val frames = neural(pairs)
+        val perPair = (System.nanoTime() - t0) / 1e6 / pairs.size
+        neuralMsPerPair = if (neuralMsPerPair.isNaN()) perPair else neuralMsPerPair + ALPHA * (perPair - neuralMsPerPair)
+        neuralPairs += pairs.size
+        return frames
+    }
+
+    private fun runAnalytic(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        analyticPairs += pairs.size
+        return pairs.map { (a, b) -> LatentBlend.interpolate(a, b, channels, blend, layout) }
+    }
+
+    companion object {
+        /** Weight of the newest measurement in the running average */
+        private const val ALPHA = 0.2
+        /** Fallback batches between single-pair model probes */
+        const val PROBE_EVERY = 30
+        /** In-between frames per model run (t = 1/4, 1/2, 3/4) */
+        const val FRAMES_PER_PAIR = 3
+    }
+}
@@ -7,112 +7,143 @@ import ai.onnxruntime.*
 import java.io.File
 import java.io.FileOutputStream
 import java.nio.FloatBuffer
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 
 class Interpolator {
     private var session: OrtSession? = null
     private var env: OrtEnvironment? = null
+    private var core: InterpolatorCore? = null
 
-    fun initModel(context: Context): Boolean {
-        return try {
-            env = OrtEnvironment.getEnvironment()
-            val modelFile = File(context.filesDir, "transformer_compressed.onnx")
+    /* serialises runs; close() never waits on it */
+    private val runLock = ReentrantLock()
+    @Volatile private var closed = false
 
-            if (!modelFile.exists()) {
-                context.assets.open("transformer_compressed.onnx").use { input ->
-                    FileOutputStream(modelFile).use { output ->
-                        input.copyTo(output)
+    /** Loads the model once; later calls return immediately until close() */
+    fun initModel(context: Context): Boolean {
+        runLock.withLock {
+            closed = false
+            if (core != null) return true
+            return try {
+                env = OrtEnvironment.getEnvironment()
+                val modelFile = File(context.filesDir, "transformer_compressed.onnx")
+
+                if (!modelFile.exists()) {
+                    context.assets.open("transformer_compressed.onnx").use { input ->
+                        FileOutputStream(modelFile).use { output ->
+                            input.copyTo(output)
+                        }
                     }
                 }
-            }
 
-            session = env!!.createSession(modelFile.path)
-            Log.d("Interpolator", "Model load success: transformer_compressed.onnx")
-            true
-        } catch (e: Exception) {
-            Log.e("Interpolator", "Model load failed", e)
-            false
+                session = env!!.createSession(modelFile.path)
+                core = InterpolatorCore(env!!, session!!, 128, "Interpolator")
+                Log.d("Interpolator", "Model load success: transformer_compressed.onnx")
+                true
+            } catch (e: Exception) {
+                Log.e("Interpolator", "Model load failed", e)
+                false
+            }
         }
     }
 
     /**
      * 简单插值：输入两个embed特征，输出3个中间特征
      * 输入: [1, 128, 4, 4, 4]
-     * 输出: 3个 [128, 4, 4, 4] 数组
+     * 输出: 3个 [4, 4, 4, 128] (DHWC) 数组
      */
     fun interpolateSimple(embedA: FloatArray, embedB: FloatArray): List<FloatArray> {
-        val session = session ?: throw IllegalStateException("Model not initialized")
-
-        return try {
-            // 准备输入张量 [1, 128, 4, 4, 4]
-            val shape = longArrayOf(1, 128, 4, 4, 4)
-            val tensorA = OnnxTensor.createTensor(env!!, FloatBuffer.wrap(embedA), shape)
-            val tensorB = OnnxTensor.createTensor(env!!, FloatBuffer.wrap(embedB), shape)
-
-            // d_codes: [1, 3, 32] 使用随机值
-            val dCodes = FloatArray(1 * 3 * 32) { (Math.random().toFloat() - 0.5f) * 0.1f }
-            val dCodesTensor = OnnxTensor.createTensor(env!!, FloatBuffer.wrap(dCodes), longArrayOf(1, 3, 32))
-
-            // 运行推理
-            val inputs = mapOf(
-                "embed_A" to tensorA,
-                "embed_B" to tensorB,
-                "d_codes" to dCodesTensor
-            )
+        return interpolatePairs(listOf(embedA to embedB))[0]
+    }
 
-            val results = session.run(inputs)
-            val outputTensor = results[0] as OnnxTensor
-            val outputData = outputTensor.floatBuffer.array()
+    /**
+     * 带布局的插值：A/B 可为 DHWC 或 NCDHW（仅在需要时转换成模型输入的 NCDHW），
+     * 输出 3 个 DHWC latent（模型 embed_out 为 [N, 3, 4, 4, 4, C]），
+     * decodeFeatureGrid(Latent) 只在解码时重排一次。
+     */
+    fun interpolateLatents(embedA: Latent, embedB: Latent): List<Latent> {
+        require(embedA.channels == 128 && embedB.channels == 128) {
+            "need 128-channel latents, got $embedA / $embedB"
+        }
+        return interpolateSimple(embedA.toNcdhw(), embedB.toNcdhw()).map { Latent.dhwc(it, 128) }
+    }
 
-            Log.d("Interpolator", "Raw output size: ${outputData.size} floats")
+    /**
+     * 批量插值：每对 (A, B) 关键帧输出 3 个中间特征，顺序与输入一致。
+     * 输入张量复用，session.run 与下一对的准备 / 上一对的拷贝流水线重叠。输出帧为 DHWC。
+     */
+    fun interpolatePairs(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        return interpolatePairs(pairs, Latent.Layout.DHWC)
+    }
 
-            // 关键：转换为Decoder可用的格式
-            convertForDecoder(outputData)
+    /**
+     * 同上，但输出帧转成 NCDHW（拷出时顺便重排），与输入布局一致，
+     * 可再次作为插值输入（TemporalUpsampler 递归细分）或直接交给解码器。
+     */
+    fun interpolatePairsNcdhw(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        return interpolatePairs(pairs, Latent.Layout.NCDHW)
+    }
 
+    private fun interpolatePairs(pairs: List<Pair<FloatArray, FloatArray>>, layout: Latent.Layout): List<List<FloatArray>> = withCore { core ->
+        try {
+            val t0 = System.nanoTime()
+            val frames = core.run(pairs, layout)
+            Log.d("Interpolator", "Interpolated ${pairs.size} pair(s) in ${"%.2f".format((System.nanoTime() - t0) / 1e6)} ms")
+            frames
         } catch (e: Exception) {
             Log.e("Interpolator", "Interpolation failed", e)
             throw e
         }
     }
 
-    private fun convertForDecoder(data: FloatArray): List<FloatArray> {
-        // 假设 ONNX Runtime 输出的 FloatArray 内存布局
-        // 与其张量形状 [3, 128, 4, 4, 4] 的逻辑顺序完全一致。
-        // 即：第一个 8192 个浮点数是第0帧，接着的 8192 个是第1帧，以此类推。
-
-        val frames = 3
-        val valuesPerFrame = 128 * 4 * 4 * 4 // 等于 8192
-
-        // 检查总数据量是否符合预期
-        val expectedTotalSize = frames * valuesPerFrame
-        if (data.size != expectedTotalSize) {
-            Log.e("Interpolator", "Output size mismatch! expectedResult=$expectedTotalSize, but got data.size=${data.size}")
-            // 即使大小不匹配，也尝试处理，但记录严重错误
+    /**
+     * 零拷贝批量插值：每对的 3 帧以 FloatBuffer 视图交给 consumer(pairIndex, frames)，
+     * 视图直接指向复用的输出缓冲区（DHWC, direct, native order），
+     * 可直接交给 decodeFeatureGrid(view, Latent.Layout.DHWC)，仅在回调内有效。
+     */
+    fun interpolateViews(pairs: List<Pair<FloatArray, FloatArray>>, consumer: (Int, List<FloatBuffer>) -> Unit) = withCore { core ->
+        try {
+            val t0 = System.nanoTime()
+            core.runViews(pairs, consumer)
+            Log.d("Interpolator", "Interpolated ${pairs.size} pair(s) (views) in ${"%.2f".format((System.nanoTime() - t0) / 1e6)} ms")
+        } catch (e: Exception) {
+            Log.e("Interpolator", "Interpolation failed", e)
+            throw e
         }
+    }
 
-        val result = mutableListOf<FloatArray>()
-
-        for (f in 0 until frames) {
-            val startIndex = f * valuesPerFrame
-            val endIndex = startIndex + valuesPerFrame
+    /**
+     * Returns at once, also while a run is in progress (e.g. from onDestroy):
+     * the sessions are freed now if idle, otherwise by the run when it ends.
+     */
+    fun close() {
+        closed = true
+        releaseIfClosed()
+    }
 
-            // 安全检查，防止数据大小不足导致崩溃
-            if (endIndex > data.size) {
-                Log.e("Interpolator", "Data not enough for $f th frame, pipeline stopped")
-                break // 中止循环
+    private inline fun <T> withCore(block: (InterpolatorCore) -> T): T {
+        try {
+            return runLock.withLock {
+                val core = core?.takeIf { !closed } ?: throw IllegalStateException("Model not initialized")
+                block(core)
             }
-
-            // 直接、简单、可靠地按顺序分割数组
-            val frameData = data.copyOfRange(startIndex, endIndex)
-            result.add(frameData)
-
-            Log.d("Interpolator", "Frame $f extracted finished, size: ${frameData.size}")
+        } finally {
+            releaseIfClosed()
         }
-
-        return result
     }
 
-
-    fun close() {
-        session?.close()
+    /* checked after unlocking too, so a close() that lost the race for the lock is not missed */
+    private fun releaseIfClosed() {
+        if (!closed || !runLock.tryLock()) return
+        try {
+            if (closed) {
+                core?.close()
+                core = null
+                session?.close()
+                session = null
+            }
+        } finally {
+            runLock.unlock()
+        }
     }
 }
\ No newline at end of file
@@ -6,118 +6,145 @@ import ai.onnxruntime.*
 import java.io.File
 import java.io.FileOutputStream
 import java.nio.FloatBuffer
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 
 class Interpolator64 {
     private var session: OrtSession? = null
     private var env: OrtEnvironment? = null
+    private var core: InterpolatorCore? = null
 
-    fun initModel(context: Context): Boolean {
-        return try {
-            env = OrtEnvironment.getEnvironment()
-
-            // 模型名改成你导出的 64 模型
-            val modelFile = File(context.filesDir, "transformer_compressed_64.onnx")
+    /* serialises runs; close() never waits on it */
+    private val runLock = ReentrantLock()
+    @Volatile private var closed = false
 
-            if (!modelFile.exists()) {
-                context.assets.open("transformer_compressed_64.onnx").use { input ->
-                    FileOutputStream(modelFile).use { output ->
-                        input.copyTo(output)
+    /** Loads the model once; later calls return immediately until close() */
+    fun initModel(context: Context): Boolean {
+        runLock.withLock {
+            closed = false
+            if (core != null) return true
+            return try {
+                env = OrtEnvironment.getEnvironment()
+
+                // 模型名改成你导出的 64 模型
+                val modelFile = File(context.filesDir, "transformer_compressed_64.onnx")
+
+                if (!modelFile.exists()) {
+                    context.assets.open("transformer_compressed_64.onnx").use { input ->
+                        FileOutputStream(modelFile).use { output ->
+                            input.copyTo(output)
+                        }
                     }
                 }
-            }
 
-            session = env!!.createSession(modelFile.path)
-            Log.d("Interpolator64", "Model load success: transformer_compressed_64.onnx")
-            true
-        } catch (e: Exception) {
-            Log.e("Interpolator64", "Model load failed", e)
-            false
+                session = env!!.createSession(modelFile.path)
+                core = InterpolatorCore(env!!, session!!, 64, "Interpolator64")
+                Log.d("Interpolator64", "Model load success: transformer_compressed_64.onnx")
+                true
+            } catch (e: Exception) {
+                Log.e("Interpolator64", "Model load failed", e)
+                false
+            }
         }
     }
 
     /**
      * 简单插值 (64-dim)
      * 输入: [1, 64, 4, 4, 4]
-     * 输出: List< FloatArray >, 每帧4096 floats
+     * 输出: List< FloatArray >, 每帧4096 floats (DHWC)
      */
     fun interpolateSimple(embedA: FloatArray, embedB: FloatArray): List<FloatArray> {
-        val session = session ?: throw IllegalStateException("Model not initialized")
-
-        return try {
-
-            // -----------------------------
-            // 1) 输入 tensor 尺寸 (64 instead of 128)
-            // -----------------------------
-            val shape = longArrayOf(1, 64, 4, 4, 4)
-
-            val tensorA = OnnxTensor.createTensor(env!!, FloatBuffer.wrap(embedA), shape)
-            val tensorB = OnnxTensor.createTensor(env!!, FloatBuffer.wrap(embedB), shape)
-
-            // -----------------------------
-            // 2) d_codes = [1, 3, 32]
-            // -----------------------------
-            val dCodes = FloatArray(1 * 3 * 32) { (Math.random().toFloat() - 0.5f) * 0.1f }
-            val dCodesTensor = OnnxTensor.createTensor(
-                env!!,
-                FloatBuffer.wrap(dCodes),
-                longArrayOf(1, 3, 32)
-            )
-
-            // -----------------------------
-            // 3) Run inference
-            // -----------------------------
-            val results = session.run(
-                mapOf(
-                    "embed_A" to tensorA,
-                    "embed_B" to tensorB,
-                    "d_codes" to dCodesTensor
-                )
-            )
-
-            val output = results[0] as OnnxTensor
-            val raw = output.floatBuffer.array()
-
-            Log.d("Interpolator64", "Model output size = ${raw.size}")
-
-            // -----------------------------
-            // 4) 转换格式返回 3 帧
-            // shape = [3, 64, 4, 4, 4] → 每帧4096 floats
-            // -----------------------------
-            convertForDecoder(raw, channels = 64)
+        return interpolatePairs(listOf(embedA to embedB))[0]
+    }
 
+    /**
+     * 带布局的插值：A/B 可为 DHWC 或 NCDHW（仅在需要时转换成模型输入的 NCDHW），
+     * 输出 3 个 DHWC latent（模型 embed_out 为 [N, 3, 4, 4, 4, C]），
+     * decodeFeatureGrid(Latent) 只在解码时重排一次。
+     */
+    fun interpolateLatents(embedA: Latent, embedB: Latent): List<Latent> {
+        require(embedA.channels == 64 && embedB.channels == 64) {
+            "need 64-channel latents, got $embedA / $embedB"
+        }
+        return interpolateSimple(embedA.toNcdhw(), embedB.toNcdhw()).map { Latent.dhwc(it, 64) }
+    }
+
+    /**
+     * 批量插值：每对 (A, B) 关键帧输出 3 个中间特征，顺序与输入一致。
+     * 输入张量复用，session.run 与下一对的准备 / 上一对的拷贝流水线重叠。输出帧为 DHWC。
+     */
+    fun interpolatePairs(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        return interpolatePairs(pairs, Latent.Layout.DHWC)
+    }
+
+    /**
+     * 同上，但输出帧转成 NCDHW（拷出时顺便重排），与输入布局一致，
+     * 可再次作为插值输入（TemporalUpsampler 递归细分）或直接交给解码器。
+     */
+    fun interpolatePairsNcdhw(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        return interpolatePairs(pairs, Latent.Layout.NCDHW)
+    }
+
+    private fun interpolatePairs(pairs: List<Pair<FloatArray, FloatArray>>, layout: Latent.Layout): List<List<FloatArray>> = withCore { core ->
+        try {
+            val t0 = System.nanoTime()
+            val frames = core.run(pairs, layout)
+            Log.d("Interpolator64", "Interpolated ${pairs.size} pair(s) in ${"%.2f".format((System.nanoTime() - t0) / 1e6)} ms")
+            frames
         } catch (e: Exception) {
             Log.e("Interpolator64", "Interpolation failed", e)
             throw e
         }
     }
 
-    private fun convertForDecoder(data: FloatArray, channels: Int): List<FloatArray> {
-        val frames = 3
-        val valuesPerFrame = channels * 4 * 4 * 4  // 64*4*4*4 = 4096
-
-        val expected = frames * valuesPerFrame
-        if (data.size != expected) {
-            Log.e("Interpolator64",
-                "Output size mismatch! expectedResult=$expected, but got data.size=${data.size}"
-            )
+    /**
+     * 零拷贝批量插值：每对的 3 帧以 FloatBuffer 视图交给 consumer(pairIndex, frames)，
+     * 视图直接指向复用的输出缓冲区（DHWC, direct, native order），
+     * 可直接交给 decodeFeatureGrid(view, Latent.Layout.DHWC)，仅在回调内有效。
+     */
+    fun interpolateViews(pairs: List<Pair<FloatArray, FloatArray>>, consumer: (Int, List<FloatBuffer>) -> Unit) = withCore { core ->
+        try {
+            val t0 = System.nanoTime()
+            core.runViews(pairs, consumer)
+            Log.d("Interpolator64", "Interpolated ${pairs.size} pair(s) (views) in ${"%.2f".format((System.nanoTime() - t0) / 1e6)} ms")
+        } catch (e: Exception) {
+            Log.e("Interpolator64", "Interpolation failed", e)
+            throw e
         }
+    }
 
-        val result = mutableListOf<FloatArray>()
-
-        for (i in 0 until frames) {
-            val start = i * valuesPerFrame
-            val end = start + valuesPerFrame
-            if (end > data.size) break
-
-            val frame = data.copyOfRange(start, end)
-            Log.d("Interpolator64", "Frame $i size = ${frame.size}")
+    /**
+     * Returns at once, also while a run is in progress (e.g. from onDestroy):
+     * the sessions are freed now if idle, otherwise by the run when it ends.
+     */
+    fun close() {
+        closed = true
+        releaseIfClosed()
+    }
 
-            result.add(frame)
+    private inline fun <T> withCore(block: (InterpolatorCore) -> T): T {
+        try {
+            return runLock.withLock {
+                val core = core?.takeIf { !closed } ?: throw IllegalStateException("Model not initialized")
+                block(core)
+            }
+        } finally {
+            releaseIfClosed()
         }
-        return result
     }
 
-    fun close() {
-        session?.close()
+    /* checked after unlocking too, so a close() that lost the race for the lock is not missed */
+    private fun releaseIfClosed() {
+        if (!closed || !runLock.tryLock()) return
+        try {
+            if (closed) {
+                core?.close()
+                core = null
+                session?.close()
+                session = null
+            }
+        } finally {
+            runLock.unlock()
+        }
     }
 }
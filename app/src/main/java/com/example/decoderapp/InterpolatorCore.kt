@@ -0,0 +1,152 @@
+package com.example.decoderapp
+
+import ai.onnxruntime.*
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.FloatBuffer
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+
+/**
+ * Shared inference loop of Interpolator / Interpolator64.
+ *
+ * Input tensors are created once over direct, native-order buffers, so
+ * ONNX Runtime reads them in place and a new pair only costs a bulk put.
+ * The output is pinned the same way: session.run writes the
+ * embed_out [1, 3, 4, 4, 4, C] result straight into a direct buffer owned
+ * by the slot, and runViews hands out the three frames as FloatBuffer
+ * slices of it. Inputs are NCDHW but each output frame is DHWC, the
+ * encoder's layout; Decoder.decodeFeatureGrid(view, Latent.Layout.DHWC)
+ * reorders a view straight into its input tensor.
+ * There are two slots: while session.run works on pair i on the
+ * runner thread, the caller fills the other slot with pair i+1 and
+ * consumes the frames of pair i-1. Across a sequence the only per-pair
+ * work left on the critical path is inference.
+ *
+ * Not thread-safe; the owning interpolator serialises calls.
+ */
+internal class InterpolatorCore(
+    private val env: OrtEnvironment,
+    private val session: OrtSession,
+    private val channels: Int,
+    private val tag: String
+) : AutoCloseable {
+
+    private val latentFloats = channels * 4 * 4 * 4
+    private val shape = longArrayOf(1, channels.toLong(), 4, 4, 4)
+
+    private val outputName = session.outputNames.first()
+
+    private class Slot(
+        val a: FloatBuffer, val b: FloatBuffer, val d: FloatBuffer, val inputs: Map<String, OnnxTensor>,
+        val frames: List<FloatBuffer>, val outputs: Map<String, OnnxTensor>
+    )
+
+    private val slots = Array(2) { newSlot() }
+
+    private val runner: ExecutorService = Executors.newSingleThreadExecutor { r ->
+        Thread(r, "$tag-run")
+    }
+
+    private fun newSlot(): Slot {
+        val a = direct(latentFloats)
+        val b = direct(latentFloats)
+        val d = direct(D_CODES)
+        val out = direct(FRAMES * latentFloats)
+        val frames = List(FRAMES) { f ->
+            // capacity == one frame, so clear() restores exactly the frame
+            out.limit((f + 1) * latentFloats).position(f * latentFloats)
+            out.slice()
+        }
+        out.clear()
+        return Slot(a, b, d, mapOf(
+            "embed_A" to OnnxTensor.createTensor(env, a, shape),
+            "embed_B" to OnnxTensor.createTensor(env, b, shape),
+            "d_codes" to OnnxTensor.createTensor(env, d, longArrayOf(1, 3, 32))
+        ), frames, mapOf(
+            outputName to OnnxTensor.createTensor(env, out, longArrayOf(1, FRAMES.toLong(), 4, 4, 4, channels.toLong()))
+        ))
+    }
+
+    /** 3 in-between frames for each (A, B) pair, in input order; NCDHW is reordered while copying out */
+    fun run(pairs: List<Pair<FloatArray, FloatArray>>, layout: Latent.Layout = Latent.Layout.DHWC): List<List<FloatArray>> {
+        val out = ArrayList<List<FloatArray>>(pairs.size)
+        runViews(pairs) { _, views ->
+            out.add(views.map { view ->
+                val frame = FloatArray(latentFloats)
+                if (layout == Latent.Layout.DHWC) view.duplicate().get(frame)
+                else Latent.reorder(view, channels, Latent.Layout.DHWC, FloatBuffer.wrap(frame))
+                frame
+            })
+        }
+        return out
+    }
+
+    /**
+     * Like run, but hands each pair's 3 frames to consumer as views of the
+     * pinned output (DHWC, position 0, limit C*64, native order, direct). The
+     * views are only valid inside the callback: the slot is refilled once
+     * it returns.
+     */
+    fun runViews(pairs: List<Pair<FloatArray, FloatArray>>, consumer: (Int, List<FloatBuffer>) -> Unit) {
+        var pending: Future<OrtSession.Result>? = null
+        try {
+            for ((i, pair) in pairs.withIndex()) {
+                val slot = slots[i % 2]
+                fill(slot, pair.first, pair.second)
+                val previous = pending
+                pending = runner.submit<OrtSession.Result> { session.run(slot.inputs, slot.outputs) }
+                // pair i runs while pair i-1 is consumed
+                previous?.let { consume(it, i - 1, consumer) }
+            }
+            val last = pending
+            pending = null
+            last?.let { consume(it, pairs.size - 1, consumer) }
+        } finally {
+            // on failure, never leave a run reading a slot the next call refills
+            pending?.let { runCatching { it.get().close() } }
+        }
+    }
+
+    private fun fill(slot: Slot, embedA: FloatArray, embedB: FloatArray) {
+        require(embedA.size == latentFloats && embedB.size == latentFloats) {
+            "need embed data of size $latentFloats floats, got ${embedA.size} / ${embedB.size}"
+        }
+        slot.a.clear(); slot.a.put(embedA)
+        slot.b.clear(); slot.b.put(embedB)
+        // d_codes: [1, 3, 32] 使用随机值
+        slot.d.clear()
+        repeat(D_CODES) { slot.d.put((Math.random().toFloat() - 0.5f) * 0.1f) }
+    }
+
+    /** Waits for run i and passes the slot's output views to consumer */
+    private fun consume(result: Future<OrtSession.Result>, i: Int, consumer: (Int, List<FloatBuffer>) -> Unit) {
+        val run = try {
+            result.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+        run.close()   // pinned output: nothing to read from the result itself
+        val views = slots[i % 2].frames
+        for (view in views) view.clear()   // undo reads of the previous consumer
+        consumer(i, views)
+    }
+
+    override fun close() {
+        runner.shutdown()
+        for (slot in slots) {
+            slot.inputs.values.forEach { it.close() }
+            slot.outputs.values.forEach { it.close() }
+        }
+    }
+
+    private companion object {
+        const val FRAMES = 3
+        const val D_CODES = 1 * 3 * 32
+
+        fun direct(floats: Int): FloatBuffer =
+            ByteBuffer.allocateDirect(floats * 4).order(ByteOrder.nativeOrder()).asFloatBuffer()
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.decoderapp;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * A 4×4×4×C latent that knows its memory layout.
+ *
+ * Encoder output files are DHWC (1,4,4,4,C), and so are interpolated
+ * frames (the transformers' embed_out is [N, 3, 4, 4, 4, C]); the decoders
+ * and the interpolator inputs take NCDHW (1,C,4,4,4). Passing a Latent
+ * instead of a bare float[] lets each
+ * consumer ask for the layout it needs: toNcdhw()/toDhwc() return the
+ * backing array untouched when the layout already matches and reorder
+ * only otherwise.
+ */
+public final class Latent {
+
+    public enum Layout { DHWC, NCDHW }
+
+    public static final int SPATIAL = 4 * 4 * 4;
+
+    public final Layout layout;
+    public final int channels;
+    /** channels*64 floats in layout order; shared, not copied */
+    public final float[] data;
+
+    public Latent(Layout layout, int channels, float[] data) {
+        if (data.length < channels * SPATIAL) {
+            throw new IllegalArgumentException("need " + channels * SPATIAL + " floats for C=" + channels
+                    + ", got " + data.length);
+        }
+        this.layout = layout;
+        this.channels = channels;
+        this.data = data;
+    }
+
+    public static Latent dhwc(float[] data, int channels) {
+        return new Latent(Layout.DHWC, channels, data);
+    }
+
+    public static Latent ncdhw(float[] data, int channels) {
+        return new Latent(Layout.NCDHW, channels, data);
+    }
+
+    /** (1,C,4,4,4) flat: data itself when already NCDHW */
+    public float[] toNcdhw() {
+        return layout == Layout.NCDHW ? data : reorder(data, channels, Layout.DHWC, null);
+    }
+
+    /** (1,4,4,4,C) flat: data itself when already DHWC */
+    public float[] toDhwc() {
+        return layout == Layout.DHWC ? data : reorder(data, channels, Layout.NCDHW, null);
+    }
+
+    public Latent as(Layout target) {
+        if (target == layout) return this;
+        return new Latent(target, channels, target == Layout.NCDHW ? toNcdhw() : toDhwc());
+    }
+
+    /** NPY shape for saving: (1,C,4,4,4) or (4,4,4,C), see inferLayout */
+    public int[] npyShape() {
+        return layout == Layout.NCDHW ? new int[]{1, channels, 4, 4, 4} : new int[]{4, 4, 4, channels};
+    }
+
+    /* ---------------- layout helpers ---------------- */
+
+    /**
+     * Reorders channels*64 floats from layout `from` to the other layout;
+     * dst is reused when large enough.
+     */
+    public static float[] reorder(float[] src, int channels, Layout from, float[] dst) {
+        int count = channels * SPATIAL;
+        if (dst == null || dst.length < count) dst = new float[count];
+        int p = 0;
+        if (from == Layout.DHWC) {
+            for (int s = 0; s < SPATIAL; s++)
+                for (int c = 0; c < channels; c++)
+                    dst[c * SPATIAL + s] = src[p++];
+        } else {
+            for (int c = 0; c < channels; c++)
+                for (int s = 0; s < SPATIAL; s++)
+                    dst[s * channels + c] = src[p++];
+        }
+        return dst;
+    }
+
+    /**
+     * Buffer version of reorder: reads src from its position, writes dst
+     * from its position; neither position moves.
+     */
+    public static void reorder(FloatBuffer src, int channels, Layout from, FloatBuffer dst) {
+        int count = channels * SPATIAL;
+        if (src.remaining() < count || dst.remaining() < count) {
+            throw new IllegalArgumentException("need " + count + " floats, src has " + src.remaining()
+                    + ", dst has " + dst.remaining());
+        }
+        int p = src.position(), q = dst.position();
+        if (from == Layout.DHWC) {
+            for (int s = 0; s < SPATIAL; s++)
+                for (int c = 0; c < channels; c++)
+                    dst.put(q + c * SPATIAL + s, src.get(p++));
+        } else {
+            for (int c = 0; c < channels; c++)
+                for (int s = 0; s < SPATIAL; s++)
+                    dst.put(q + s * channels + c, src.get(p++));
+        }
+    }
+
+    /**
+     * Layout of an NPY latent from its shape. (4,4,4,C), with or without
+     * leading 1s, is DHWC; only the full model-input shape (1,C,4,4,4) is
+     * NCDHW. A bare (C,4,4,4) is what interpolation frames were saved as
+     * before they carried their real shape, and their data is DHWC, so it
+     * is read as DHWC (see isLegacyFrameShape). A flat (C*64) array is
+     * taken as DHWC, the encoder's order; for C == 4 the shape is
+     * ambiguous and DHWC wins for the same reason.
+     */
+    public static Layout inferLayout(int[] shape, int channels) throws IOException {
+        if (Arrays.equals(shape, new int[]{1, channels, 4, 4, 4})) return Layout.NCDHW;
+        if (isLegacyFrameShape(shape)) {
+            if (shape[0] == channels) return Layout.DHWC;
+            throw new IOException("NPY shape " + Arrays.toString(shape) + " has " + shape[0]
+                    + " channels, expected " + channels);
+        }
+        int i = 0;
+        while (i < shape.length - 1 && shape[i] == 1) i++;
+        int[] s = Arrays.copyOfRange(shape, i, shape.length);
+        if (Arrays.equals(s, new int[]{4, 4, 4, channels})) return Layout.DHWC;
+        if (s.length == 1 && s[0] == channels * SPATIAL) return Layout.DHWC;
+        throw new IOException("NPY shape " + Arrays.toString(shape) + " is neither (4,4,4," + channels
+                + ") nor (1," + channels + ",4,4,4)");
+    }
+
+    /**
+     * (C,4,4,4) with C != 4: an interpolated frame saved with an NCDHW
+     * label over DHWC data. Such files should be regenerated, or re-saved
+     * with shape (4,4,4,C).
+     */
+    public static boolean isLegacyFrameShape(int[] shape) {
+        return shape.length == 4 && shape[0] != 4 && shape[1] == 4 && shape[2] == 4 && shape[3] == 4;
+    }
+
+    @Override
+    public String toString() {
+        return "Latent " + layout + " C=" + channels;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory-mapped bank of fixed-size latent codes.
+ *
+ * Replaces FileUtil.loadLatentCodes + getLatentCodeSubset for large
+ * banks: the file is mapped once (never read into the heap) and codes
+ * are handed out as zero-copy FloatBuffer slices. Files over 2 GB are
+ * mapped as several segments, each holding a whole number of codes, so
+ * a code never straddles two mappings.
+ *
+ * Accepts the raw little-endian float32 files loadLatentCodes reads, or
+ * a float32 .npy whose trailing dimensions multiply to latentDim.
+ *
+ * Usage:
+ *   LatentBank bank = LatentBank.open(ctx, uri, 8192);
+ *   FloatBuffer batch = bank.newBatchBuffer(8);
+ *   bank.gather(new int[]{3, 17, 42}, batch);   // → decode / interpolate
+ */
+public final class LatentBank {
+
+    /* segment size cap; the actual size is rounded down to whole codes */
+    static final long MAX_SEGMENT_BYTES = 1L << 30;
+
+    private final ByteBuffer[] segments;
+    private final int codesPerSegment;
+    private final int latentDim;
+    private final int size;
+
+    private LatentBank(ByteBuffer[] segments, int codesPerSegment, int latentDim, int size) {
+        this.segments = segments;
+        this.codesPerSegment = codesPerSegment;
+        this.latentDim = latentDim;
+        this.size = size;
+    }
+
+    public static LatentBank open(File file, int latentDim) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return open(in.getChannel(), latentDim);
+        }
+    }
+
+    public static LatentBank open(Context ctx, Uri uri, int latentDim) throws IOException {
+        ParcelFileDescriptor pfd = ctx.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) throw new FileNotFoundException("Cannot open " + uri);
+        try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            return open(in.getChannel(), latentDim);
+        } finally {
+            pfd.close();
+        }
+    }
+
+    /** Maps the channel; the mappings stay valid after it is closed */
+    public static LatentBank open(FileChannel ch, int latentDim) throws IOException {
+        if (latentDim <= 0) throw new IllegalArgumentException("latentDim must be > 0: " + latentDim);
+
+        long dataOffset = 0;
+        long dataBytes = ch.size();
+        ByteOrder order = ByteOrder.LITTLE_ENDIAN;
+        if (NpyReader.isNpy(ch)) {
+            NpyReader.Header h = NpyReader.readHeader(ch);
+            if (!h.descr.equals("<f4") && !h.descr.equals(">f4")) {
+                throw new IOException("Latent bank NPY not float32: descr=" + h.descr);
+            }
+            if (h.fortranOrder && h.shape.length > 1) throw new IOException("Fortran-order NPY not supported: " + h);
+            if (h.elementCount() % latentDim != 0) {
+                throw new IOException("Latent bank " + h + " is not a whole number of " + latentDim + "-float codes");
+            }
+            dataOffset = h.dataOffset;
+            dataBytes = h.elementCount() * 4;
+            order = NpyReader.order(h);
+            if (dataOffset + dataBytes > ch.size()) throw new IOException("Latent bank NPY truncated: " + h);
+        } else if (dataBytes % 4 != 0) {
+            throw new IOException("Latent bank size " + dataBytes + " is not a multiple of 4");
+        }
+
+        long codeBytes = latentDim * 4L;
+        long count = dataBytes / codeBytes;
+        if (count > Integer.MAX_VALUE) throw new IOException("Latent bank holds too many codes: " + count);
+        if (dataBytes % codeBytes != 0) {
+            // same leniency as getLatentCodeSubset: ignore a trailing partial code
+            Log.w("LatentBank", "Ignoring " + dataBytes % codeBytes + " trailing bytes");
+        }
+
+        int codesPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES / codeBytes);
+        int segmentCount = (int) ((count + codesPerSegment - 1) / codesPerSegment);
+        ByteBuffer[] segments = new ByteBuffer[segmentCount];
+        for (int s = 0; s < segmentCount; s++) {
+            long first = (long) s * codesPerSegment;
+            long codes = Math.min(codesPerSegment, count - first);
+            segments[s] = ch.map(FileChannel.MapMode.READ_ONLY, dataOffset + first * codeBytes, codes * codeBytes)
+                    .order(order);
+        }
+        return new LatentBank(segments, codesPerSegment, latentDim, (int) count);
+    }
+
+    /** Number of codes */
+    public int size() {
+        return size;
+    }
+
+    public int latentDim() {
+        return latentDim;
+    }
+
+    /** Zero-copy view of code i */
+    public FloatBuffer code(int i) {
+        if (i < 0 || i >= size) throw new IndexOutOfBoundsException("code " + i + " of " + size);
+        ByteBuffer segment = segments[i / codesPerSegment];
+        ByteBuffer b = segment.duplicate();   // duplicate() and slice() reset the byte order
+        int off = (i % codesPerSegment) * latentDim * 4;
+        b.limit(off + latentDim * 4).position(off);
+        return b.slice().order(segment.order()).asFloatBuffer();
+    }
+
+    /** Copies code i into dst (allocated if null or too small) */
+    public float[] code(int i, float[] dst) {
+        if (dst == null || dst.length < latentDim) dst = new float[latentDim];
+        code(i).get(dst, 0, latentDim);
+        return dst;
+    }
+
+    /**
+     * Direct, native-order buffer for up to maxBatch codes; allocate once
+     * and pass to {@link #gather} every frame (it can back an OnnxTensor
+     * without another copy).
+     */
+    public FloatBuffer newBatchBuffer(int maxBatch) {
+        return ByteBuffer.allocateDirect(maxBatch * latentDim * 4).order(ByteOrder.nativeOrder()).asFloatBuffer();
+    }
+
+    /**
+     * Copies the codes at indices back to back into dst (cleared first)
+     * and returns it flipped: [0, indices.length × latentDim).
+     */
+    public FloatBuffer gather(int[] indices, FloatBuffer dst) {
+        if (dst.capacity() < indices.length * latentDim) {
+            throw new IllegalArgumentException("batch buffer holds " + dst.capacity() / latentDim
+                    + " codes, need " + indices.length);
+        }
+        dst.clear();
+        for (int i : indices) dst.put(code(i));
+        dst.flip();
+        return dst;
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.decoderapp;
+
+import android.util.Log;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Frame-skipping gate in front of a decoder: when the incoming latent is
+ * within threshold of the one last decoded, the previous result is
+ * reused instead of running a 64³ / 128³ decode.
+ *
+ * The distance is the relative RMS difference ||x - ref|| / ||ref|| over
+ * the 4096 / 8192 latent floats, about 10 µs per check. ref is
+ * the latent of the last real decode, not the last frame seen: a slow
+ * drift through many small steps still triggers a decode once it adds up.
+ *
+ * Reuse is lossy by design; keep the threshold well below the latent
+ * change between visibly different frames (0 disables reuse). Static
+ * stretches of a capture then cost one check per frame.
+ *
+ * Decoders take one per call (decodeFeatureGrid(latent, gate)), so the
+ * same session decodes gated playback and exact one-shot frames; a reused
+ * DecodeResult keeps its cacheKey, so MarchingCubes.generate(cache, key)
+ * returns the previous mesh as well.
+ */
+public final class LatentGate<R> {
+
+    private static final String TAG = "LatentGate";
+    /** Weight of the newest decode in the running decode-cost average */
+    private static final double ALPHA = 0.2;
+
+    private volatile float threshold;
+
+    private float[] ref;
+    private double refNormSq;
+    private R last;
+
+    private long decoded, reused;
+    private double avgDecodeMs = Double.NaN;
+    private double savedMs, checkMs;
+    private double lastDistance = Double.NaN;
+
+    public LatentGate(float threshold) {
+        setThreshold(threshold);
+    }
+
+    public void setThreshold(float threshold) {
+        if (!(threshold >= 0)) throw new IllegalArgumentException("threshold must be >= 0: " + threshold);
+        this.threshold = threshold;
+    }
+
+    public float getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Previous result when latent is within threshold of the last decoded
+     * one (counted as a reuse), otherwise null: decode, then call decoded().
+     */
+    public synchronized R reuse(FloatBuffer latent) {
+        long t0 = System.nanoTime();
+        boolean hit = last != null && threshold > 0 && latent.remaining() == ref.length && within(latent);
+        checkMs += (System.nanoTime() - t0) / 1e6;
+        if (!hit) return null;
+        reused++;
+        if (!Double.isNaN(avgDecodeMs)) savedMs += avgDecodeMs;
+        return last;
+    }
+
+    /** Records a real decode of latent [position, limit) and its cost */
+    public synchronized void decoded(FloatBuffer latent, R result, double costMs) {
+        if (ref == null || ref.length != latent.remaining()) ref = new float[latent.remaining()];
+        latent.duplicate().get(ref);
+        double n = 0;
+        for (float v : ref) n += v * v;
+        refNormSq = n;
+        last = result;
+        decoded++;
+        avgDecodeMs = Double.isNaN(avgDecodeMs) ? costMs : avgDecodeMs + ALPHA * (costMs - avgDecodeMs);
+    }
+
+    /** Forget the reference, e.g. on seek to an unrelated frame; metrics are kept */
+    public synchronized void reset() {
+        ref = null;
+        last = null;
+        lastDistance = Double.NaN;
+    }
+
+    public synchronized long decodedCount() {
+        return decoded;
+    }
+
+    public synchronized long reusedCount() {
+        return reused;
+    }
+
+    /** Decode time saved by reuses, estimated from the running average of real decodes */
+    public synchronized double savedMs() {
+        return savedMs;
+    }
+
+    public synchronized String stats() {
+        return String.format("decoded %d, reused %d (threshold %.4f, last distance %.4f), saved ≈ %.1f ms, checks %.2f ms",
+                decoded, reused, threshold, lastDistance, savedMs, checkMs);
+    }
+
+    public synchronized void logStats() {
+        Log.i(TAG, stats());
+    }
+
+    /* ---------------- internals ---------------- */
+
+    /** Relative RMS distance to ref ≤ threshold */
+    private boolean within(FloatBuffer latent) {
+        double sum = 0;
+        int p = latent.position();
+        if (latent.hasArray()) {
+            float[] x = latent.array();
+            int off = latent.arrayOffset() + p;
+            for (int i = 0; i < ref.length; i++) {
+                float d = x[off + i] - ref[i];
+                sum += d * d;
+            }
+        } else {
+            for (int i = 0; i < ref.length; i++) {
+                float d = latent.get(p + i) - ref[i];
+                sum += d * d;
+            }
+        }
+        lastDistance = Math.sqrt(sum / Math.max(refNormSq, 1e-30));
+        return lastDistance <= threshold;
+    }
+}
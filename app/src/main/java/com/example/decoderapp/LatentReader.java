@@ -0,0 +1,205 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reusable loader for 4×4×4×C latent NPY files.
+ *
+ * Each file is read with one positional FileChannel read into a direct
+ * staging buffer owned by the reader, and the floats go straight from
+ * there into the caller's array, reordered on the way when the file's
+ * layout (inferred from its shape, see Latent.inferLayout) differs from
+ * the one asked for, so (4,4,4,C) encoder output and interpolated frames
+ * and (1,C,4,4,4) NCDHW files both load correctly either way. Old
+ * interpolated frames saved as (C,4,4,4) are DHWC inside and are read as
+ * such, with a warning to regenerate them. When a file has the same
+ * header bytes as the previous one, as every frame of a sequence does,
+ * the header is not parsed again. Loading a frame therefore costs the
+ * same for the first and the ten-thousandth frame and allocates nothing
+ * beyond the SAF file descriptor.
+ *
+ * Not thread-safe: one reader per loading thread.
+ *
+ * Usage:
+ *   LatentReader reader = new LatentReader();
+ *   float[] ncdhw = null;
+ *   for (Uri frame : frames) {
+ *       ncdhw = reader.readNcdhw(ctx, frame, 128, ncdhw);
+ *       decoder.decodeFeatureGrid(ncdhw);
+ *   }
+ */
+public final class LatentReader {
+
+    private static final int SPATIAL = Latent.SPATIAL;
+
+    private ByteBuffer staging = ByteBuffer.allocateDirect(64 * 1024);
+    private byte[] lastHeader = new byte[0];
+    private NpyReader.Header header;
+
+    /** Latent as (1,C,4,4,4) NCDHW, ready for the decoder; dst is reused when large enough */
+    public float[] readNcdhw(Context ctx, Uri uri, int channels, float[] dst) throws IOException {
+        fill(ctx, uri);
+        return copy(channels, Latent.Layout.NCDHW, dst).data;
+    }
+
+    /** Latent as (1,4,4,4,C) DHWC; dst is reused when large enough */
+    public float[] readDhwc(Context ctx, Uri uri, int channels, float[] dst) throws IOException {
+        fill(ctx, uri);
+        return copy(channels, Latent.Layout.DHWC, dst).data;
+    }
+
+    /** Latent in the file's own layout, no reorder */
+    public Latent read(Context ctx, Uri uri, int channels, float[] dst) throws IOException {
+        fill(ctx, uri);
+        return copy(channels, null, dst);
+    }
+
+    public float[] read(File file, int channels, boolean ncdhw, float[] dst) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            fill(in.getChannel());
+        }
+        return copy(channels, ncdhw ? Latent.Layout.NCDHW : Latent.Layout.DHWC, dst).data;
+    }
+
+    /* ---------------- internals ---------------- */
+
+    private void fill(Context ctx, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = ctx.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) throw new FileNotFoundException("Cannot open " + uri);
+        try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            // pipe-backed providers report no size and cannot be read positionally
+            if (pfd.getStatSize() < 0) fill(Channels.newChannel(in));
+            else fill(in.getChannel());
+        } finally {
+            pfd.close();
+        }
+    }
+
+    /** Whole file into staging [0, size) */
+    private void fill(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Latent file over 2 GB: " + size);
+        ensureCapacity((int) size);
+        staging.clear().limit((int) size);
+        while (staging.hasRemaining()) {
+            if (ch.read(staging, staging.position()) < 0) break;
+        }
+        staging.flip();
+    }
+
+    private void fill(ReadableByteChannel ch) throws IOException {
+        staging.clear();
+        while (ch.read(staging) >= 0) {
+            if (!staging.hasRemaining()) {
+                ByteBuffer bigger = ByteBuffer.allocateDirect(staging.capacity() * 2);
+                staging.flip();
+                bigger.put(staging);
+                staging = bigger;
+            }
+        }
+        staging.flip();
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (staging.capacity() < bytes) staging = ByteBuffer.allocateDirect(Integer.highestOneBit(bytes - 1) << 1);
+    }
+
+    /**
+     * Checks the staged file and copies its floats into dst (allocated if
+     * null or too small) in layout want, or the file's layout when null
+     */
+    private Latent copy(int channels, Latent.Layout want, float[] dst) throws IOException {
+        NpyReader.Header h = header();
+        int count = SPATIAL * channels;
+        try {
+            h.requireCount(count);
+        } catch (IOException e) {
+            Log.w("DecoderApp", e.getMessage());
+            throw new IOException("Latent file is not 4x4x4x" + channels + ": " + e.getMessage()
+                    + " (maybe this is 4x4x4x" + (channels == 128 ? 64 : 128) + " or other shape?)");
+        }
+        if (h.dataOffset + count * 4L > staging.limit()) {
+            throw new IOException("NPY truncated: " + h + " needs " + count * 4L
+                    + " bytes, file has " + (staging.limit() - h.dataOffset));
+        }
+
+        Latent.Layout stored = layout(h, channels);
+        if (want == null) want = stored;
+
+        if (dst == null || dst.length < count) dst = new float[count];
+        ByteBuffer in = staging.order(NpyReader.order(h));
+        int p = h.dataOffset;
+        if (want == stored) {
+            for (int i = 0; i < count; i++, p += 4) dst[i] = in.getFloat(p);
+        } else if (stored == Latent.Layout.DHWC) {
+            // voxel s, channel c at s*C + c
+            for (int s = 0; s < SPATIAL; s++) {
+                for (int c = 0; c < channels; c++, p += 4) {
+                    dst[c * SPATIAL + s] = in.getFloat(p);
+                }
+            }
+        } else {
+            // channel c, voxel s at c*64 + s
+            for (int c = 0; c < channels; c++) {
+                for (int s = 0; s < SPATIAL; s++, p += 4) {
+                    dst[s * channels + c] = in.getFloat(p);
+                }
+            }
+        }
+        return new Latent(want, channels, dst);
+    }
+
+    /** Layout from the header shape; unrecognised shapes of the right size keep the old DHWC assumption */
+    private static Latent.Layout layout(NpyReader.Header h, int channels) {
+        try {
+            return Latent.inferLayout(h.shape, channels);
+        } catch (IOException e) {
+            Log.w("DecoderApp", e.getMessage() + ", reading as DHWC");
+            return Latent.Layout.DHWC;
+        }
+    }
+
+    /** Header of the staged file; parsed only when it differs from the previous file's */
+    private NpyReader.Header header() throws IOException {
+        int n = lastHeader.length;
+        if (header != null && staging.limit() >= n) {
+            boolean same = true;
+            for (int i = 0; i < n && same; i++) same = staging.get(i) == lastHeader[i];
+            if (same) return header;
+        }
+
+        NpyReader.Header h;
+        try {
+            h = NpyReader.parseHeader(staging.order(ByteOrder.LITTLE_ENDIAN));   // length fields are LE
+        } catch (IndexOutOfBoundsException e) {
+            throw new IOException("NPY truncated (incomplete header)", e);
+        }
+        if (!h.descr.equals("<f4") && !h.descr.equals(">f4")) {
+            throw new IOException("NPY not float32: descr=" + h.descr);
+        }
+        if (h.fortranOrder && h.shape.length > 1) {
+            throw new IOException("Fortran-order NPY not supported: " + h);
+        }
+        lastHeader = new byte[h.dataOffset];
+        for (int i = 0; i < lastHeader.length; i++) lastHeader[i] = staging.get(i);
+        header = h;
+        Log.i("FileUtil", "Latent header " + h);
+        if (Latent.isLegacyFrameShape(h.shape)) {
+            Log.w("DecoderApp", "⚠️ Latent shape " + Arrays.toString(h.shape)
+                    + " is an old interpolated frame with DHWC data under an NCDHW shape; reading it as DHWC."
+                    + " Regenerate it (frames are now saved as (4,4,4,C)); a real NCDHW latent must be saved as (1,C,4,4,4)");
+        }
+        return h;
+    }
+}
@@ -33,6 +33,8 @@ import androidx.compose.ui.unit.dp
 import androidx.core.app.ActivityCompat
 import com.example.decoderapp.ui.theme.DecoderAppTheme
 import java.io.File
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.atomic.AtomicBoolean
 
 
 class MainActivity : ComponentActivity() {
@@ -41,14 +43,55 @@ class MainActivity : ComponentActivity() {
     private lateinit var decoder64: Decoder64
     /* 2025.12.4 Update: Add Interpolator */
     private lateinit var interpolator: Interpolator
+    /* Interpolator sessions stay loaded across taps; closed in onDestroy */
+    private lateinit var interpolator64: Interpolator64
+    /* The Run Interpolator buttons go through these: over the frame budget, or failing, they blend analytically */
+    private lateinit var scheduler128: InterpolationScheduler
+    private lateinit var scheduler64: InterpolationScheduler
+    /* Decoded grids / meshes keyed by latent + model, so replays skip ONNX */
+    private lateinit var diskCache: DiskCache
+    /* Recently decoded frames in RAM, byte-bounded, shrinks on onTrimMemory */
+    private lateinit var frameCache: FrameCache
+    /* Result files are written on a background thread, off the timed compute path */
+    private lateinit var resultWriter: AsyncResultWriter
+    /* Consecutive near-identical latents reuse the last decoded grid / mesh; progressive playback only, lossy */
+    private val gate128 = LatentGate<Decoder.DecodeResult>(LATENT_GATE_THRESHOLD)
+    private val gate64 = LatentGate<Decoder64.DecodeResult>(LATENT_GATE_THRESHOLD)
+    /* 64³ preview first, 128³ swapped in when ready; created once both models are loaded */
+    @Volatile private var progressive: ProgressiveDecoder? = null
+    /* Measured decode + mesh throughput; picks the recommended resolution and ONNX threads */
+    private var profileText by mutableStateOf("")
+    private var recommended by mutableStateOf(0)
+    @Volatile private var profile: DeviceProfile? = null
+    /* Set while a calibration runs; the compute buttons are disabled meanwhile so it times an idle device */
+    private val calibrating = AtomicBoolean(false)
+    private var calibrationRunning by mutableStateOf(false)
 
     @OptIn(ExperimentalMaterial3Api::class)
     override fun onCreate(savedInstanceState: Bundle?) {
         super.onCreate(savedInstanceState)
+        diskCache = DiskCache(File(cacheDir, "decoded"), 512L shl 20)
+        frameCache = FrameCache(FrameCache.defaultBudget(this))
+        diskCache.setMemoryTier(frameCache)
+        registerComponentCallbacks(frameCache)
+        resultWriter = AsyncResultWriter(4)
+        // one session per resolution; only the progressive decoder passes the gates
         decoder = Decoder()
+        decoder.setCache(diskCache)
         decoder64 = Decoder64()
+        decoder64.setCache(diskCache)
         /* 2025.12.4 Update: initialize interpolator*/
         interpolator = Interpolator()
+        interpolator64 = Interpolator64()
+        // in-between frames are decoded at TARGET_FPS: one frame period of model time each
+        scheduler128 = InterpolationScheduler(interpolator::interpolatePairs, 128, frameBudgetMs = 1000.0 / TARGET_FPS)
+        scheduler64 = InterpolationScheduler(interpolator64::interpolatePairs, 64, frameBudgetMs = 1000.0 / TARGET_FPS)
+        // saved profile if it still fits this build and target; calibrating waits for the user, so it
+        // never runs next to a decode started right after launch
+        val saved = DeviceProfile.load(this)
+        if (saved != null && !saved.isStale(TARGET_FPS)) applyProfile(saved)
+        else profileText = "📏 ${if (saved == null) "No device profile yet" else "Device profile out of date"}: " +
+            "tap Calibrate while the app is idle (pick a latent first to time meshing on it)"
 
         setContent {
             DecoderAppTheme {
@@ -88,6 +131,18 @@ class MainActivity : ComponentActivity() {
                     statusMessage = "📄 Selected: ${name ?: "Unknown file"}"
                 }
 
+                /* 64-ch code of the same frame as the chosen 128-ch latent, for the progressive preview */
+                var filePreviewUri by remember { mutableStateOf<Uri?>(null) }
+                val previewPicker = rememberLauncherForActivityResult(
+                    ActivityResultContracts.StartActivityForResult()
+                ) { result ->
+                    val uri = result.data?.data ?: return@rememberLauncherForActivityResult
+                    filePreviewUri = uri
+
+                    val name = FileUtil.getFileName(this@MainActivity, uri)
+                    statusMessage = "📄 Selected preview: ${name ?: "Unknown file"}"
+                }
+
                 /* 2025.12.4 Update: Add picker A and B for interpolation */
                 var filelatentAUri by remember { mutableStateOf<Uri?>(null) }
                 var filelatentBUri by remember { mutableStateOf<Uri?>(null) }
@@ -135,7 +190,14 @@ class MainActivity : ComponentActivity() {
                         Text(statusMessage)
 
                         Spacer(Modifier.height(12.dp))
-                        Button(onClick = {
+                        Text(profileText)
+                        // picked latents, where they fit, stand in for noise when timing the meshes
+                        Button(enabled = !calibrationRunning, onClick = { calibrate(listOfNotNull(fileUri, filePreviewUri, filelatentAUri, filelatentBUri)) }) {
+                            Text("Calibrate device (${"%.0f".format(TARGET_FPS)} fps target)")
+                        }
+
+                        Spacer(Modifier.height(12.dp))
+                        Button(enabled = !calibrationRunning, onClick = {
                             Thread {
                                 try {
                                     if (!decoder.initModel(this@MainActivity)) {
@@ -149,12 +211,10 @@ class MainActivity : ComponentActivity() {
                                     }
 
                                     val t0 = System.nanoTime()
-                                    val dhwc = FileUtil.loadEmbedNPY_DHWC(this@MainActivity, uri)
+                                    // read + DHWC→NCDHW reorder in one pass
+                                    val ncdhw = FileUtil.loadEmbedNPY_NCDHW(this@MainActivity, uri, null)
                                     val t1 = System.nanoTime()
 
-                                    val ncdhw = decoder.dhwc_to_ncdhw(dhwc)
-                                    val t2 = System.nanoTime()
-
                                     /**  context 是 Android 的环境对象（比如 Activity、Service、Application）。
                                         它代表当前运行的环境，可以访问文件系统、资源、应用目录等。
                                         在 Activity 里，this 或 this@MainActivity 就是一个 Context。
@@ -171,14 +231,13 @@ class MainActivity : ComponentActivity() {
 
                                     val t3 = System.nanoTime()
 
-                                    val saved = decoder.saveDecodedNpy(decoded_dhwc)
+                                    val saving = decoder.saveDecodedNpyAsync(decoded_dhwc, resultWriter)
 
                                     val t4 = System.nanoTime()
 
 
                                     val loadMs = (t1 - t0) / 1e6
-                                    val reshapeMs = (t2 - t1) / 1e6
-                                    val inferMs = (t3 - t2) / 1e6
+                                    val inferMs = (t3 - t1) / 1e6
                                     val filewritingMs = (t4 - t3) / 1e6
                                     val totalMs = (t4 - t0) / 1e6
 
@@ -186,21 +245,22 @@ class MainActivity : ComponentActivity() {
                                         statusMessage = """
 ✅ Decoding Finished!
 📥 Load NPY: ${"%.2f".format(loadMs)} ms
-🔄 Shape Convert: ${"%.2f".format(reshapeMs)} ms
+🔄 Shape Convert: fused into load
 🧠 Decode ONNX: ${"%.2f".format(inferMs)} ms
 ${result.getSummary()}
-💾 Save decoded NPY: ${"%.2f".format(filewritingMs)} ms
+💾 Queue decoded NPY: ${"%.2f".format(filewritingMs)} ms
 ⏱ Total: ${"%.2f".format(totalMs)} ms
-Saved: ${saved.name}
+Saving in background…
 """.trimIndent()
                                     }
+                                    reportSaved(saving) { statusMessage += it }
                                 } catch (e: Exception) {
                                     Log.e("DecoderApp", "Error: $e", e)
                                     runOnUiThread { statusMessage = "❌ ERROR (128): ${e.message ?: "See Logcat"}"}
                                 }
                             }.start()
                         }) {
-                            Text("Run Decoder (128)")
+                            Text("Run Decoder (128)" + if (recommended == 128) " ★" else "")
                         }
 
                         /* 2025.11.12 Update: Add decode 64 button, use new model.
@@ -209,7 +269,7 @@ Saved: ${saved.name}
 
                         Spacer(Modifier.height(12.dp))
 
-                        Button(onClick = {
+                        Button(enabled = !calibrationRunning, onClick = {
                             Thread {
                                 try {
                                     val uri = fileUri ?: run {
@@ -218,35 +278,27 @@ Saved: ${saved.name}
                                     }
 
                                     val t0 = System.nanoTime()
-                                    val dhwc = FileUtil.loadEmbedNPY_DHWC_64(this@MainActivity, uri)
-                                    /* 2025.11.13 Update: Not allowed to use 128-channel latent */
-                                    if (dhwc.size != 4096) {
-                                        runOnUiThread {
-                                            statusMessage = "❌ Wrong latent size: expected 4×4×4×64 (4096 floats), got ${dhwc.size}"
-                                        }
-                                        return@Thread
-                                    }
+                                    /* 2025.11.13 Update: Not allowed to use 128-channel latent (the loader rejects it) */
+                                    val ncdhw64 = FileUtil.loadEmbedNPY_NCDHW_64(this@MainActivity, uri, null)
 
                                     val t1 = System.nanoTime()
 
-                                    val decoder64 = Decoder64()
                                     if (!decoder64.initModel(this@MainActivity)) {
                                         runOnUiThread { statusMessage = "❌ Fail to load 64-ch model" }
                                         return@Thread
                                     }
 
-                                    val ncdhw64 = decoder64.dhwc_to_ncdhw_64(dhwc)
                                     val t2 = System.nanoTime()
 
                                     val result = decoder64.decodeFeatureGrid64(ncdhw64)
                                     val decoded_dhwc = result.data
                                     val t3 = System.nanoTime()
 
-                                    val saved = decoder64.saveDecodedNpy64(decoded_dhwc)
+                                    val saving = decoder64.saveDecodedNpy64Async(decoded_dhwc, resultWriter)
                                     val t4 = System.nanoTime()
 
                                     val loadMs = (t1 - t0) / 1e6
-                                    val convertMs = (t2 - t1) / 1e6
+                                    val initMs = (t2 - t1) / 1e6
                                     val inferMs = (t3 - t2) / 1e6
                                     val saveMs = (t4 - t3) / 1e6
                                     val totalMs = (t4 - t0) / 1e6
@@ -255,14 +307,15 @@ Saved: ${saved.name}
                                         statusMessage = """
 ✅ 64-Ch Decoding Finished!
 📥 Load Latent NPY: ${"%.2f".format(loadMs)} ms
-🔄 Shape Convert: ${"%.2f".format(convertMs)} ms
+🔧 Init model: ${"%.2f".format(initMs)} ms (shape convert fused into load)
 🧠 Decode ONNX: ${"%.2f".format(inferMs)} ms
 ${result.getSummary()}
-💾 Save decoded NPY: ${"%.2f".format(saveMs)} ms
+💾 Queue decoded NPY: ${"%.2f".format(saveMs)} ms
 ⏱ Total: ${"%.2f".format(totalMs)} ms
-Saved: ${saved.name}
+Saving in background…
 """.trimIndent()
                                     }
+                                    reportSaved(saving) { statusMessage += it }
                                 } catch (e: Exception) {
                                     Log.e("DecoderApp", "ERR64", e)
                                     runOnUiThread {
@@ -271,7 +324,65 @@ Saved: ${saved.name}
                                 }
                             }.start()
                         }) {
-                            Text("Run Decoder (64)")
+                            Text("Run Decoder (64)" + if (recommended == 64) " ★" else "")
+                        }
+
+                        /* Progressive decode: the chosen 128-ch latent plus its 64-ch code for the preview */
+                        Spacer(Modifier.height(12.dp))
+                        Button(onClick = {
+                            previewPicker.launch(pickerIntent)
+                        }) {
+                            Text("Choose 64-ch preview latent (.npy or .bin)")
+                        }
+                        Button(enabled = !calibrationRunning, onClick = {
+                            Thread {
+                                try {
+                                    val uri = fileUri ?: run {
+                                        runOnUiThread { statusMessage = "❌ Please choose a 128-ch latent file" }
+                                        return@Thread
+                                    }
+                                    // without a 64-ch code the frame goes straight to 128³
+                                    val preview = filePreviewUri?.let { FileUtil.loadLatent(this@MainActivity, it, 64) }
+                                    val full = FileUtil.loadLatent(this@MainActivity, uri, 128)
+
+                                    val prog = progressiveDecoder() ?: run {
+                                        runOnUiThread { statusMessage = "❌ Fail to load model" }
+                                        return@Thread
+                                    }
+                                    runOnUiThread { statusMessage = "⏳ Decoding ${if (preview != null) "64³ preview" else "128³ (no preview latent)"}…" }
+                                    // a new tap supersedes a refinement still in flight, like a scrub
+                                    prog.request(ProgressiveDecoder.Frame(preview, full), object : ProgressiveDecoder.Listener {
+                                        override fun onStage(stage: ProgressiveDecoder.Stage) {
+                                            val saving = if (stage.isPreview) null
+                                                else MarchingCubes.saveObjAsync(MarchingCubes.Result(stage.vertices, stage.faces), resultWriter)
+                                            runOnUiThread {
+                                                if (!prog.isCurrent(stage.request)) return@runOnUiThread
+                                                statusMessage = if (stage.isPreview) """
+⚡ Preview mesh: $stage
+⏳ Refining at 128³…
+""".trimIndent() else """
+$statusMessage
+✅ Refined mesh: $stage
+📊 ${prog.stats()}
+🚦 Latent gate 64: ${gate64.stats()}
+🚦 Latent gate 128: ${gate128.stats()}
+""".trimIndent()
+                                            }
+                                            saving?.let { reportSaved(it) { line -> statusMessage += line } }
+                                        }
+
+                                        override fun onError(request: Long, resolution: Int, e: Exception) {
+                                            Log.e("DecoderApp", "Progressive $resolution³ failed", e)
+                                            runOnUiThread { statusMessage += "\n❌ $resolution³ stage failed: ${e.message ?: "See Logcat"}" }
+                                        }
+                                    })
+                                } catch (e: Exception) {
+                                    Log.e("DecoderApp", "ERR progressive", e)
+                                    runOnUiThread { statusMessage = "❌ ERROR (progressive): ${e.message ?: "See Logcat"}" }
+                                }
+                            }.start()
+                        }) {
+                            Text("Progressive Decode (64 → 128)")
                         }
 
                         /* 2025.12.4 Update: Add Interpolation */
@@ -289,7 +400,7 @@ Saved: ${saved.name}
 
                         Spacer(Modifier.height(12.dp))
                         // Edit testing part, ensure Decoder is initialized
-                        Button(onClick = {
+                        Button(enabled = !calibrationRunning, onClick = {
                             Thread {
                                 try {
                                     val uriA = filelatentAUri ?: return@Thread
@@ -311,11 +422,12 @@ Saved: ${saved.name}
                                     // 2025.12.11 Update: add A/B load time
                                     val tStart = System.nanoTime()
                                     val tLoad0 = System.nanoTime()
-                                    val A_data = FileUtil.loadEmbedNPY_DHWC(this@MainActivity, uriA)
-                                    val B_data = FileUtil.loadEmbedNPY_DHWC(this@MainActivity, uriB)
+                                    // layout inferred from the NPY shape; the interpolator converts only if needed
+                                    val A_data = FileUtil.loadLatent(this@MainActivity, uriA, 128)
+                                    val B_data = FileUtil.loadLatent(this@MainActivity, uriB, 128)
                                     val tLoad1 = System.nanoTime()
 
-                                    if (A_data.size != 8192 || B_data.size != 8192) {
+                                    if (A_data.data.size != 8192 || B_data.data.size != 8192) {
                                         runOnUiThread {
                                             statusMessage = "need embed data of size 8192 floats"
                                         }
@@ -326,19 +438,19 @@ Saved: ${saved.name}
 
                                     // 2025.12.11 Add init interpolator time
                                     val tInterpInit0 = System.nanoTime()
-                                    val interpolator = Interpolator()
-                                    if (!interpolator.initModel(this@MainActivity)) {
-                                        runOnUiThread { statusMessage = "Interpolator model load failed" }
-                                        return@Thread
-                                    }
+                                    // first tap loads the model, later taps reuse the session
+                                    // without a loaded model the scheduler blends analytically instead
+                                    val modelLoaded = interpolator.initModel(this@MainActivity)
                                     val tInterpInit1 = System.nanoTime()
 
                                     // 4. Run interpolator
                                     // 2025.12.11 Add infer time
                                     val tInfer0 = System.nanoTime()
-                                    val frames = interpolator.interpolateSimple(A_data, B_data)
+                                    val neuralBefore = scheduler128.neuralPairs
+                                    val frames = scheduler128.interpolatePairs(listOf(A_data.toNcdhw() to B_data.toNcdhw()))[0]
+                                        .map { Latent.dhwc(it, 128) }
+                                    val usedModel = scheduler128.neuralPairs > neuralBefore
                                     val tInfer1 = System.nanoTime()
-                                    interpolator.close()
 
                                     if (frames.isEmpty()) {
                                         runOnUiThread { statusMessage = "Interpolation Failed" }
@@ -355,13 +467,12 @@ Saved: ${saved.name}
                                     outDir.mkdirs()
 
                                     /* 2025.12.11 Update: Improved interpolation frame id */
-                                    for ((index, frame) in frames.withIndex()) {
+                                    val savingFrames = frames.withIndex().map { (index, frame) ->
                                         val frameId = index + 1     //  0→1, 1→2, 2→3
 
                                         val npyFile = File(outDir, "interpolation_frame_$frameId.npy")
-                                        NpyWriter.writeNpy(npyFile.absolutePath, frame, intArrayOf(128, 4, 4, 4))
-
-                                        Log.d("Interpolation", "Saved: ${npyFile.name}")
+                                        // DHWC (4,4,4,128), the same layout as encoder output files
+                                        resultWriter.writeNpy(npyFile, frame.data, frame.npyShape())
                                     }
                                     val tSave1 = System.nanoTime()
 
@@ -382,8 +493,9 @@ Saved: ${saved.name}
 
                     📥 Load A/B embed: ${"%.2f".format(loadMs)} ms
                     🔧 Init Interpolator: ${"%.2f".format(initMs)} ms
-                    🧠 Interpolate ONNX: ${"%.2f".format(inferMs)} ms
-                    💾 Save 3 frames: ${"%.2f".format(saveMs)} ms
+                    🧠 Interpolate ${if (usedModel) "ONNX" else if (modelLoaded) "LatentBlend (over budget / model failed)" else "LatentBlend (model not loaded)"}: ${"%.2f".format(inferMs)} ms
+                    ⚖️ ${scheduler128.stats()}
+                    💾 Queue 3 frames: ${"%.2f".format(saveMs)} ms
 
                     ⏱ Total: ${"%.2f".format(totalMs)} ms
 
@@ -395,6 +507,9 @@ Saved: ${saved.name}
                     2. Then "Convert Decoded NPY (128) to OBJ"
                 """.trimIndent()
                                     }
+                                    reportSaved(CompletableFuture.allOf(*savingFrames.toTypedArray()).thenApply { outDir }) {
+                                        statusMessage += it
+                                    }
 
                                 } catch (e: Exception) {
                                     Log.e("Interpolation", "error", e)
@@ -407,10 +522,66 @@ Saved: ${saved.name}
                             Text("Run Interpolator (128)")
                         }
 
+                        /* Analytic fallback (LatentBlend) vs the 128 transformer on the picked A/B */
+                        Spacer(Modifier.height(12.dp))
+                        Button(enabled = !calibrationRunning, onClick = {
+                            Thread {
+                                try {
+                                    val uriA = filelatentAUri ?: return@Thread
+                                    val uriB = filelatentBUri ?: return@Thread
+
+                                    val A_data = FileUtil.loadEmbedNPY_NCDHW(this@MainActivity, uriA, null)
+                                    val B_data = FileUtil.loadEmbedNPY_NCDHW(this@MainActivity, uriB, null)
+                                    if (!interpolator.initModel(this@MainActivity)) {
+                                        runOnUiThread { statusMessage = "Interpolator model load failed" }
+                                        return@Thread
+                                    }
+
+                                    val report = compareWithBlend(A_data, B_data, 128, interpolator::interpolateSimple)
+                                    runOnUiThread { statusMessage = report }
+                                } catch (e: Exception) {
+                                    Log.e("Interpolation", "compare error", e)
+                                    runOnUiThread {
+                                        statusMessage = "error: ${e.message}"
+                                    }
+                                }
+                            }.start()
+                        }) {
+                            Text("Compare Interpolator vs Blend (128)")
+                        }
+
+                        /* Same comparison against the 64 transformer (transformer_compressed_64.onnx) */
+                        Spacer(Modifier.height(12.dp))
+                        Button(enabled = !calibrationRunning, onClick = {
+                            Thread {
+                                try {
+                                    val uriA = filelatentAUri ?: return@Thread
+                                    val uriB = filelatentBUri ?: return@Thread
+
+                                    val A_data = FileUtil.loadEmbedNPY_NCDHW_64(this@MainActivity, uriA, null)
+                                    val B_data = FileUtil.loadEmbedNPY_NCDHW_64(this@MainActivity, uriB, null)
+                                    if (!interpolator64.initModel(this@MainActivity)) {
+                                        runOnUiThread { statusMessage = "Interpolator 64 load failed" }
+                                        return@Thread
+                                    }
+
+                                    val report = compareWithBlend(A_data, B_data, 64, interpolator64::interpolateSimple)
+                                    runOnUiThread { statusMessage = report }
+                                } catch (e: Exception) {
+                                    Log.e("Interpolation", "compare error", e)
+                                    runOnUiThread {
+                                        statusMessage = "error: ${e.message}"
+                                    }
+                                }
+                            }.start()
+                        }) {
+                            Text("Compare Interpolator vs Blend (64)")
+                        }
+
                         /* 2025.12.12 Update: Add 64-ch interpolation */
                         Spacer(Modifier.height(12.dp))
                         // Edit testing part, ensure Decoder is initialized
-                        Button(onClick = {
+                        Button(enabled = !calibrationRunning, onClick = {
                             Thread {
                                 try {
                                     val uriA = filelatentAUri ?: return@Thread
@@ -419,29 +590,28 @@ Saved: ${saved.name}
                                     val tStart = System.nanoTime()
                                     val tLoad0 = System.nanoTime()
                                     // 2025.12.12 Update add A/B load time
-                                    val A_data = FileUtil.loadEmbedNPY_DHWC_64(this@MainActivity, uriA)
-                                    val B_data = FileUtil.loadEmbedNPY_DHWC_64(this@MainActivity, uriB)
+                                    val A_data = FileUtil.loadLatent(this@MainActivity, uriA, 64)
+                                    val B_data = FileUtil.loadLatent(this@MainActivity, uriB, 64)
                                     val tLoad1 = System.nanoTime()
 
-                                    if (A_data.size != 4096 || B_data.size != 4096) {
+                                    if (A_data.data.size != 4096 || B_data.data.size != 4096) {
                                         runOnUiThread { statusMessage = "Need 64 channel embed（4096 floats）" }
                                         return@Thread
                                     }
 
                                     val tInterpInit0 = System.nanoTime()
-                                    val interpolator = Interpolator64()
-                                    if (!interpolator.initModel(this@MainActivity)) {
-                                        runOnUiThread { statusMessage = "Interpolator 64 load failed" }
-                                        return@Thread
-                                    }
+                                    // without a loaded model the scheduler blends analytically instead
+                                    val modelLoaded = interpolator64.initModel(this@MainActivity)
                                     val tInterpInit1 = System.nanoTime()
 
                                     // 4. Run interpolator
                                     // 2025.12.11 Add infer time
                                     val tInfer0 = System.nanoTime()
-                                    val frames = interpolator.interpolateSimple(A_data, B_data)
+                                    val neuralBefore = scheduler64.neuralPairs
+                                    val frames = scheduler64.interpolatePairs(listOf(A_data.toNcdhw() to B_data.toNcdhw()))[0]
+                                        .map { Latent.dhwc(it, 64) }
+                                    val usedModel = scheduler64.neuralPairs > neuralBefore
                                     val tInfer1 = System.nanoTime()
-                                    interpolator.close()
 
                                     if (frames.isEmpty()) {
                                         runOnUiThread { statusMessage = "Interpolation Failed" }
@@ -458,13 +628,11 @@ Saved: ${saved.name}
                                     outDir.mkdirs()
 
                                     /* 2025.12.11 Update: Improved interpolation frame id */
-                                    for ((index, frame) in frames.withIndex()) {
+                                    val savingFrames = frames.withIndex().map { (index, frame) ->
                                         val frameId = index + 1     //  0→1, 1→2, 2→3
 
                                         val npyFile = File(outDir, "interpolation_frame_$frameId.npy")
-                                        NpyWriter.writeNpy(npyFile.absolutePath, frame, intArrayOf(64, 4, 4, 4))
-
-                                        Log.d("Interpolation", "Saved: ${npyFile.name}")
+                                        resultWriter.writeNpy(npyFile, frame.data, frame.npyShape())
                                     }
                                     val tSave1 = System.nanoTime()
 
@@ -485,8 +653,9 @@ Saved: ${saved.name}
 
                     📥 Load A/B embed: ${"%.2f".format(loadMs)} ms
                     🔧 Init Interpolator: ${"%.2f".format(initMs)} ms
-                    🧠 Interpolate ONNX: ${"%.2f".format(inferMs)} ms
-                    💾 Save 3 frames: ${"%.2f".format(saveMs)} ms
+                    🧠 Interpolate ${if (usedModel) "ONNX" else if (modelLoaded) "LatentBlend (over budget / model failed)" else "LatentBlend (model not loaded)"}: ${"%.2f".format(inferMs)} ms
+                    ⚖️ ${scheduler64.stats()}
+                    💾 Queue 3 frames: ${"%.2f".format(saveMs)} ms
 
                     ⏱ Total: ${"%.2f".format(totalMs)} ms
 
@@ -498,6 +667,9 @@ Saved: ${saved.name}
                     2. Then "Convert Decoded NPY (64) to OBJ"
                 """.trimIndent()
                                     }
+                                    reportSaved(CompletableFuture.allOf(*savingFrames.toTypedArray()).thenApply { outDir }) {
+                                        statusMessage += it
+                                    }
 
                                 } catch (e: Exception) {
                                     Log.e("Interpolation", "error", e)
@@ -522,6 +694,7 @@ Saved: ${saved.name}
 
                         Spacer(Modifier.height(12.dp))
                         Button(
+                            enabled = !calibrationRunning,
                             onClick = {
                                 Thread {
                                     try {
@@ -532,14 +705,14 @@ Saved: ${saved.name}
 
                                         /* 2025.11.20 Update: Sync UI for old OBJ conversion */
                                         val t0 = System.nanoTime()
-                                        val raw = FileUtil.loadNpyFloat(this@MainActivity, uri)
+                                        val grid = NpyReader.map(this@MainActivity, uri, 128, 128, 128, 4)
                                         val t1 = System.nanoTime()
 
-                                        val mc = MarchingCubes.fromDecoderOutput(raw)
+                                        val mc = MarchingCubes.fromDecoderOutput(grid)
                                         val mesh = mc.generate()
                                         val t2 = System.nanoTime()
 
-                                        val objFile = MarchingCubes.saveObj(mesh)
+                                        val saving = MarchingCubes.saveObjAsync(mesh, resultWriter)
                                         val t3 = System.nanoTime()
 
                                         val loadMs = (t1 - t0) / 1e6
@@ -555,13 +728,14 @@ Saved: ${saved.name}
                                                                 ✅ OBJ Generated (128³ TSDF)
                                                                 📥 Load decoded NPY: ${"%.2f".format(loadMs)} ms
                                                                 🧱 MarchingCubes: ${"%.2f".format(mcMs)} ms
-                                                                💾 Save OBJ: ${"%.2f".format(saveMs)} ms
+                                                                💾 Queue OBJ: ${"%.2f".format(saveMs)} ms
                                                                 🔢 Vertices: $vCount
                                                                 🔺 Faces: $fCount
                                                                 ⏱ Total: ${"%.2f".format(totalMs)} ms
-                                                                File: ${objFile.name}
+                                                                Saving in background…
                                                             """.trimIndent()
                                         }
+                                        reportSaved(saving) { statusMessage += it }
                                     } catch (e: Exception) {
                                         Log.e("DecoderApp","ERR: $e",e)
                                         runOnUiThread { statusMessage = "❌ Failed to convert to OBJ" }
@@ -573,7 +747,7 @@ Saved: ${saved.name}
                         Spacer(Modifier.height(12.dp))
                         /*  2025.11.12 Update: Add button to convert 64-ch NPY to OBJ*/
                         /* 2025.11.13 Update: Add vertices and faces number display*/
-                        Button(onClick = {
+                        Button(enabled = !calibrationRunning, onClick = {
                             Thread {
                                 try {
                                     val uri = fileUri ?: run {
@@ -582,14 +756,14 @@ Saved: ${saved.name}
                                     }
 
                                     val t0 = System.nanoTime()
-                                    val raw = FileUtil.loadNpyFloat(this@MainActivity, uri)
+                                    val grid = NpyReader.map(this@MainActivity, uri, 64, 64, 64, 4)
                                     val t1 = System.nanoTime()
 
-                                    val mc = MarchingCubes64.fromDecoderOutput64(raw)
+                                    val mc = MarchingCubes64.fromDecoderOutput64(grid)
                                     val mesh = mc.generate()
                                     val t2 = System.nanoTime()
 
-                                    val objFile = MarchingCubes64.saveObj(mesh)
+                                    val saving = MarchingCubes64.saveObjAsync(mesh, resultWriter)
                                     val t3 = System.nanoTime()
 
                                     val loadMs = (t1 - t0) / 1e6
@@ -605,14 +779,15 @@ Saved: ${saved.name}
                     ✅ OBJ Generated (64³ TSDF)
                     📥 Load decoded NPY: ${"%.2f".format(loadMs)} ms
                     🧱 MarchingCubes: ${"%.2f".format(mcMs)} ms
-                    💾 Save OBJ: ${"%.2f".format(saveMs)} ms
+                    💾 Queue OBJ: ${"%.2f".format(saveMs)} ms
                     🔢 Vertices: $vCount
                     🔺 Faces: $fCount
                     ⏱ Total: ${"%.2f".format(totalMs)} ms
-                    File: ${objFile.name}
+                    Saving in background…
                     You can view OBJ files in a 3D Model Viewer software.
                 """.trimIndent()
                                     }
+                                    reportSaved(saving) { statusMessage += it }
 
                                 } catch (e: Exception) {
                                     Log.e("DecoderApp", "OBJ_ERR64", e)
@@ -631,4 +806,124 @@ Saved: ${saved.name}
             }
         }
     }
+
+    /* Decoders pick up the thread counts on their next initModel */
+    private fun applyProfile(p: DeviceProfile) {
+        profile = p
+        decoder.setIntraOpThreads(p.threads128)
+        decoder64.setIntraOpThreads(p.threads64)
+        // sessions already loaded keep their old thread count until reloaded; initModel swaps them
+        // once decodes in flight finish (nothing is loaded yet when this runs from onCreate)
+        if (decoder.isLoaded) decoder.initModel(this)
+        if (decoder64.isLoaded) decoder64.initModel(this)
+        runOnUiThread {
+            recommended = p.resolution
+            val noise = if (p.resolution == 128) !p.sampled128 else p.resolution == 64 && !p.sampled64
+            profileText = "📏 Device profile:\n$p" +
+                if (noise) "\nℹ️ Pick a latent and recalibrate to time meshing on a real capture" else ""
+        }
+    }
+
+    /* Times decode + mesh at 64³ / 128³ on a few latents, then saves and applies the profile */
+    private fun calibrate(samples: List<Uri> = emptyList()) {
+        // two runs at once would time each other's contention
+        if (!calibrating.compareAndSet(false, true)) return
+        calibrationRunning = true
+        profileText = "📏 Calibrating…"
+        Thread {
+            try {
+                // mesh time follows the surface: a real capture if one was picked, noise otherwise
+                val sample64 = sampleLatent(samples, 64)
+                val sample128 = sampleLatent(samples, 128)
+                val p = DeviceProfile.calibrate(this, TARGET_FPS, sample64, sample128) { step ->
+                    runOnUiThread { profileText = "📏 Calibrating… $step" }
+                }
+                applyProfile(p.save(this))
+            } catch (e: Exception) {
+                Log.e("DecoderApp", "Calibration failed", e)
+                runOnUiThread { profileText = "❌ Calibration failed: ${e.message ?: "See Logcat"}" }
+            } finally {
+                calibrating.set(false)
+                runOnUiThread { calibrationRunning = false }
+            }
+        }.start()
+    }
+
+    /* First of uris that reads as a channels-ch latent; null if none does */
+    private fun sampleLatent(uris: List<Uri>, channels: Int): Latent? = uris.firstNotNullOfOrNull { uri ->
+        try {
+            FileUtil.loadLatent(this, uri, channels)
+        } catch (e: Exception) {
+            null
+        }
+    }
+
+    /* Loads both decoder models on first use; null if either fails */
+    @Synchronized
+    private fun progressiveDecoder(): ProgressiveDecoder? {
+        progressive?.let { return it }
+        if (!decoder.initModel(this) || !decoder64.initModel(this)) return null
+        return ProgressiveDecoder(decoder64, decoder, diskCache, gate64, gate128).also { progressive = it }
+    }
+
+    /* Times the transformer and each LatentBlend mode on one NCDHW A/B pair; report for the compare buttons */
+    private fun compareWithBlend(A_data: FloatArray, B_data: FloatArray, channels: Int,
+                                 model: (FloatArray, FloatArray) -> List<FloatArray>): String {
+        val runs = 10
+        model(A_data, B_data)   // warm-up
+        val tModel0 = System.nanoTime()
+        var reference = emptyList<FloatArray>()
+        repeat(runs) { reference = model(A_data, B_data) }
+        val modelMs = (System.nanoTime() - tModel0) / 1e6 / runs
+        // d_codes are random, so the model's own run-to-run spread is the floor
+        val spread = LatentBlend.compare(reference, model(A_data, B_data))
+
+        val blendLines = LatentBlend.Mode.values().map { mode ->
+            LatentBlend.interpolate(A_data, B_data, channels, mode)   // warm-up
+            val t0 = System.nanoTime()
+            var frames = emptyList<FloatArray>()
+            repeat(runs) { frames = LatentBlend.interpolate(A_data, B_data, channels, mode) }
+            val ms = (System.nanoTime() - t0) / 1e6 / runs
+            "📐 $mode: ${"%.3f".format(ms)} ms/pair, ${LatentBlend.compare(reference, frames)}"
+        }
+
+        return (listOf(
+            "✅ Interpolator vs Blend ($channels)",
+            "",
+            "🧠 ONNX: ${"%.2f".format(modelMs)} ms/pair",
+            "🎲 ONNX run-to-run: $spread"
+        ) + blendLines).joinToString("\n")
+    }
+
+    /* Appends the outcome of a background save to the status text once it lands */
+    private fun reportSaved(saving: CompletableFuture<File>, append: (String) -> Unit) {
+        saving.whenComplete { file, err ->
+            runOnUiThread {
+                append(if (err == null) "\n💾 Saved: ${file.name}" else "\n❌ Save failed: ${err.cause?.message ?: err.message}")
+            }
+        }
+    }
+
+    override fun onDestroy() {
+        unregisterComponentCallbacks(frameCache)
+        interpolator.close()
+        interpolator64.close()
+        progressive?.close()
+        // flush-on-exit: queued results still reach the disk, waited for off the UI thread
+        Thread({
+            try {
+                resultWriter.close(10_000)
+            } catch (e: Exception) {
+                Log.e("DecoderApp", "Result writer did not drain", e)
+            }
+        }, "ResultWriterClose").start()
+        super.onDestroy()
+    }
+
+    private companion object {
+        /** Relative RMS latent change below which progressive playback reuses the previous grid (0 = always decode) */
+        const val LATENT_GATE_THRESHOLD = 0.01f
+        /** Frame rate the calibration picks the default resolution for (decode + mesh per frame) */
+        const val TARGET_FPS = 10f
+    }
 }
@@ -3,10 +3,11 @@ package com.example.decoderapp;
 import android.util.Log;
 
 import java.io.File;
-import java.io.FileWriter;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public class MarchingCubes {
     private final int D, H, W;
@@ -21,91 +22,103 @@ public class MarchingCubes {
         this.iso = isolevel;
     }
 
-    private int idx(int z, int y, int x) { return z*H*W + y*W + x; }
-
     public Result generate() {
-        List<Float> verts = new ArrayList<>();
-        List<Integer> faces = new ArrayList<>();
-
-        for (int z=0; z<D-1; z++) {
-            for (int y=0; y<H-1; y++) {
-                for (int x=0; x<W-1; x++) {
-                    // 8 corners
-                    int[] cornerIndex = new int[]{
-                            idx(z, y, x),
-                            idx(z, y, x+1),
-                            idx(z, y+1, x+1),
-                            idx(z, y+1, x),
-                            idx(z+1, y, x),
-                            idx(z+1, y, x+1),
-                            idx(z+1, y+1, x+1),
-                            idx(z+1, y+1, x)
-                    };
-                    float[] val = new float[8];
-                    for (int i=0;i<8;i++) val[i] = sdf[cornerIndex[i]];
-
-                    int cubeIndex = 0;
-                    if (val[0] < iso) cubeIndex |= 1;
-                    if (val[1] < iso) cubeIndex |= 2;
-                    if (val[2] < iso) cubeIndex |= 4;
-                    if (val[3] < iso) cubeIndex |= 8;
-                    if (val[4] < iso) cubeIndex |= 16;
-                    if (val[5] < iso) cubeIndex |= 32;
-                    if (val[6] < iso) cubeIndex |= 64;
-                    if (val[7] < iso) cubeIndex |= 128;
+        // 128³ path does not displace vertices by the decoded offsets
+        MeshBuilder mb = new MarchingCubesCore(sdf, null, D, H, W, iso).run();
+        return new Result(mb.vertexArray(), mb.faceArray());
+    }
 
-                    int edgeMask = edgeTable[cubeIndex];
-                    if (edgeMask == 0) continue;
+    /**
+     * generate() through the disk cache. gridKey identifies the grid this
+     * extractor was built from (DecodeResult.cacheKey), so the mesh is
+     * looked up without hashing the grid itself.
+     */
+    public Result generate(DiskCache cache, String gridKey) {
+        if (cache == null || gridKey == null) return generate();
+        String key = DiskCache.derive(gridKey, "mc128 iso=" + iso);
+        MarchingCubes.Result hit = cache.getMesh(key);
+        if (hit != null) return hit;
+
+        Result res = generate();
+        cache.putMesh(key, res.vertices, res.faces);
+        return res;
+    }
 
-                    float[][] vertList = new float[12][3];
+    /**
+     * Progressive extraction: each slab of {@code slabDepth} cell layers
+     * goes to the listener as soon as it is done.
+     */
+    public void generateSlabs(int slabDepth, MeshChunkListener<Result> listener) {
+        if (slabDepth <= 0) throw new IllegalArgumentException("slab depth must be > 0: " + slabDepth);
+        MarchingCubesCore core = new MarchingCubesCore(sdf, null, D, H, W, iso);
+        for (int z = 0; z < D - 1; z += slabDepth) {
+            emitChunk(core, new CellBox(0, 0, z, W - 1, H - 1, Math.min(z + slabDepth, D - 1)), listener);
+        }
+        listener.onComplete();
+    }
 
-                    // interpolate edges
-                    if ((edgeMask & 1) != 0)    vertList[0]  = vertInterp(x, y, z,     x+1, y,   z,     val[0], val[1], cornerIndex[0], cornerIndex[1]);
-                    if ((edgeMask & 2) != 0)    vertList[1]  = vertInterp(x+1, y, z,   x+1, y+1, z,     val[1], val[2], cornerIndex[1], cornerIndex[2]);
-                    if ((edgeMask & 4) != 0)    vertList[2]  = vertInterp(x+1, y+1, z, x,   y+1, z,     val[2], val[3], cornerIndex[2], cornerIndex[3]);
-                    if ((edgeMask & 8) != 0)    vertList[3]  = vertInterp(x,   y+1, z, x,   y,   z,     val[3], val[0], cornerIndex[3], cornerIndex[0]);
-                    if ((edgeMask & 16) != 0)   vertList[4]  = vertInterp(x,   y,   z+1, x+1, y,   z+1, val[4], val[5], cornerIndex[4], cornerIndex[5]);
-                    if ((edgeMask & 32) != 0)   vertList[5]  = vertInterp(x+1, y, z+1, x+1, y+1, z+1, val[5], val[6], cornerIndex[5], cornerIndex[6]);
-                    if ((edgeMask & 64) != 0)   vertList[6]  = vertInterp(x+1, y+1,z+1, x,   y+1, z+1, val[6], val[7], cornerIndex[6], cornerIndex[7]);
-                    if ((edgeMask & 128) != 0)  vertList[7]  = vertInterp(x,   y+1,z+1, x,   y,   z+1, val[7], val[4], cornerIndex[7], cornerIndex[4]);
-                    if ((edgeMask & 256) != 0)  vertList[8]  = vertInterp(x,   y, z,    x,   y,   z+1, val[0], val[4], cornerIndex[0], cornerIndex[4]);
-                    if ((edgeMask & 512) != 0)  vertList[9]  = vertInterp(x+1, y, z,   x+1, y,   z+1, val[1], val[5], cornerIndex[1], cornerIndex[5]);
-                    if ((edgeMask & 1024) != 0) vertList[10] = vertInterp(x+1, y+1,z,  x+1, y+1,z+1, val[2], val[6], cornerIndex[2], cornerIndex[6]);
-                    if ((edgeMask & 2048) != 0) vertList[11] = vertInterp(x,   y+1,z,  x,   y+1, z+1, val[3], val[7], cornerIndex[3], cornerIndex[7]);
+    /** Progressive extraction by brickSize³ cell bricks (z, y, x order) */
+    public void generateBricks(int brickSize, MeshChunkListener<Result> listener) {
+        MarchingCubesCore core = new MarchingCubesCore(sdf, null, D, H, W, iso);
+        for (CellBox b : core.fullBox().bricks(brickSize)) {
+            emitChunk(core, b, listener);
+        }
+        listener.onComplete();
+    }
 
-                    int[] tri = triTable[cubeIndex];
-                    for (int t=0; t<tri.length && tri[t]!=-1; t+=3) {
-                        int ia = addVertex(verts, vertList[tri[t]]);
-                        int ib = addVertex(verts, vertList[tri[t+1]]);
-                        int ic = addVertex(verts, vertList[tri[t+2]]);
-                        faces.add(ia); faces.add(ib); faces.add(ic);
-                    }
-                }
-            }
+    private static void emitChunk(MarchingCubesCore core, CellBox cells,
+                                  MeshChunkListener<Result> listener) {
+        MeshBuilder mb = new MeshBuilder(1 << 12);
+        core.march(cells, mb);
+        if (mb.faceInts > 0) {
+            listener.onChunk(cells, new Result(mb.vertexArray(), mb.faceArray()));
         }
+    }
 
-        float[] vOut = new float[verts.size()];
-        for (int i = 0; i < verts.size(); i++) vOut[i] = verts.get(i);
+    /**
+     * Temporal incremental meshing: only bricks whose SDF changed since
+     * the last frame are re-meshed (see IncrementalMesher).
+     */
+    public Result generateIncremental(IncrementalMesher state) {
+        state.update(new MarchingCubesCore(sdf, null, D, H, W, iso), sdf, null, D, H, W);
+        return new Result(state.vertices(), state.faces());
+    }
 
-        int[] fOut = new int[faces.size()];
-        for (int i = 0; i < faces.size(); i++) fOut[i] = faces.get(i);
+    /** Region-of-interest extraction: only cells touching the box / view frustum are meshed */
+    public Result generateRegion(ExtractionRegion roi) {
+        MarchingCubesCore core = new MarchingCubesCore(sdf, null, D, H, W, iso);
+        MeshBuilder mb = new MeshBuilder(1 << 14);
+        for (CellBox b : roi.select(core.fullBox())) {
+            core.march(b, mb);
+        }
+        return new Result(mb.vertexArray(), mb.faceArray());
+    }
 
-        return new Result(vOut, fOut);
+    /** Region-of-interest extraction, one chunk per brick */
+    public void generateRegion(ExtractionRegion roi, MeshChunkListener<Result> listener) {
+        MarchingCubesCore core = new MarchingCubesCore(sdf, null, D, H, W, iso);
+        for (CellBox b : roi.select(core.fullBox())) {
+            emitChunk(core, b, listener);
+        }
+        listener.onComplete();
     }
 
-    private int addVertex(List<Float> vs, float[] p) {
-        int idx = vs.size()/3;
-        vs.add(p[0]); vs.add(p[1]); vs.add(p[2]);
-        return idx;
+    /** GPU output: welded, interleaved position + normal chunks with 16-bit indices */
+    public List<GpuMeshWriter.Chunk> generateInto(GpuMeshWriter writer) {
+        writer.begin();
+        new MarchingCubesCore(sdf, null, D, H, W, iso).march(0, D - 1, writer);
+        return writer.finish();
     }
 
-    private float[] vertInterp(int x1,int y1,int z1, int x2,int y2,int z2,
-                               float v1,float v2, int idx1, int idx2) {
-        float t = (iso - v1) / (v2 - v1 + 1e-12f);
-        float px = x1 + t * (x2 - x1);
-        float py = y1 + t * (y2 - y1);
-        float pz = z1 + t * (z2 - z1);
-        return new float[]{px, py, pz};
+    /**
+     * Mesh of a narrow-band SparseGrid (e.g. SparseGrid.open(file)), without
+     * expanding it to a dense grid. Same triangles as generate() on the
+     * dense grid at the grid's iso level, in brick order.
+     */
+    public static Result generateSparse(SparseGrid grid) {
+        MeshBuilder mb = new MeshBuilder(1 << 16);
+        grid.march(mb, false);   // like generate(): no offset displacement
+        return new Result(mb.vertexArray(), mb.faceArray());
     }
 
     public static class Result {
@@ -421,46 +434,80 @@ public class MarchingCubes {
             raw = Arrays.copyOf(raw, expected);
         } else if (raw.length > expected) {
             Log.w("MC", "⚠ raw too big: " + raw.length + " > " + expected + " (trim)");
-            raw = Arrays.copyOf(raw, expected);
+        }
+
+        return fromDecoderOutput(FloatBuffer.wrap(raw));
+    }
+
+    /**
+     * Same as the float[] version, but reads straight from a (possibly
+     * memory-mapped) buffer, e.g. NpyReader.map(ctx, uri, 128, 128, 128, 4),
+     * so the interleaved grid never has to be copied into a float[].
+     */
+    public static MarchingCubes fromDecoderOutput(FloatBuffer raw) {
+        final int D = 128, H = 128, W = 128;
+        final int C = 4;
+        int N = D * H * W;
+        if (raw.remaining() < N * C) {
+            throw new IllegalArgumentException("grid has " + raw.remaining() + " floats, expected " + N * C);
         }
 
         float[] sdf = new float[N];
         float[][] offsets = new float[N][3];
 
-        for (int i = 0; i < N; i++) {
-            sdf[i] = raw[i * C];
-            offsets[i][0] = raw[i * C + 1];
-            offsets[i][1] = raw[i * C + 2];
-            offsets[i][2] = raw[i * C + 3]; // ✅ 修正索引
+        // bulk-copy one slab of interleaved voxels at a time
+        FloatBuffer in = raw.duplicate();
+        float[] slab = new float[4096 * C];
+        for (int base = 0; base < N; base += 4096) {
+            int n = Math.min(4096, N - base);
+            in.get(slab, 0, n * C);
+            for (int j = 0; j < n; j++) {
+                int i = base + j;
+                sdf[i] = slab[j * C];
+                offsets[i][0] = slab[j * C + 1];
+                offsets[i][1] = slab[j * C + 2];
+                offsets[i][2] = slab[j * C + 3];
+            }
         }
 
         return new MarchingCubes(sdf, offsets, D, H, W, 0.0f);
     }
 
     public static File saveObj(Result res) throws Exception {
+        File dir = outputDir();
+        File out = new File(dir, "mesh_" + System.currentTimeMillis() + ".obj");
+        ObjWriter.shared().write(out.getAbsolutePath(), res);
+        return out;
+    }
+
+    /** saveObj on the writer thread; res is handed over */
+    public static CompletableFuture<File> saveObjAsync(Result res, AsyncResultWriter writer) {
+        File out = new File(outputDir(), "mesh_" + System.currentTimeMillis() + ".obj");
+        return writer.writeObj(out, res.vertices, res.faces);
+    }
+
+    /** Binary PLY next to the OBJ files */
+    public static File savePly(Result res) throws IOException {
+        File out = new File(outputDir(), "mesh_" + System.currentTimeMillis() + ".ply");
+        PlyWriter.writePly(out.getAbsolutePath(), res);
+        return out;
+    }
+
+    /** glTF binary next to the OBJ files */
+    public static File saveGlb(Result res) throws IOException {
+        File out = new File(outputDir(), "mesh_" + System.currentTimeMillis() + ".glb");
+        GlbWriter.writeGlb(out.getAbsolutePath(), res);
+        return out;
+    }
+
+    private static File outputDir() {
         File dir = new File(
                 android.os.Environment.getExternalStoragePublicDirectory(
                         android.os.Environment.DIRECTORY_DOWNLOADS),
                 "DecoderAppResults/OBJ_128"
         );
         if (!dir.exists()) dir.mkdirs();
-
-        File out = new File(dir, "mesh_" + System.currentTimeMillis() + ".obj");
-        FileWriter fw = new FileWriter(out);
-
-        float[] v = res.vertices;
-        int[] f = res.faces;
-
-        for (int i = 0; i < v.length; i += 3) {
-            fw.write("v " + v[i] + " " + v[i+1] + " " + v[i+2] + "\n");
-        }
-
-        for (int i = 0; i < f.length; i += 3) {
-            fw.write("f " + (f[i] + 1) + " " + (f[i+1] + 1) + " " + (f[i+2] + 1) + "\n");
-        }
-
-        fw.close();
-        return out;
+        return dir;
     }
 
 }
@@ -0,0 +1,236 @@
+package com.example.decoderapp;
+
+/**
+ * Shared marching cubes loop for the 128³ and 64³ extractors.
+ *
+ * The volume is walked one Z layer at a time with two rolling slices.
+ * Each slice stores a 4-bit inside/outside code per cell face
+ * (corners 0..3 of the cube), so every SDF value is compared against
+ * the iso level exactly once, and the cube index is just
+ * {@code lo[cell] | hi[cell] << 4}. SDF values are only read again for
+ * the edges that the edge table reports as crossing.
+ *
+ * Triangles go to a {@link MeshSink}: {@link MeshBuilder} reproduces the
+ * original per-cell loop exactly (same vertex order, one vertex per
+ * triangle corner), {@link GpuMeshWriter} welds and writes GPU buffers.
+ */
+final class MarchingCubesCore {
+
+    /** Receives triangles as they are extracted */
+    interface MeshSink {
+        /** When false the core skips the SDF gradient for normals */
+        boolean wantsNormals();
+
+        /**
+         * One triangle. pos / nrm hold 12 edge slots × 3 floats, key holds a
+         * grid-global id per edge slot (equal for the same edge seen from
+         * neighbouring cells); a, b, c are the triangle's edge slots.
+         */
+        void triangle(float[] pos, float[] nrm, int[] key, int a, int b, int c);
+    }
+
+    /* Corner layout (same as the original loop):
+       0:(x,y,z) 1:(x+1,y,z) 2:(x+1,y+1,z) 3:(x,y+1,z), 4..7 = 0..3 at z+1 */
+    private static final int[] CORNER_DX = {0, 1, 1, 0, 0, 1, 1, 0};
+    private static final int[] CORNER_DY = {0, 0, 1, 1, 0, 0, 1, 1};
+    private static final int[] CORNER_DZ = {0, 0, 0, 0, 1, 1, 1, 1};
+
+    /* Edge e runs from corner EDGE_A[e] to corner EDGE_B[e] along EDGE_AXIS[e] */
+    private static final int[] EDGE_A = {0, 1, 2, 3, 4, 5, 6, 7, 0, 1, 2, 3};
+    private static final int[] EDGE_B = {1, 2, 3, 0, 5, 6, 7, 4, 4, 5, 6, 7};
+    private static final int[] EDGE_AXIS = {0, 1, 0, 1, 0, 1, 0, 1, 2, 2, 2, 2};
+
+    private final float[] sdf;
+    private final float[][] offsets;   // null → positions are not displaced
+    private final int D, H, W;
+    private final float iso;
+
+    /* Window into a larger grid (SparseGrid bricks): voxel (0,0,0) of the
+       arrays is voxel (ox,oy,oz) of a grid with rows GW and slices GH×GW.
+       Positions and edge keys are reported in that grid's coordinates. */
+    private final int ox, oy, oz, GH, GW;
+
+    /** Linear index delta from corner 0 to each corner */
+    private final int[] cornerDelta = new int[8];
+
+    MarchingCubesCore(float[] sdf, float[][] offsets, int D, int H, int W, float iso) {
+        this(sdf, offsets, D, H, W, iso, 0, 0, 0, H, W);
+    }
+
+    /** D×H×W window at voxel (ox,oy,oz) of a grid whose slices are GH×GW voxels */
+    MarchingCubesCore(float[] sdf, float[][] offsets, int D, int H, int W, float iso,
+                      int ox, int oy, int oz, int GH, int GW) {
+        this.sdf = sdf;
+        this.offsets = offsets;
+        this.D = D; this.H = H; this.W = W;
+        this.iso = iso;
+        this.ox = ox; this.oy = oy; this.oz = oz;
+        this.GH = GH; this.GW = GW;
+        for (int c = 0; c < 8; c++) {
+            cornerDelta[c] = CORNER_DZ[c] * H * W + CORNER_DY[c] * W + CORNER_DX[c];
+        }
+    }
+
+    /** Extract the whole volume */
+    MeshBuilder run() {
+        MeshBuilder out = new MeshBuilder(1 << 16);
+        march(0, D - 1, out);
+        return out;
+    }
+
+    /** Cells [0,W-1) × [0,H-1) × [0,D-1) */
+    CellBox fullBox() {
+        return new CellBox(0, 0, 0, W - 1, H - 1, D - 1);
+    }
+
+    /** Extract cell layers [z0, z1) into {@code out} */
+    void march(int z0, int z1, MeshSink out) {
+        march(new CellBox(0, 0, z0, W - 1, H - 1, z1), out);
+    }
+
+    /**
+     * Extract the cells of {@code box} into {@code out}.
+     * Holds no per-call state in fields, so disjoint boxes may be
+     * marched concurrently on one instance.
+     */
+    void march(CellBox box, MeshSink out) {
+        if (box.isEmpty()) return;
+        final int cw = box.x1 - box.x0, ch = box.y1 - box.y0;
+        byte[] lo = new byte[cw * ch];
+        byte[] hi = new byte[cw * ch];
+        byte[] rowA = new byte[cw + 1];
+        byte[] rowB = new byte[cw + 1];
+        float[] vert = new float[12 * 3];
+        float[] nrm = new float[12 * 3];
+        int[] key = new int[12];
+        final boolean normals = out.wantsNormals();
+
+        fillSlice(box, box.z0, lo, rowA, rowB);
+        for (int z = box.z0; z < box.z1; z++) {
+            fillSlice(box, z + 1, hi, rowA, rowB);
+
+            int cell = 0;
+            for (int y = box.y0; y < box.y1; y++) {
+                for (int x = box.x0; x < box.x1; x++, cell++) {
+                    int cubeIndex = lo[cell] | (hi[cell] << 4);
+                    int edgeMask = MarchingCubes.edgeTable[cubeIndex];
+                    if (edgeMask == 0) continue;
+                    emitCell(x, y, z, cubeIndex, edgeMask, vert, nrm, key, normals, out);
+                }
+            }
+
+            byte[] t = lo; lo = hi; hi = t;
+        }
+    }
+
+    /**
+     * Sign pass for voxel slice z inside the box: one compare per voxel,
+     * then each cell's 4-bit face code is assembled from the two
+     * neighbouring rows.
+     */
+    private void fillSlice(CellBox box, int z, byte[] quad, byte[] rowA, byte[] rowB) {
+        final int cw = box.x1 - box.x0;
+        final int base = z * H * W + box.x0;
+        signRow(base + box.y0 * W, rowA, cw + 1);
+        int q = 0;
+        for (int y = box.y0; y < box.y1; y++) {
+            signRow(base + (y + 1) * W, rowB, cw + 1);
+            for (int x = 0; x < cw; x++) {
+                quad[q + x] = (byte) (rowA[x]
+                        | (rowA[x + 1] << 1)
+                        | (rowB[x + 1] << 2)
+                        | (rowB[x] << 3));
+            }
+            q += cw;
+            byte[] t = rowA; rowA = rowB; rowB = t;
+        }
+    }
+
+    private void signRow(int start, byte[] row, int n) {
+        for (int x = 0; x < n; x++) {
+            row[x] = (byte) (sdf[start + x] < iso ? 1 : 0);
+        }
+    }
+
+    private void emitCell(int x, int y, int z, int cubeIndex, int edgeMask,
+                          float[] vert, float[] nrm, int[] key, boolean normals,
+                          MeshSink out) {
+        final int base = z * H * W + y * W + x;
+
+        // only crossing edges are interpolated
+        for (int m = edgeMask; m != 0; m &= m - 1) {
+            int e = Integer.numberOfTrailingZeros(m);
+            int ca = EDGE_A[e], cb = EDGE_B[e];
+            int ia = base + cornerDelta[ca];
+            int ib = base + cornerDelta[cb];
+            float v1 = sdf[ia], v2 = sdf[ib];
+
+            float t = (iso - v1) / (v2 - v1 + 1e-12f);
+            int x1 = x + CORNER_DX[ca], y1 = y + CORNER_DY[ca], z1 = z + CORNER_DZ[ca];
+            float px = (x1 + ox) + t * (CORNER_DX[cb] - CORNER_DX[ca]);
+            float py = (y1 + oy) + t * (CORNER_DY[cb] - CORNER_DY[ca]);
+            float pz = (z1 + oz) + t * (CORNER_DZ[cb] - CORNER_DZ[ca]);
+
+            if (offsets != null) {
+                float[] o1 = offsets[ia];
+                float[] o2 = offsets[ib];
+                px += (1 - t) * o1[0] + t * o2[0];
+                py += (1 - t) * o1[1] + t * o2[1];
+                pz += (1 - t) * o1[2] + t * o2[2];
+            }
+
+            vert[e * 3] = px;
+            vert[e * 3 + 1] = py;
+            vert[e * 3 + 2] = pz;
+            key[e] = gridIndex(Math.min(ia, ib)) * 3 + EDGE_AXIS[e];
+
+            if (normals) {
+                gradient(x1, y1, z1, x + CORNER_DX[cb], y + CORNER_DY[cb], z + CORNER_DZ[cb],
+                        t, nrm, e * 3);
+            }
+        }
+
+        int[] tri = MarchingCubes.triTable[cubeIndex];
+        for (int t = 0; t < tri.length && tri[t] != -1; t += 3) {
+            out.triangle(vert, nrm, key, tri[t], tri[t + 1], tri[t + 2]);
+        }
+    }
+
+    /** Window index → index in the full grid (identity for a whole grid) */
+    private int gridIndex(int i) {
+        if (ox == 0 && oy == 0 && oz == 0 && H == GH && W == GW) return i;
+        int x = i % W, y = (i / W) % H, z = i / (H * W);
+        return ((z + oz) * GH + (y + oy)) * GW + (x + ox);
+    }
+
+    /**
+     * Unit normal at the crossing: SDF gradient (central differences,
+     * one-sided at the border) interpolated between the edge's endpoints.
+     * Points toward increasing SDF, i.e. out of the surface.
+     */
+    private void gradient(int x1, int y1, int z1, int x2, int y2, int z2,
+                          float t, float[] n, int o) {
+        float gx = (1 - t) * diff(x1, y1, z1, 0) + t * diff(x2, y2, z2, 0);
+        float gy = (1 - t) * diff(x1, y1, z1, 1) + t * diff(x2, y2, z2, 1);
+        float gz = (1 - t) * diff(x1, y1, z1, 2) + t * diff(x2, y2, z2, 2);
+        float len = (float) Math.sqrt(gx * gx + gy * gy + gz * gz);
+        if (len > 0f) {
+            gx /= len; gy /= len; gz /= len;
+        }
+        n[o] = gx;
+        n[o + 1] = gy;
+        n[o + 2] = gz;
+    }
+
+    private float diff(int x, int y, int z, int axis) {
+        int c, n, step;
+        if (axis == 0)      { c = x; n = W; step = 1; }
+        else if (axis == 1) { c = y; n = H; step = W; }
+        else                { c = z; n = D; step = H * W; }
+        int i = z * H * W + y * W + x;
+        int lo = c > 0 ? i - step : i;
+        int hi = c < n - 1 ? i + step : i;
+        int span = (c > 0 ? 1 : 0) + (c < n - 1 ? 1 : 0);
+        return span == 0 ? 0f : (sdf[hi] - sdf[lo]) / span;
+    }
+}
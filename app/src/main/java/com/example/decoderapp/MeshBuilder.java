@@ -0,0 +1,60 @@
+package com.example.decoderapp;
+
+import java.util.Arrays;
+
+/**
+ * Growable flat vertex / face arrays used by the marching cubes core.
+ * Replaces the boxed List&lt;Float&gt; / List&lt;Integer&gt; accumulators.
+ */
+final class MeshBuilder implements MarchingCubesCore.MeshSink {
+
+    float[] vertices;
+    int[] faces;
+    int vertexFloats;   // used length of vertices
+    int faceInts;       // used length of faces
+
+    MeshBuilder(int initialVertices) {
+        int cap = Math.max(initialVertices, 16);
+        vertices = new float[cap * 3];
+        faces = new int[cap];
+    }
+
+    int vertexCount() { return vertexFloats / 3; }
+
+    int addVertex(float x, float y, float z) {
+        if (vertexFloats + 3 > vertices.length) {
+            vertices = Arrays.copyOf(vertices, vertices.length * 2);
+        }
+        int id = vertexFloats / 3;
+        vertices[vertexFloats++] = x;
+        vertices[vertexFloats++] = y;
+        vertices[vertexFloats++] = z;
+        return id;
+    }
+
+    void addFace(int a, int b, int c) {
+        if (faceInts + 3 > faces.length) {
+            faces = Arrays.copyOf(faces, faces.length * 2);
+        }
+        faces[faceInts++] = a;
+        faces[faceInts++] = b;
+        faces[faceInts++] = c;
+    }
+
+    @Override
+    public boolean wantsNormals() { return false; }
+
+    /** One vertex per triangle corner, as the original loop emitted them */
+    @Override
+    public void triangle(float[] pos, float[] nrm, int[] key, int a, int b, int c) {
+        a *= 3; b *= 3; c *= 3;
+        int ia = addVertex(pos[a], pos[a + 1], pos[a + 2]);
+        int ib = addVertex(pos[b], pos[b + 1], pos[b + 2]);
+        int ic = addVertex(pos[c], pos[c + 1], pos[c + 2]);
+        addFace(ia, ib, ic);
+    }
+
+    float[] vertexArray() { return Arrays.copyOf(vertices, vertexFloats); }
+
+    int[] faceArray() { return Arrays.copyOf(faces, faceInts); }
+}
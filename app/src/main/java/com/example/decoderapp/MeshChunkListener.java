@@ -0,0 +1,19 @@
+package com.example.decoderapp;
+
+/**
+ * Receives marching cubes output piece by piece while extraction is still running.
+ *
+ * Each chunk is a self-contained mesh (face indices start at 0) for the
+ * cells in {@code cells}; vertex positions are in whole-grid voxel
+ * coordinates, so chunks can be concatenated or drawn side by side.
+ * Chunks without triangles are not reported.
+ *
+ * @param <R> MarchingCubes.Result or MarchingCubes64.Result
+ */
+public interface MeshChunkListener<R> {
+
+    void onChunk(CellBox cells, R mesh);
+
+    /** Called once after the last chunk */
+    default void onComplete() {}
+}
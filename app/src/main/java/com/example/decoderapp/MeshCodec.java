@@ -0,0 +1,346 @@
+package com.example.decoderapp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Compact encoding of a marching cubes mesh (.qmesh) for caches and
+ * pre-baked sequences.
+ *
+ * - Corners at exactly the same position are welded, so the copies
+ *   MarchingCubes emits per shared vertex are stored once. Welding
+ *   happens before quantisation: distinct vertices closer than a step
+ *   stay distinct and every face is kept, so thin features keep their
+ *   topology.
+ * - Positions are then quantised to 16 bits per axis inside the mesh's
+ *   bounding box (error ≤ half a step, 1/131070 of the box extent).
+ * - Vertices are numbered by first use. An index is coded as the
+ *   distance back from the next unused number (0 = new vertex), and a
+ *   new vertex as the zigzag delta from the previous one, both as
+ *   LEB128 varints. Both streams are mostly 1-byte values.
+ *
+ * Decoding is a single forward pass over a (memory-mapped) ByteBuffer
+ * and can fill caller-owned arrays, so replaying a sequence allocates
+ * nothing per frame.
+ *
+ * Layout (little-endian):
+ *   header  48 B   magic "MSHQ", version, vertexCount, faceCount,
+ *                  min xyz, step xyz, vertexBytes, indexBytes
+ *   vertex stream  vertexBytes   3 zigzag varints per vertex
+ *   index stream   indexBytes    3 varints per face
+ */
+public final class MeshCodec {
+
+    static final int MAGIC = 0x5148534D;   // "MSHQ"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 48;
+
+    private static final int LEVELS = 65535;
+
+    private MeshCodec() {}
+
+    /* ---------------- encode ---------------- */
+
+    public static void write(String path, MarchingCubes.Result mesh) throws IOException {
+        write(path, mesh.vertices, mesh.faces);
+    }
+
+    public static void write(String path, float[] vertices, int[] faces) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(path);
+             ChannelWriter w = new ChannelWriter(fos.getChannel())) {
+            encode(vertices, faces, w);
+        }
+    }
+
+    /** Encodes into an in-memory byte array, e.g. for a network transfer */
+    public static byte[] encode(float[] vertices, int[] faces) {
+        Encoded e = new Encoded(vertices, faces);
+        ByteBuffer out = ByteBuffer.allocate(e.byteSize()).order(ByteOrder.LITTLE_ENDIAN);
+        e.header(out);
+        out.put(e.vertexStream.buf, 0, e.vertexStream.len);
+        out.put(e.indexStream.buf, 0, e.indexStream.len);
+        return out.array();
+    }
+
+    static void encode(float[] vertices, int[] faces, ChannelWriter w) throws IOException {
+        Encoded e = new Encoded(vertices, faces);
+        e.header(w.reserve(HEADER_BYTES));
+        w.put(e.vertexStream.buf, 0, e.vertexStream.len);
+        w.put(e.indexStream.buf, 0, e.indexStream.len);
+    }
+
+    /** Welded, quantised and varint-coded mesh, ready to be written */
+    private static final class Encoded {
+        final float[] min = new float[3];
+        final float[] step = new float[3];
+        final Bytes vertexStream = new Bytes();
+        final Bytes indexStream = new Bytes();
+        int vertexCount, faceCount;
+
+        Encoded(float[] v, int[] f) {
+            int n = v.length / 3;
+            float[] max = new float[3];
+            Arrays.fill(min, Float.MAX_VALUE);
+            Arrays.fill(max, -Float.MAX_VALUE);
+            for (int i = 0; i < n * 3; i += 3) {
+                for (int k = 0; k < 3; k++) {
+                    min[k] = Math.min(min[k], v[i + k]);
+                    max[k] = Math.max(max[k], v[i + k]);
+                }
+            }
+            if (n == 0) Arrays.fill(min, 0f);
+            for (int k = 0; k < 3; k++) step[k] = n == 0 ? 0f : (max[k] - min[k]) / LEVELS;
+
+            // quantise every input vertex once
+            long[] packed = new long[n];
+            for (int i = 0; i < n; i++) {
+                packed[i] = quantise(v[i * 3], 0)
+                        | (long) quantise(v[i * 3 + 1], 1) << 16
+                        | (long) quantise(v[i * 3 + 2], 2) << 32;
+            }
+
+            // weld on the exact source position; output numbers follow first use
+            int[] cluster = new int[n];
+            Arrays.fill(cluster, -1);
+            PointMap welded = new PointMap(v, Math.max(16, n / 2));
+            int[] number = new int[Math.max(16, n / 2)];
+            int[] tri = new int[3];
+            long prev = 0;
+            for (int t = 0; t + 2 < f.length; t += 3) {
+                for (int c = 0; c < 3; c++) {
+                    int src = f[t + c];
+                    if (cluster[src] < 0) {
+                        int fresh = welded.size();
+                        cluster[src] = welded.putIfAbsent(src, fresh);
+                        if (cluster[src] == fresh) {   // first corner at this point
+                            if (fresh == number.length) number = Arrays.copyOf(number, fresh * 2);
+                            number[fresh] = -1;
+                        }
+                    }
+                    tri[c] = cluster[src];
+                }
+
+                for (int c = 0; c < 3; c++) {
+                    int id = number[tri[c]];
+                    if (id >= 0) {
+                        indexStream.varint(vertexCount - id);
+                        continue;
+                    }
+                    number[tri[c]] = vertexCount++;
+                    indexStream.varint(0);
+                    long q = packed[welded.sourceAt(tri[c])];
+                    for (int k = 0; k < 3; k++) {
+                        int d = (int) ((q >>> (16 * k)) & 0xFFFF) - (int) ((prev >>> (16 * k)) & 0xFFFF);
+                        vertexStream.varint((d << 1) ^ (d >> 31));
+                    }
+                    prev = q;
+                }
+                faceCount++;
+            }
+        }
+
+        private int quantise(float x, int axis) {
+            if (step[axis] == 0f) return 0;
+            int q = Math.round((x - min[axis]) / step[axis]);
+            return Math.max(0, Math.min(LEVELS, q));
+        }
+
+        int byteSize() {
+            return HEADER_BYTES + vertexStream.len + indexStream.len;
+        }
+
+        void header(ByteBuffer b) {
+            b.putInt(MAGIC).putInt(VERSION).putInt(vertexCount).putInt(faceCount)
+                    .putFloat(min[0]).putFloat(min[1]).putFloat(min[2])
+                    .putFloat(step[0]).putFloat(step[1]).putFloat(step[2])
+                    .putInt(vertexStream.len).putInt(indexStream.len);
+        }
+    }
+
+    /* ---------------- decode ---------------- */
+
+    /** Maps and decodes a .qmesh file */
+    public static MarchingCubes.Result read(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel ch = in.getChannel();
+            return decode(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()));
+        }
+    }
+
+    /** True when src (at its position) starts with a MeshCodec header */
+    public static boolean isEncoded(ByteBuffer src) {
+        return src.remaining() >= HEADER_BYTES
+                && src.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(src.position()) == MAGIC;
+    }
+
+    /** Floats needed for the vertices of the mesh at src's position */
+    public static int vertexFloats(ByteBuffer src) throws IOException {
+        return header(src).getInt(src.position() + 8) * 3;
+    }
+
+    /** Ints needed for the faces of the mesh at src's position */
+    public static int faceInts(ByteBuffer src) throws IOException {
+        return header(src).getInt(src.position() + 12) * 3;
+    }
+
+    public static MarchingCubes.Result decode(ByteBuffer src) throws IOException {
+        float[] v = new float[vertexFloats(src)];
+        int[] f = new int[faceInts(src)];
+        decode(src, v, f);
+        return new MarchingCubes.Result(v, f);
+    }
+
+    /**
+     * Decodes the mesh at src's position into caller-owned arrays (at
+     * least vertexFloats / faceInts long) and advances src past it, so
+     * meshes stored back to back decode in sequence.
+     */
+    public static void decode(ByteBuffer src, float[] vertices, int[] faces) throws IOException {
+        ByteBuffer in = header(src);
+        int p = src.position();
+        int vertexCount = in.getInt(p + 8), faceCount = in.getInt(p + 12);
+        float mx = in.getFloat(p + 16), my = in.getFloat(p + 20), mz = in.getFloat(p + 24);
+        float sx = in.getFloat(p + 28), sy = in.getFloat(p + 32), sz = in.getFloat(p + 36);
+        int vertexBytes = in.getInt(p + 40), indexBytes = in.getInt(p + 44);
+        if (vertexCount < 0 || faceCount < 0 || vertexBytes < 0 || indexBytes < 0
+                || (long) HEADER_BYTES + vertexBytes + indexBytes > src.remaining()) {
+            throw new IOException("Truncated mesh");
+        }
+        if (vertices.length < vertexCount * 3 || faces.length < faceCount * 3) {
+            throw new IllegalArgumentException("destination too small for "
+                    + vertexCount + " vertices / " + faceCount + " faces");
+        }
+
+        try {
+            in.position(p + HEADER_BYTES);
+            int qx = 0, qy = 0, qz = 0;
+            for (int i = 0; i < vertexCount * 3; i += 3) {
+                qx += unzigzag(varint(in));
+                qy += unzigzag(varint(in));
+                qz += unzigzag(varint(in));
+                vertices[i] = mx + qx * sx;
+                vertices[i + 1] = my + qy * sy;
+                vertices[i + 2] = mz + qz * sz;
+            }
+
+            in.position(p + HEADER_BYTES + vertexBytes);
+            int next = 0;
+            for (int i = 0; i < faceCount * 3; i++) {
+                int id = next - varint(in);
+                if (id == next) next++;
+                if (id < 0 || id >= vertexCount) throw new IOException("Bad vertex index " + id);
+                faces[i] = id;
+            }
+        } catch (RuntimeException e) {   // BufferUnderflowException on a corrupt stream
+            throw new IOException("Corrupt mesh stream", e);
+        }
+        src.position(p + HEADER_BYTES + vertexBytes + indexBytes);
+    }
+
+    /** Little-endian view of src after checking the magic / version */
+    private static ByteBuffer header(ByteBuffer src) throws IOException {
+        if (!isEncoded(src)) throw new IOException("Not an encoded mesh (magic mismatch)");
+        ByteBuffer in = src.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int version = in.getInt(src.position() + 4);
+        if (version != VERSION) throw new IOException("Unsupported mesh version " + version);
+        return in;
+    }
+
+    private static int varint(ByteBuffer in) {
+        int b = in.get();
+        if (b >= 0) return b;   // fast path: one byte
+        int r = b & 0x7F, shift = 7;
+        do {
+            b = in.get();
+            r |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return r;
+    }
+
+    private static int unzigzag(int z) {
+        return (z >>> 1) ^ -(z & 1);
+    }
+
+    /* ---------------- internals ---------------- */
+
+    /** Growable byte array with LEB128 varint writes */
+    private static final class Bytes {
+        byte[] buf = new byte[1 << 12];
+        int len;
+
+        void varint(int x) {
+            if (len + 5 > buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+            while ((x & ~0x7F) != 0) {
+                buf[len++] = (byte) ((x & 0x7F) | 0x80);
+                x >>>= 7;
+            }
+            buf[len++] = (byte) x;
+        }
+    }
+
+    /**
+     * Open-addressing map from a vertex position (exact float bits of
+     * v[i*3..i*3+2]) to a cluster number in insertion order (no boxing)
+     */
+    private static final class PointMap {
+        private final float[] v;
+        private int[] slots;   // cluster + 1, 0 = empty
+        private int[] sources; // cluster → first source vertex at its position
+        private int size;
+
+        PointMap(float[] v, int expected) {
+            this.v = v;
+            int cap = Integer.highestOneBit(Math.max(expected, 8) * 2 - 1) << 1;
+            slots = new int[cap];
+            sources = new int[Math.max(expected, 8)];
+        }
+
+        int size() { return size; }
+
+        int sourceAt(int cluster) { return sources[cluster]; }
+
+        /** Cluster already stored for src's position, or stores and returns value */
+        int putIfAbsent(int src, int value) {
+            int mask = slots.length - 1;
+            int h = hash(src) & mask;
+            while (slots[h] != 0) {
+                if (samePoint(sources[slots[h] - 1], src)) return slots[h] - 1;
+                h = (h + 1) & mask;
+            }
+            slots[h] = value + 1;
+            if (size == sources.length) sources = Arrays.copyOf(sources, size * 2);
+            sources[size++] = src;
+            if (size * 2 > slots.length) grow();
+            return value;
+        }
+
+        private void grow() {
+            int[] old = slots;
+            slots = new int[old.length * 2];
+            int mask = slots.length - 1;
+            for (int s : old) {
+                if (s == 0) continue;
+                int h = hash(sources[s - 1]) & mask;
+                while (slots[h] != 0) h = (h + 1) & mask;
+                slots[h] = s;
+            }
+        }
+
+        private boolean samePoint(int a, int b) {
+            return Float.floatToIntBits(v[a * 3]) == Float.floatToIntBits(v[b * 3])
+                    && Float.floatToIntBits(v[a * 3 + 1]) == Float.floatToIntBits(v[b * 3 + 1])
+                    && Float.floatToIntBits(v[a * 3 + 2]) == Float.floatToIntBits(v[b * 3 + 2]);
+        }
+
+        private int hash(int i) {
+            long k = Float.floatToIntBits(v[i * 3]) * 0x9E3779B97F4A7C15L
+                    ^ Float.floatToIntBits(v[i * 3 + 1]) * 0xC2B2AE3D27D4EB4FL
+                    ^ Float.floatToIntBits(v[i * 3 + 2]) * 0x165667B19E3779F9L;
+            return (int) (k ^ (k >>> 32));
+        }
+    }
+}
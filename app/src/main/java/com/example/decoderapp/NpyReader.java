@@ -0,0 +1,294 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * NPY reader (format versions 1.0, 2.0 and 3.0, float32 only).
+ *
+ * The header dict is parsed properly (descr, fortran_order, shape) and
+ * the payload is returned as a FloatBuffer view over a memory-mapped
+ * region of the file, so a decoded 128³ grid is paged in on access
+ * instead of being copied twice through byte[] and float[].
+ *
+ * SAF Uris are opened through a ParcelFileDescriptor; providers that
+ * only hand out pipes fall back to one read into a direct buffer.
+ *
+ * Usage:
+ *   FloatBuffer grid = NpyReader.map(ctx, uri, 128, 128, 128, 4);
+ */
+public final class NpyReader {
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y'};
+    private static final int PREAMBLE = 12;   // magic + version + the longest (4-byte) length field
+
+    private NpyReader() {}
+
+    /** Parsed header; dataOffset is where the payload starts in the file */
+    public static final class Header {
+        public final int major, minor;
+        public final String descr;
+        public final boolean fortranOrder;
+        public final int[] shape;
+        public final int dataOffset;
+
+        Header(int major, int minor, String descr, boolean fortranOrder, int[] shape, int dataOffset) {
+            this.major = major;
+            this.minor = minor;
+            this.descr = descr;
+            this.fortranOrder = fortranOrder;
+            this.shape = shape;
+            this.dataOffset = dataOffset;
+        }
+
+        public long elementCount() {
+            long n = 1;
+            for (int s : shape) n *= s;
+            return n;
+        }
+
+        /** Shape check that ignores leading 1s, so (1,4,4,4,128) matches (4,4,4,128) */
+        public void requireShape(int... expected) throws IOException {
+            if (!Arrays.equals(squeeze(shape), squeeze(expected))) {
+                throw new IOException("NPY shape " + Arrays.toString(shape)
+                        + ", expected " + Arrays.toString(expected));
+            }
+        }
+
+        /** Element-count check for callers that accept several layouts of the same data */
+        public void requireCount(long expected) throws IOException {
+            if (elementCount() != expected) {
+                throw new IOException("NPY has " + elementCount() + " floats " + Arrays.toString(shape)
+                        + ", expected " + expected);
+            }
+        }
+
+        private static int[] squeeze(int[] s) {
+            int i = 0;
+            while (i < s.length - 1 && s[i] == 1) i++;
+            return Arrays.copyOfRange(s, i, s.length);
+        }
+
+        @Override
+        public String toString() {
+            return "NPY v" + major + "." + minor + " " + descr + " " + Arrays.toString(shape)
+                    + (fortranOrder ? " (Fortran)" : "");
+        }
+    }
+
+    /** Header plus the float payload, positioned at 0 */
+    public static final class Array {
+        public final Header header;
+        public final FloatBuffer data;
+
+        Array(Header header, FloatBuffer data) {
+            this.header = header;
+            this.data = data;
+        }
+    }
+
+    /* ---------------- entry points ---------------- */
+
+    public static FloatBuffer map(File file, int... expectedShape) throws IOException {
+        Array a = open(file);
+        a.header.requireShape(expectedShape);
+        return a.data;
+    }
+
+    public static FloatBuffer map(Context ctx, Uri uri, int... expectedShape) throws IOException {
+        Array a = open(ctx, uri);
+        a.header.requireShape(expectedShape);
+        return a.data;
+    }
+
+    public static Array open(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return open(in.getChannel());
+        }
+    }
+
+    public static Array open(Context ctx, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = ctx.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) throw new FileNotFoundException("Cannot open " + uri);
+        try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            // pipe-backed providers report no size and cannot be mapped
+            return pfd.getStatSize() < 0 ? read(Channels.newChannel(in)) : open(in.getChannel());
+        } finally {
+            pfd.close();
+        }
+    }
+
+    /** Maps the payload of a seekable channel; the mapping outlives the channel */
+    public static Array open(FileChannel ch) throws IOException {
+        Header h = readHeader(ch);
+        long bytes = payloadBytes(h);
+        if (h.dataOffset + bytes > ch.size()) {
+            throw new IOException("NPY truncated: " + h + " needs " + bytes
+                    + " bytes, file has " + (ch.size() - h.dataOffset));
+        }
+        ByteBuffer mapped = ch.map(FileChannel.MapMode.READ_ONLY, h.dataOffset, bytes);
+        return new Array(h, mapped.order(order(h)).asFloatBuffer());
+    }
+
+    /** True if the channel starts with the NPY magic */
+    static boolean isNpy(FileChannel ch) throws IOException {
+        if (ch.size() < PREAMBLE) return false;
+        ByteBuffer pre = ByteBuffer.allocate(MAGIC.length);
+        readFully(ch, pre, 0);
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (pre.get(i) != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    /** Header only, for callers that map the payload themselves */
+    static Header readHeader(FileChannel ch) throws IOException {
+        ByteBuffer pre = ByteBuffer.allocate(PREAMBLE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, pre, 0);
+        ByteBuffer head = ByteBuffer.allocate(headerEnd(pre)).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, head, 0);
+        return parseHeader(head);
+    }
+
+    /** Sequential fallback: one read straight into a direct buffer */
+    static Array read(ReadableByteChannel ch) throws IOException {
+        ByteBuffer pre = ByteBuffer.allocate(PREAMBLE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(ch, pre);
+        ByteBuffer head = ByteBuffer.allocate(headerEnd(pre)).order(ByteOrder.LITTLE_ENDIAN);
+        pre.flip();
+        head.put(pre);
+        readFully(ch, head);
+        Header h = parseHeader(head);
+
+        ByteBuffer data = ByteBuffer.allocateDirect((int) payloadBytes(h));
+        readFully(ch, data);
+        data.flip();
+        return new Array(h, data.order(order(h)).asFloatBuffer());
+    }
+
+    /* ---------------- header ---------------- */
+
+    /** Total header size (preamble + dict) from the first 12 bytes */
+    private static int headerEnd(ByteBuffer pre) throws IOException {
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (pre.get(i) != MAGIC[i]) throw new IOException("Not an NPY file (magic mismatch)");
+        }
+        int major = pre.get(6) & 0xFF;
+        if (major == 1) return 10 + (pre.getShort(8) & 0xFFFF);
+        if (major == 2 || major == 3) {
+            long len = pre.getInt(8) & 0xFFFFFFFFL;
+            if (len > 1 << 20) throw new IOException("NPY header too large: " + len);
+            return 12 + (int) len;
+        }
+        throw new IOException("Unsupported NPY version " + major);
+    }
+
+    /** head holds the complete header, starting at the magic */
+    static Header parseHeader(ByteBuffer head) throws IOException {
+        int major = head.get(6) & 0xFF;
+        int minor = head.get(7) & 0xFF;
+        int start = major == 1 ? 10 : 12;
+        int end = headerEnd(head);
+        byte[] b = new byte[end - start];
+        for (int i = 0; i < b.length; i++) b[i] = head.get(start + i);
+        // v3 allows utf8 field names; the keys we read are ASCII either way
+        String dict = new String(b, major == 3 ? "UTF-8" : "ISO-8859-1");
+
+        String descr = stringValue(dict, "descr");
+        String fortran = rawValue(dict, "fortran_order");
+        if (!"True".equals(fortran) && !"False".equals(fortran)) {
+            throw new IOException("NPY header: bad fortran_order '" + fortran + "'");
+        }
+        return new Header(major, minor, descr, "True".equals(fortran), tupleValue(dict, "shape"), end);
+    }
+
+    private static int valueStart(String dict, String key) throws IOException {
+        int k = dict.indexOf("'" + key + "'");
+        if (k < 0) k = dict.indexOf("\"" + key + "\"");
+        if (k < 0) throw new IOException("NPY header: missing '" + key + "' in " + dict.trim());
+        int colon = dict.indexOf(':', k + key.length() + 2);
+        if (colon < 0) throw new IOException("NPY header: malformed '" + key + "'");
+        int p = colon + 1;
+        while (p < dict.length() && dict.charAt(p) == ' ') p++;
+        return p;
+    }
+
+    private static String stringValue(String dict, String key) throws IOException {
+        int p = valueStart(dict, key);
+        char q = p < dict.length() ? dict.charAt(p) : 0;
+        int e = q == '\'' || q == '"' ? dict.indexOf(q, p + 1) : -1;
+        if (e < 0) throw new IOException("NPY header: '" + key + "' is not a string");
+        return dict.substring(p + 1, e);
+    }
+
+    private static String rawValue(String dict, String key) throws IOException {
+        int p = valueStart(dict, key);
+        int e = p;
+        while (e < dict.length() && Character.isLetterOrDigit(dict.charAt(e))) e++;
+        return dict.substring(p, e);
+    }
+
+    private static int[] tupleValue(String dict, String key) throws IOException {
+        int p = valueStart(dict, key);
+        int e = dict.indexOf(')', p);
+        if (p >= dict.length() || dict.charAt(p) != '(' || e < 0) {
+            throw new IOException("NPY header: '" + key + "' is not a tuple");
+        }
+        String body = dict.substring(p + 1, e).trim();
+        if (body.isEmpty()) return new int[0];   // scalar
+
+        String[] parts = body.split(",");
+        int n = parts[parts.length - 1].trim().isEmpty() ? parts.length - 1 : parts.length;
+        int[] shape = new int[n];
+        for (int i = 0; i < n; i++) {
+            try {
+                shape[i] = Integer.parseInt(parts[i].trim());
+            } catch (NumberFormatException ex) {
+                throw new IOException("NPY header: bad dimension '" + parts[i].trim() + "'");
+            }
+            if (shape[i] < 0) throw new IOException("NPY header: negative dimension " + shape[i]);
+        }
+        return shape;
+    }
+
+    private static long payloadBytes(Header h) throws IOException {
+        if (!h.descr.equals("<f4") && !h.descr.equals(">f4")) {
+            throw new IOException("NPY not float32: descr=" + h.descr);
+        }
+        if (h.fortranOrder && h.shape.length > 1) {
+            throw new IOException("Fortran-order NPY not supported: " + h);
+        }
+        long bytes = h.elementCount() * 4;
+        if (bytes > Integer.MAX_VALUE) throw new IOException("NPY payload over 2 GB: " + h);
+        return bytes;
+    }
+
+    static ByteOrder order(Header h) {
+        return h.descr.charAt(0) == '>' ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+    }
+
+    /* ---------------- IO ---------------- */
+
+    private static void readFully(FileChannel ch, ByteBuffer dst, long pos) throws IOException {
+        while (dst.hasRemaining()) {
+            int n = ch.read(dst, pos + dst.position());
+            if (n < 0) throw new EOFException("NPY truncated");
+        }
+    }
+
+    private static void readFully(ReadableByteChannel ch, ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (ch.read(dst) < 0) throw new EOFException("NPY truncated");
+        }
+    }
+}
@@ -3,11 +3,36 @@ package com.example.decoderapp;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
 
+/**
+ * NPY (v1.0, '&lt;f4') writer.
+ *
+ * Data is streamed into a FileChannel through a small direct staging
+ * buffer that each thread reuses across files, so saving a 128³ grid no
+ * longer builds a second 32 MB heap copy. The file is sized up front
+ * (which also drops any stale tail of an older file with the same name).
+ *
+ * Sources: float[], FloatBuffer (heap, direct or mapped) or an iterator
+ * of slabs, e.g. one z-slice at a time straight from the decoder.
+ * writeNpyMapped maps the output file instead and bulk-copies into it.
+ */
 public class NpyWriter {
 
+    static final int STAGING_BYTES = 256 * 1024;
+
+    private static final ThreadLocal<ByteBuffer> STAGING = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(STAGING_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        }
+    };
+
     /** 标准 NPY Header 生成 */
-    private static byte[] makeHeader(int[] shape) throws IOException {
+    static byte[] makeHeader(int[] shape) throws IOException {
         StringBuilder shp = new StringBuilder("(");
         for (int i = 0; i < shape.length; i++) {
             shp.append(shape[i]);
@@ -40,13 +65,99 @@ public class NpyWriter {
         return baos.toByteArray();
     }
 
+    static long elementCount(int[] shape) {
+        long n = 1;
+        for (int s : shape) n *= s;
+        return n;
+    }
+
     public static void writeNpy(String path, float[] data, int[] shape) throws IOException {
-        try (FileOutputStream fos = new FileOutputStream(path)) {
-            fos.write(makeHeader(shape));
-            ByteBuffer bb = ByteBuffer.allocate(data.length * 4).order(ByteOrder.LITTLE_ENDIAN);
-            bb.asFloatBuffer().put(data);
-            fos.write(bb.array());
+        checkCount(data.length, shape);
+        try (RandomAccessFile raf = open(path, shape);
+             ChannelWriter w = new ChannelWriter(raf.getChannel(), STAGING.get())) {
+            w.put(makeHeader(shape));
+            w.putFloats(data, 0, data.length);
+        }
+    }
+
+    /** Same, and synced to storage before returning, e.g. ahead of a rename that publishes the file */
+    public static void writeNpySynced(String path, float[] data, int[] shape) throws IOException {
+        checkCount(data.length, shape);
+        try (RandomAccessFile raf = open(path, shape)) {
+            try (ChannelWriter w = new ChannelWriter(raf.getChannel(), STAGING.get())) {
+                w.put(makeHeader(shape));
+                w.putFloats(data, 0, data.length);
+            }
+            raf.getFD().sync();
+        }
+    }
+
+    /** Writes data[position, limit); the buffer's position is not changed */
+    public static void writeNpy(String path, FloatBuffer data, int[] shape) throws IOException {
+        checkCount(data.remaining(), shape);
+        try (RandomAccessFile raf = open(path, shape);
+             ChannelWriter w = new ChannelWriter(raf.getChannel(), STAGING.get())) {
+            w.put(makeHeader(shape));
+            w.putFloats(data);
+        }
+    }
+
+    /**
+     * Writes the slabs back to back (e.g. one decoded z-slice each).
+     * Their total size must match the shape.
+     */
+    public static void writeNpy(String path, int[] shape, Iterator<FloatBuffer> slabs) throws IOException {
+        long expected = elementCount(shape);
+        long written = 0;
+        try (RandomAccessFile raf = open(path, shape);
+             ChannelWriter w = new ChannelWriter(raf.getChannel(), STAGING.get())) {
+            w.put(makeHeader(shape));
+            while (slabs.hasNext()) {
+                FloatBuffer slab = slabs.next();
+                written += slab.remaining();
+                if (written > expected) break;
+                w.putFloats(slab);
+            }
+        }
+        if (written != expected) {
+            throw new IOException("NPY slabs hold " + (written > expected ? "more than " : "") + written
+                    + " floats, shape needs " + expected + ": " + path);
+        }
+    }
+
+    /** Sizes the file, maps it and copies the data straight into the page cache */
+    public static void writeNpyMapped(String path, FloatBuffer data, int[] shape) throws IOException {
+        checkCount(data.remaining(), shape);
+        byte[] header = makeHeader(shape);
+        try (RandomAccessFile raf = open(path, shape)) {
+            MappedByteBuffer map = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+                    header.length + elementCount(shape) * 4);
+            map.put(header);
+            map.order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().put(data.duplicate());
+        }
+    }
+
+    public static void writeNpyMapped(String path, float[] data, int[] shape) throws IOException {
+        writeNpyMapped(path, FloatBuffer.wrap(data), shape);
+    }
+
+    private static void checkCount(long count, int[] shape) {
+        if (count != elementCount(shape)) {
+            throw new IllegalArgumentException("NPY data has " + count + " floats, shape needs "
+                    + elementCount(shape));
+        }
+    }
+
+    /** Opens for writing and sets the final length (preallocates / truncates) */
+    private static RandomAccessFile open(String path, int[] shape) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(path, "rw");
+        try {
+            raf.setLength(makeHeader(shape).length + elementCount(shape) * 4);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
         }
+        return raf;
     }
 
 }
@@ -0,0 +1,256 @@
+package com.example.decoderapp;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streaming OBJ writer for marching cubes meshes.
+ *
+ * Lines are formatted straight into reusable byte[] chunks by a
+ * hand-rolled fixed-precision float formatter (no String per line, no
+ * Float.toString). Vertex and face ranges are formatted in parallel and
+ * the chunks are written in order, so the output is identical to a
+ * single-threaded run. Chunks are only kept for the duration of one
+ * write() and idle formatting threads exit, so a long-lived writer holds
+ * no memory between meshes.
+ */
+public final class ObjWriter {
+
+    public static final int DEFAULT_DECIMALS = 5;
+
+    private static final int LINES_PER_CHUNK = 16384;
+    /* past 4 threads the ordered writes, not formatting, bound the speed */
+    private static final int MAX_SHARED_THREADS = 4;
+    private static final long IDLE_SECONDS = 30;
+    private static final long[] POW10 = new long[10];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private static ObjWriter shared;
+
+    private final int decimals;
+    private final int threads;
+    private final ExecutorService pool;
+    private final ArrayDeque<byte[]> freeChunks = new ArrayDeque<>();
+
+    /** Process-wide writer used by saveObj (DEFAULT_DECIMALS, up to 4 threads) */
+    public static synchronized ObjWriter shared() {
+        if (shared == null) {
+            shared = new ObjWriter(DEFAULT_DECIMALS,
+                    Math.min(Runtime.getRuntime().availableProcessors(), MAX_SHARED_THREADS));
+        }
+        return shared;
+    }
+
+    /**
+     * @param decimals digits after the decimal point (0..9), trailing zeros are dropped
+     * @param threads  formatting threads; 1 formats on the calling thread.
+     *                 Threads exit after IDLE_SECONDS without work
+     */
+    public ObjWriter(int decimals, int threads) {
+        if (decimals < 0 || decimals >= POW10.length) {
+            throw new IllegalArgumentException("decimals must be 0.." + (POW10.length - 1));
+        }
+        this.decimals = decimals;
+        this.threads = Math.max(1, threads);
+        if (this.threads > 1) {
+            ThreadPoolExecutor p = new ThreadPoolExecutor(this.threads, this.threads,
+                    IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "ObjWriter");
+                        t.setDaemon(true);
+                        return t;
+                    });
+            p.allowCoreThreadTimeOut(true);
+            this.pool = p;
+        } else {
+            this.pool = null;
+        }
+    }
+
+    public void write(String path, MarchingCubes.Result res) throws IOException {
+        write(path, res.vertices, res.faces);
+    }
+
+    public void write(String path, MarchingCubes64.Result res) throws IOException {
+        write(path, res.vertices, res.faces);
+    }
+
+    /**
+     * One writer call at a time per instance (the chunk pool is not shared).
+     * At most 2 × threads + 1 chunks are live, and all are released on return.
+     */
+    public synchronized void write(String path, float[] vertices, int[] faces) throws IOException {
+        int vLines = vertices.length / 3;
+        int fLines = faces.length / 3;
+        int vChunks = (vLines + LINES_PER_CHUNK - 1) / LINES_PER_CHUNK;
+        int fChunks = (fLines + LINES_PER_CHUNK - 1) / LINES_PER_CHUNK;
+        int window = threads * 2;
+
+        try (FileOutputStream out = new FileOutputStream(path)) {
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            for (int c = 0; c < vChunks + fChunks; c++) {
+                final boolean isFace = c >= vChunks;
+                final int from = (isFace ? c - vChunks : c) * LINES_PER_CHUNK;
+                final int to = Math.min(from + LINES_PER_CHUNK, isFace ? fLines : vLines);
+                final byte[] buf = takeChunk();
+
+                if (pool == null) {
+                    writeChunk(out, format(isFace, vertices, faces, from, to, buf));
+                    continue;
+                }
+                if (pending.size() == window) writeChunk(out, await(pending.poll()));
+                pending.add(pool.submit(() -> format(isFace, vertices, faces, from, to, buf)));
+            }
+            while (!pending.isEmpty()) writeChunk(out, await(pending.poll()));
+        } finally {
+            freeChunks.clear();
+        }
+    }
+
+    /* ---------------- chunk formatting ---------------- */
+
+    private static final class Chunk {
+        final byte[] buf;
+        final int len;
+        Chunk(byte[] buf, int len) { this.buf = buf; this.len = len; }
+    }
+
+    private int maxLineBytes() {
+        // "v " + 3 × (sign, 19 integer digits, '.', decimals, ' ') + '\n'
+        return 2 + 3 * (22 + decimals) + 1;
+    }
+
+    private byte[] takeChunk() {
+        byte[] b = freeChunks.poll();
+        return b != null ? b : new byte[LINES_PER_CHUNK * maxLineBytes()];
+    }
+
+    private void writeChunk(OutputStream out, Chunk c) throws IOException {
+        out.write(c.buf, 0, c.len);
+        freeChunks.add(c.buf);
+    }
+
+    private static Chunk await(Future<Chunk> f) throws IOException {
+        try {
+            return f.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("OBJ formatting interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("OBJ formatting failed", e.getCause());
+        }
+    }
+
+    private Chunk format(boolean isFace, float[] v, int[] f, int from, int to, byte[] buf) {
+        int p = 0;
+        if (isFace) {
+            for (int i = from * 3; i < to * 3; i += 3) {
+                buf[p++] = 'f';
+                buf[p++] = ' ';
+                p = putInt(buf, p, f[i] + 1);
+                buf[p++] = ' ';
+                p = putInt(buf, p, f[i + 1] + 1);
+                buf[p++] = ' ';
+                p = putInt(buf, p, f[i + 2] + 1);
+                buf[p++] = '\n';
+            }
+        } else {
+            for (int i = from * 3; i < to * 3; i += 3) {
+                buf[p++] = 'v';
+                buf[p++] = ' ';
+                p = putFloat(buf, p, v[i]);
+                buf[p++] = ' ';
+                p = putFloat(buf, p, v[i + 1]);
+                buf[p++] = ' ';
+                p = putFloat(buf, p, v[i + 2]);
+                buf[p++] = '\n';
+            }
+        }
+        return new Chunk(buf, p);
+    }
+
+    /** Fixed-precision decimal, trailing fractional zeros dropped */
+    private int putFloat(byte[] buf, int p, float value) {
+        if (Float.isNaN(value) || Float.isInfinite(value)) {
+            buf[p++] = '0';
+            return p;
+        }
+        double a = Math.abs((double) value);
+        if (a >= 1e9) {
+            // outside any voxel grid; not worth a fast path
+            byte[] s = Float.toString(value).getBytes();
+            System.arraycopy(s, 0, buf, p, s.length);
+            return p + s.length;
+        }
+        long scaled = (long) (a * POW10[decimals] + 0.5);
+        if (scaled == 0) {
+            buf[p++] = '0';
+            return p;
+        }
+        if (value < 0) buf[p++] = '-';
+
+        if (scaled <= Integer.MAX_VALUE) {
+            // voxel coordinates always land here: int division is much cheaper than long
+            int unit = (int) POW10[decimals];
+            int s = (int) scaled;
+            p = putInt(buf, p, s / unit);
+            return putFraction(buf, p, s % unit);
+        }
+        p = putInt(buf, p, scaled / POW10[decimals]);
+        return putFraction(buf, p, (int) (scaled % POW10[decimals]));
+    }
+
+    /** frac < 10^decimals, written zero-padded with trailing zeros dropped */
+    private int putFraction(byte[] buf, int p, int frac) {
+        if (frac != 0) {
+            int digits = decimals;
+            while (frac % 10 == 0) { frac /= 10; digits--; }
+            buf[p++] = '.';
+            for (int d = digits - 1; d >= 0; d--) {
+                int q = frac / 10;
+                buf[p + d] = (byte) ('0' + (frac - q * 10));
+                frac = q;
+            }
+            p += digits;
+        }
+        return p;
+    }
+
+    private static int putInt(byte[] buf, int p, int n) {
+        if (n == 0) {
+            buf[p++] = '0';
+            return p;
+        }
+        int len = n >= 100000 ? (n >= 10000000 ? (n >= 1000000000 ? 10 : n >= 100000000 ? 9 : 8)
+                : (n >= 1000000 ? 7 : 6))
+                : (n >= 100 ? (n >= 10000 ? 5 : n >= 1000 ? 4 : 3) : (n >= 10 ? 2 : 1));
+        for (int d = len - 1; d >= 0; d--) {
+            int q = n / 10;
+            buf[p + d] = (byte) ('0' + (n - q * 10));
+            n = q;
+        }
+        return p + len;
+    }
+
+    private static int putInt(byte[] buf, int p, long n) {
+        if (n == 0) {
+            buf[p++] = '0';
+            return p;
+        }
+        int len = 0;
+        for (long t = n; t != 0; t /= 10) len++;
+        for (int d = len - 1; d >= 0; d--) {
+            buf[p + d] = (byte) ('0' + n % 10);
+            n /= 10;
+        }
+        return p + len;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.decoderapp;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary little-endian PLY export of a marching cubes mesh.
+ * Vertex data goes out as one bulk float copy; faces as
+ * (uchar 3, int a, int b, int c) records.
+ */
+public class PlyWriter {
+
+    private static byte[] makeHeader(int vertexCount, int faceCount) {
+        String header = "ply\n"
+                + "format binary_little_endian 1.0\n"
+                + "comment DecoderApp marching cubes, voxel coordinates\n"
+                + "element vertex " + vertexCount + "\n"
+                + "property float x\n"
+                + "property float y\n"
+                + "property float z\n"
+                + "element face " + faceCount + "\n"
+                + "property list uchar int vertex_indices\n"
+                + "end_header\n";
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static void writePly(String path, float[] vertices, int[] faces) throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(path);
+             FileChannel ch = fos.getChannel();
+             ChannelWriter w = new ChannelWriter(ch)) {
+            w.put(makeHeader(vertices.length / 3, faces.length / 3));
+            w.putFloats(vertices, 0, vertices.length);
+            for (int i = 0; i + 2 < faces.length; i += 3) {
+                ByteBuffer b = w.reserve(13);
+                b.put((byte) 3).putInt(faces[i]).putInt(faces[i + 1]).putInt(faces[i + 2]);
+            }
+        }
+    }
+
+    public static void writePly(String path, MarchingCubes.Result res) throws IOException {
+        writePly(path, res.vertices, res.faces);
+    }
+
+    public static void writePly(String path, MarchingCubes64.Result res) throws IOException {
+        writePly(path, res.vertices, res.faces);
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.decoderapp;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coarse-to-fine decode for seeking: a 64³ preview mesh (Decoder64 +
+ * MarchingCubes64) first, then the 128³ mesh (Decoder + MarchingCubes)
+ * on a background thread, delivered when ready to replace the preview.
+ *
+ * The two decoders read different latents (outputs of the 64- and
+ * 128-channel encoders) and there is no mapping from one to the other,
+ * so a Frame carries both codes of the same capture frame. A frame
+ * without a 64-channel code goes straight to 128³.
+ *
+ * Each request supersedes the previous one, e.g. on scrub: stages of an
+ * older request that have not started are skipped, and a stage in
+ * progress finishes its current step (an ONNX run or meshing cannot be
+ * interrupted) but is not delivered. Time to first mesh after a seek is
+ * one 64³ decode + mesh, never a queue of stale 128³ work.
+ *
+ * Meshes are reported in the 128³ voxel frame: preview vertices are
+ * scaled by 127/63, so the refined mesh replaces the preview in place.
+ * Both stages go through the decoders' DiskCache, the mesh cache and,
+ * when given, a LatentGate per resolution, so scrubbing back over a frame
+ * is cheap.
+ *
+ * Usage:
+ *   ProgressiveDecoder prog = new ProgressiveDecoder(decoder64, decoder, diskCache);
+ *   prog.request(new ProgressiveDecoder.Frame(latent64, latent128), stage -&gt; show(stage));
+ */
+public final class ProgressiveDecoder implements Closeable {
+
+    private static final String TAG = "ProgressiveDecoder";
+
+    /** 64³ voxel coordinates → 128³ voxel coordinates (grid corner to corner) */
+    static final float PREVIEW_SCALE = 127f / 63f;
+
+    /** Both codes of one frame; preview may be null */
+    public static final class Frame {
+        /** 64-channel latent for Decoder64 */
+        public final Latent preview;
+        /** 128-channel latent for Decoder */
+        public final Latent full;
+
+        public Frame(Latent preview, Latent full) {
+            if (full == null || full.channels != 128) {
+                throw new IllegalArgumentException("need a 128-channel latent, got " + full);
+            }
+            if (preview != null && preview.channels != 64) {
+                throw new IllegalArgumentException("preview needs a 64-channel latent, got " + preview);
+            }
+            this.preview = preview;
+            this.full = full;
+        }
+    }
+
+    /** One delivered mesh of a request */
+    public static final class Stage {
+        /** Id returned by request() */
+        public final long request;
+        /** 64 for the preview, 128 for the refined mesh */
+        public final int resolution;
+        /** Flat xyz in 128³ voxel coordinates, flat triangle indices */
+        public final float[] vertices;
+        public final int[] faces;
+        public final double decodeMs, meshMs;
+        /** From request() to this mesh, queueing included */
+        public final double sinceRequestMs;
+        /** Grid came from the DiskCache / FrameCache or the LatentGate, not ONNX */
+        public final boolean cached;
+
+        Stage(long request, int resolution, float[] vertices, int[] faces,
+              double decodeMs, double meshMs, double sinceRequestMs, boolean cached) {
+            this.request = request;
+            this.resolution = resolution;
+            this.vertices = vertices;
+            this.faces = faces;
+            this.decodeMs = decodeMs;
+            this.meshMs = meshMs;
+            this.sinceRequestMs = sinceRequestMs;
+            this.cached = cached;
+        }
+
+        public boolean isPreview() {
+            return resolution == 64;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d³ after %.1f ms (decode %.1f ms%s, mesh %.1f ms), %d vertices, %d faces",
+                    resolution, sinceRequestMs, decodeMs, cached ? " cached" : "", meshMs,
+                    vertices.length / 3, faces.length / 3);
+        }
+    }
+
+    /** Called on a worker thread; post to the UI thread from there */
+    public interface Listener {
+        /** Preview first, then the refined mesh of the same request */
+        void onStage(Stage stage);
+
+        /** A stage failed; a failed preview still goes on to 128³ */
+        default void onError(long request, int resolution, Exception e) {
+            Log.e(TAG, "Request " + request + ": " + resolution + "³ stage failed", e);
+        }
+    }
+
+    private static final class Request {
+        final long id;
+        final Frame frame;
+        final Listener listener;
+        final long t0 = System.nanoTime();
+
+        Request(long id, Frame frame, Listener listener) {
+            this.id = id;
+            this.frame = frame;
+            this.listener = listener;
+        }
+    }
+
+    private final Decoder64 decoder64;
+    private final Decoder decoder;
+    private final DiskCache cache;
+    private final LatentGate<Decoder64.DecodeResult> gate64;
+    private final LatentGate<Decoder.DecodeResult> gate128;
+    private final ExecutorService previewThread;
+    private final ExecutorService refineThread;
+    private final AtomicLong generation = new AtomicLong();
+
+    private long previews, refined, skipped;
+    private double firstMeshMs, refinedMs;
+
+    /**
+     * Both decoders must have their models loaded; cache (may be null)
+     * is used for the mesh lookups.
+     */
+    public ProgressiveDecoder(Decoder64 decoder64, Decoder decoder, DiskCache cache) {
+        this(decoder64, decoder, cache, null, null);
+    }
+
+    /**
+     * Same, with a LatentGate per resolution (either may be null) applied to
+     * this decoder's stages only; other callers of the decoders stay exact.
+     */
+    public ProgressiveDecoder(Decoder64 decoder64, Decoder decoder, DiskCache cache,
+                              LatentGate<Decoder64.DecodeResult> gate64, LatentGate<Decoder.DecodeResult> gate128) {
+        this.decoder64 = decoder64;
+        this.decoder = decoder;
+        this.cache = cache;
+        this.gate64 = gate64;
+        this.gate128 = gate128;
+        this.previewThread = Executors.newSingleThreadExecutor(r -> new Thread(r, "ProgressivePreview"));
+        this.refineThread = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "ProgressiveRefine");
+            // the preview of the next seek must not wait behind a refinement
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        });
+    }
+
+    /** Starts decoding frame and supersedes every earlier request; returns the request id */
+    public long request(Frame frame, Listener listener) {
+        Request r = new Request(generation.incrementAndGet(), frame, listener);
+        if (frame.preview != null) {
+            previewThread.execute(() -> preview(r));
+        } else {
+            refineThread.execute(() -> refine(r));
+        }
+        return r.id;
+    }
+
+    /** Drops whatever is pending or running, e.g. when the view goes away */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    public boolean isCurrent(long request) {
+        return generation.get() == request;
+    }
+
+    public synchronized String stats() {
+        return String.format("previews %d (avg first mesh %.1f ms), refined %d (avg %.1f ms), stale stages skipped %d",
+                previews, previews > 0 ? firstMeshMs / previews : Double.NaN,
+                refined, refined > 0 ? refinedMs / refined : Double.NaN, skipped);
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        previewThread.shutdownNow();
+        refineThread.shutdownNow();
+    }
+
+    /* ---------------- stages ---------------- */
+
+    private void preview(Request r) {
+        if (stale(r)) return;
+        try {
+            long t0 = System.nanoTime();
+            Decoder64.DecodeResult grid = decoder64.decodeFeatureGrid64(r.frame.preview, gate64);
+            long t1 = System.nanoTime();
+            if (stale(r)) return;
+
+            MarchingCubes64.Result mesh = MarchingCubes64.fromDecoderOutput64(grid.data).generate(cache, grid.cacheKey);
+            long t2 = System.nanoTime();
+            if (stale(r)) return;
+
+            // mesh arrays may be shared with the cache: scale a copy
+            float[] v = new float[mesh.vertices.length];
+            for (int i = 0; i < v.length; i++) v[i] = mesh.vertices[i] * PREVIEW_SCALE;
+            Stage stage = new Stage(r.id, 64, v, mesh.faces, (t1 - t0) / 1e6, (t2 - t1) / 1e6,
+                    (t2 - r.t0) / 1e6, grid.fromCache || grid.reused);
+            synchronized (this) {
+                previews++;
+                firstMeshMs += stage.sinceRequestMs;
+            }
+            r.listener.onStage(stage);
+        } catch (Exception e) {
+            if (!stale(r)) r.listener.onError(r.id, 64, e);
+        }
+        try {
+            refineThread.execute(() -> refine(r));
+        } catch (RejectedExecutionException e) {
+            // closed meanwhile
+        }
+    }
+
+    private void refine(Request r) {
+        if (stale(r)) return;
+        try {
+            long t0 = System.nanoTime();
+            Decoder.DecodeResult grid = decoder.decodeFeatureGrid(r.frame.full, gate128);
+            long t1 = System.nanoTime();
+            if (stale(r)) return;
+
+            MarchingCubes.Result mesh = MarchingCubes.fromDecoderOutput(grid.data).generate(cache, grid.cacheKey);
+            long t2 = System.nanoTime();
+            if (stale(r)) return;
+
+            Stage stage = new Stage(r.id, 128, mesh.vertices, mesh.faces, (t1 - t0) / 1e6, (t2 - t1) / 1e6,
+                    (t2 - r.t0) / 1e6, grid.fromCache || grid.reused);
+            synchronized (this) {
+                refined++;
+                refinedMs += stage.sinceRequestMs;
+            }
+            r.listener.onStage(stage);
+        } catch (Exception e) {
+            if (!stale(r)) r.listener.onError(r.id, 128, e);
+        }
+    }
+
+    /** r was superseded; counted once per stage dropped */
+    private boolean stale(Request r) {
+        if (generation.get() == r.id) return false;
+        synchronized (this) {
+            skipped++;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access into a .vseq file written by {@link SequenceWriter}.
+ *
+ * The file is mapped once; every frame lookup is one index read plus a
+ * buffer slice, so scrubbing and looping never reopen or re-read files.
+ * Returned buffers are views into the mapping and stay valid after the
+ * reader is dropped.
+ *
+ * Usage:
+ *   SequenceReader seq = SequenceReader.open(ctx, uri);
+ *   float[] dhwc = seq.latent(seq.frameAt(seconds, true), scratch);
+ */
+public final class SequenceReader {
+
+    private final ByteBuffer map;
+    private final int frameCount;
+    private final int channels;
+    private final int latentFloats;
+    private final boolean hasMeshes;
+    private final float fps;
+    private final long indexOffset;
+
+    private SequenceReader(ByteBuffer map) throws IOException {
+        this.map = map.order(ByteOrder.LITTLE_ENDIAN);
+        if (map.capacity() < SequenceWriter.HEADER_BYTES || map.getInt(0) != SequenceWriter.MAGIC) {
+            throw new IOException("Not a sequence file (magic mismatch)");
+        }
+        int version = map.getInt(4);
+        if (version != SequenceWriter.VERSION) throw new IOException("Unsupported sequence version " + version);
+        frameCount = map.getInt(8);
+        channels = map.getInt(12);
+        latentFloats = map.getInt(16);
+        hasMeshes = (map.getInt(20) & SequenceWriter.FLAG_MESHES) != 0;
+        fps = map.getFloat(24);
+        indexOffset = map.getLong(32);
+        if (frameCount < 0 || indexOffset + (long) frameCount * SequenceWriter.INDEX_ENTRY_BYTES > map.capacity()) {
+            throw new IOException("Sequence file truncated (index past end of file)");
+        }
+    }
+
+    public static SequenceReader open(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return open(in.getChannel());
+        }
+    }
+
+    public static SequenceReader open(Context ctx, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = ctx.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) throw new FileNotFoundException("Cannot open " + uri);
+        try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            return open(in.getChannel());
+        } finally {
+            pfd.close();
+        }
+    }
+
+    public static SequenceReader open(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Sequence file over 2 GB: " + size);
+        return new SequenceReader(ch.map(FileChannel.MapMode.READ_ONLY, 0, size));
+    }
+
+    public int frameCount() { return frameCount; }
+
+    public int channels() { return channels; }
+
+    /** Floats per latent (4×4×4×channels) */
+    public int latentFloats() { return latentFloats; }
+
+    public float fps() { return fps; }
+
+    public boolean hasMeshes() { return hasMeshes; }
+
+    /**
+     * Frame shown at time t (seconds). With loop the sequence wraps,
+     * otherwise t is clamped to the first / last frame.
+     */
+    public int frameAt(double seconds, boolean loop) {
+        if (frameCount == 0) throw new IllegalStateException("empty sequence");
+        long f = (long) Math.floor(seconds * fps);
+        if (loop) return (int) (((f % frameCount) + frameCount) % frameCount);
+        return (int) Math.max(0, Math.min(frameCount - 1, f));
+    }
+
+    /** Zero-copy DHWC latent of frame i */
+    public FloatBuffer latent(int i) {
+        return slice(map.getLong(entry(i)), latentFloats * 4L).asFloatBuffer();
+    }
+
+    /** Copies frame i into dst (allocated if null or too small), like FileUtil.getLatentCodeSubset */
+    public float[] latent(int i, float[] dst) {
+        if (dst == null || dst.length < latentFloats) dst = new float[latentFloats];
+        latent(i).get(dst, 0, latentFloats);
+        return dst;
+    }
+
+    public boolean hasMesh(int i) {
+        return map.getLong(entry(i) + 8) != 0;
+    }
+
+    /** Keyframe mesh vertices (xyz float32) of frame i, or null */
+    public FloatBuffer meshVertices(int i) {
+        int e = entry(i);
+        long off = map.getLong(e + 8);
+        return off == 0 ? null : slice(off, map.getInt(e + 16) * 12L).asFloatBuffer();
+    }
+
+    /** Keyframe mesh faces (abc int32) of frame i, or null */
+    public IntBuffer meshFaces(int i) {
+        int e = entry(i);
+        long off = map.getLong(e + 8);
+        if (off == 0) return null;
+        long vertexBytes = map.getInt(e + 16) * 12L;
+        return slice(off + vertexBytes, map.getInt(e + 20) * 12L).asIntBuffer();
+    }
+
+    /** Keyframe mesh of frame i copied into a Result, or null */
+    public MarchingCubes.Result mesh(int i) {
+        FloatBuffer v = meshVertices(i);
+        if (v == null) return null;
+        IntBuffer f = meshFaces(i);
+        float[] vertices = new float[v.remaining()];
+        int[] faces = new int[f.remaining()];
+        v.get(vertices);
+        f.get(faces);
+        return new MarchingCubes.Result(vertices, faces);
+    }
+
+    /** Byte offset of index entry i */
+    private int entry(int i) {
+        if (i < 0 || i >= frameCount) {
+            throw new IndexOutOfBoundsException("frame " + i + " of " + frameCount);
+        }
+        return (int) (indexOffset + (long) i * SequenceWriter.INDEX_ENTRY_BYTES);
+    }
+
+    private ByteBuffer slice(long offset, long bytes) {
+        ByteBuffer b = map.duplicate();
+        b.limit((int) (offset + bytes)).position((int) offset);
+        return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes a volumetric sequence as one indexed file (.vseq) instead of a
+ * pile of per-frame .npy files. Read it back with {@link SequenceReader}.
+ *
+ * Layout (little-endian, sections 64-byte aligned):
+ *   header   64 B   magic "VSEQ", version, frameCount, channels,
+ *                   latentFloats, flags, fps, indexOffset
+ *   frames          per frame: latent (4×4×4×C float32, DHWC like the
+ *                   NPY latents), then optionally a keyframe mesh
+ *                   (vertices float32 xyz, faces int32 abc)
+ *   index   32 B × frameCount
+ *                   latentOffset, meshOffset (0 = none), vertexCount, faceCount
+ *
+ * The index is written last and the header patched on close, so frames
+ * stream to disk as they are produced.
+ */
+public final class SequenceWriter implements Closeable {
+
+    static final int MAGIC = 0x51455356;   // "VSEQ"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int INDEX_ENTRY_BYTES = 32;
+    static final int ALIGN = 64;
+    static final int FLAG_MESHES = 1;
+
+    private final RandomAccessFile raf;
+    private final ChannelWriter w;
+    private final int channels;
+    private final int latentFloats;
+    private final float fps;
+
+    private long[] latentOffsets = new long[64];
+    private long[] meshOffsets = new long[64];
+    private int[] vertexCounts = new int[64];
+    private int[] faceCounts = new int[64];
+    private int frames;
+    private boolean anyMesh;
+
+    /** @param channels latent channels (64 or 128); each frame is 4×4×4×channels floats */
+    public SequenceWriter(String path, int channels, float fps) throws IOException {
+        if (channels <= 0) throw new IllegalArgumentException("channels must be > 0: " + channels);
+        this.channels = channels;
+        this.latentFloats = 4 * 4 * 4 * channels;
+        this.fps = fps;
+        this.raf = new RandomAccessFile(path, "rw");
+        raf.setLength(0);
+        this.w = new ChannelWriter(raf.getChannel());
+        w.putZeros(HEADER_BYTES);   // patched in close()
+    }
+
+    public int addFrame(float[] latentDhwc) throws IOException {
+        return addFrame(FloatBuffer.wrap(latentDhwc), null, null);
+    }
+
+    public int addFrame(FloatBuffer latentDhwc) throws IOException {
+        return addFrame(latentDhwc, null, null);
+    }
+
+    public int addFrame(float[] latentDhwc, MarchingCubes.Result keyframe) throws IOException {
+        return addFrame(FloatBuffer.wrap(latentDhwc), keyframe.vertices, keyframe.faces);
+    }
+
+    public int addFrame(float[] latentDhwc, MarchingCubes64.Result keyframe) throws IOException {
+        return addFrame(FloatBuffer.wrap(latentDhwc), keyframe.vertices, keyframe.faces);
+    }
+
+    /**
+     * Appends one frame; meshVertices / meshFaces may be null for a frame
+     * without a precomputed mesh. Returns the frame index.
+     */
+    public int addFrame(FloatBuffer latentDhwc, float[] meshVertices, int[] meshFaces) throws IOException {
+        if (latentDhwc.remaining() != latentFloats) {
+            throw new IllegalArgumentException("latent has " + latentDhwc.remaining()
+                    + " floats, sequence needs " + latentFloats + " (4x4x4x" + channels + ")");
+        }
+        if (frames == latentOffsets.length) grow();
+
+        latentOffsets[frames] = w.position();
+        w.putFloats(latentDhwc);
+        align();
+
+        if (meshVertices != null && meshFaces != null) {
+            int faceInts = meshFaces.length - meshFaces.length % 3;
+            meshOffsets[frames] = w.position();
+            vertexCounts[frames] = meshVertices.length / 3;
+            faceCounts[frames] = faceInts / 3;
+            w.putFloats(meshVertices, 0, vertexCounts[frames] * 3);
+            w.putInts(meshFaces, 0, faceInts);
+            align();
+            anyMesh = true;
+        }
+        return frames++;
+    }
+
+    public int frameCount() {
+        return frames;
+    }
+
+    /** Writes the index and the header */
+    @Override
+    public void close() throws IOException {
+        try {
+            long indexOffset = w.position();
+            for (int i = 0; i < frames; i++) {
+                ByteBuffer b = w.reserve(INDEX_ENTRY_BYTES);
+                b.putLong(latentOffsets[i]).putLong(meshOffsets[i])
+                        .putInt(vertexCounts[i]).putInt(faceCounts[i]).putLong(0);
+            }
+            w.flush();
+
+            ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            h.putInt(MAGIC).putInt(VERSION).putInt(frames).putInt(channels).putInt(latentFloats)
+                    .putInt(anyMesh ? FLAG_MESHES : 0).putFloat(fps).putInt(0).putLong(indexOffset);
+            h.clear();
+            FileChannel ch = raf.getChannel();
+            while (h.hasRemaining()) ch.write(h, h.position());
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Packs loose per-frame latent .npy files (in playback order) into one
+     * sequence file.
+     */
+    public static void pack(Context ctx, List<Uri> npyFrames, String path, int channels, float fps)
+            throws IOException {
+        LatentReader reader = new LatentReader();
+        float[] frame = null;
+        try (SequenceWriter out = new SequenceWriter(path, channels, fps)) {
+            for (Uri uri : npyFrames) {
+                frame = reader.readDhwc(ctx, uri, channels, frame);
+                out.addFrame(frame);
+            }
+        }
+    }
+
+    private void align() throws IOException {
+        int pad = (int) (-w.position() & (ALIGN - 1));
+        w.putZeros(pad);
+    }
+
+    private void grow() {
+        int n = latentOffsets.length * 2;
+        latentOffsets = Arrays.copyOf(latentOffsets, n);
+        meshOffsets = Arrays.copyOf(meshOffsets, n);
+        vertexCounts = Arrays.copyOf(vertexCounts, n);
+        faceCounts = Arrays.copyOf(faceCounts, n);
+    }
+}
@@ -0,0 +1,385 @@
+package com.example.decoderapp;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Narrow-band sparse copy of a decoded grid (SDF + offsets, DHWC).
+ *
+ * The grid is cut into brickSize³ voxel bricks and only bricks near the
+ * isosurface are kept: every brick with a voxel within {@code band} of
+ * the iso level, plus every brick that a crossing cell or its normal
+ * stencil reads (voxels x-1 .. x+2 around a crossing cell). Marching
+ * cubes on the sparse grid therefore yields exactly the dense mesh,
+ * positions and normals included; only the triangle order differs
+ * (brick by brick instead of layer by layer).
+ *
+ * A dropped brick lies entirely on one side of the surface; it keeps a
+ * single inside/outside bit and reads back as iso ∓ background, where
+ * background is the distance of the nearest dropped voxel.
+ *
+ * File layout (.sgrid, little-endian, data 64-byte aligned):
+ *   header   64 B   magic "SGRD", version, D, H, W, channels, brickSize,
+ *                   brickCount, iso, band, background, dataOffset
+ *   ids      int32 × brickCount   linear brick ids (z, y, x), ascending
+ *   inside   1 bit per brick of the whole grid (dropped bricks only)
+ *   data     brickCount × brickSize³ × channels float32,
+ *            voxels z, y, x inside a brick, channels interleaved
+ *
+ * Usage:
+ *   SparseGrid g = SparseGrid.fromDecoderOutput(result.data, 128, 0f);
+ *   g.write(file);
+ *   MarchingCubes.Result mesh = MarchingCubes.generateSparse(SparseGrid.open(file));
+ */
+public final class SparseGrid {
+
+    static final int MAGIC = 0x44524753;   // "SGRD"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+    static final int ALIGN = 64;
+
+    public static final int DEFAULT_BRICK = 8;
+
+    private final int D, H, W, C;
+    private final int brickSize;
+    private final int nbx, nby, nbz;
+    private final float iso, band, background;
+    private final int[] ids;        // active brick ids, ascending
+    private final int[] slotOf;     // brick id → index into ids, or -1
+    private final byte[] inside;    // 1 bit per brick
+    private final FloatBuffer data; // ids.length × brickSize³ × C
+
+    private SparseGrid(int D, int H, int W, int C, int brickSize, float iso, float band, float background,
+                       int[] ids, byte[] inside, FloatBuffer data) {
+        this.D = D; this.H = H; this.W = W; this.C = C;
+        this.brickSize = brickSize;
+        this.nbx = (W + brickSize - 1) / brickSize;
+        this.nby = (H + brickSize - 1) / brickSize;
+        this.nbz = (D + brickSize - 1) / brickSize;
+        this.iso = iso;
+        this.band = band;
+        this.background = background;
+        this.ids = ids;
+        this.inside = inside;
+        this.data = data;
+        this.slotOf = new int[nbx * nby * nbz];
+        Arrays.fill(slotOf, -1);
+        for (int s = 0; s < ids.length; s++) slotOf[ids[s]] = s;
+    }
+
+    /* ---------------- conversion ---------------- */
+
+    /** Decoder output (res³ × 4, DHWC) at iso 0 with the default brick size */
+    public static SparseGrid fromDecoderOutput(float[] raw, int res, float band) {
+        return fromDense(FloatBuffer.wrap(raw), res, res, res, 4, 0f, band, DEFAULT_BRICK);
+    }
+
+    public static SparseGrid fromDecoderOutput(FloatBuffer raw, int res, float band) {
+        return fromDense(raw, res, res, res, 4, 0f, band, DEFAULT_BRICK);
+    }
+
+    /**
+     * Sparse copy of a dense D×H×W×C grid (channel 0 = SDF).
+     *
+     * @param band keep bricks with a voxel within band of iso; 0 keeps
+     *             only what extraction at iso needs
+     */
+    public static SparseGrid fromDense(FloatBuffer raw, int D, int H, int W, int C,
+                                       float iso, float band, int brickSize) {
+        if (brickSize <= 0) throw new IllegalArgumentException("brick size must be > 0: " + brickSize);
+        if (D < 2 || H < 2 || W < 2 || C <= 0) {
+            throw new IllegalArgumentException("bad grid " + D + "x" + H + "x" + W + "x" + C);
+        }
+        final int N = D * H * W;
+        if (raw.remaining() < (long) N * C) {
+            throw new IllegalArgumentException("grid has " + raw.remaining() + " floats, expected " + (long) N * C);
+        }
+        final int B = brickSize;
+        final int nbx = (W + B - 1) / B, nby = (H + B - 1) / B, nbz = (D + B - 1) / B;
+        final int base = raw.position();
+
+        // pass 1: sign per voxel, band test and nearest distance per brick
+        byte[] below = new byte[N];
+        boolean[] active = new boolean[nbx * nby * nbz];
+        byte[] inside = new byte[(active.length + 7) / 8];
+        float[] nearest = new float[active.length];
+        Arrays.fill(nearest, Float.POSITIVE_INFINITY);
+        for (int z = 0, i = 0; z < D; z++) {
+            for (int y = 0; y < H; y++) {
+                int rowBrick = ((z / B) * nby + y / B) * nbx;
+                for (int x = 0; x < W; x++, i++) {
+                    float d = raw.get(base + i * C) - iso;
+                    int b = rowBrick + x / B;
+                    if (d < 0) {
+                        below[i] = 1;
+                        inside[b >> 3] |= (byte) (1 << (b & 7));
+                    }
+                    float a = Math.abs(d);
+                    if (a <= band) active[b] = true;
+                    if (a < nearest[b]) nearest[b] = a;
+                }
+            }
+        }
+
+        // crossing cells: keep every brick the cell and its normal stencil read
+        final int HW = H * W;
+        for (int z = 0; z < D - 1; z++) {
+            for (int y = 0; y < H - 1; y++) {
+                for (int x = 0; x < W - 1; x++) {
+                    int i = z * HW + y * W + x;
+                    int s = below[i] + below[i + 1] + below[i + W] + below[i + W + 1]
+                            + below[i + HW] + below[i + HW + 1] + below[i + HW + W] + below[i + HW + W + 1];
+                    if (s == 0 || s == 8) continue;
+                    int bz1 = Math.min(z + 2, D - 1) / B, by1 = Math.min(y + 2, H - 1) / B, bx1 = Math.min(x + 2, W - 1) / B;
+                    for (int bz = Math.max(z - 1, 0) / B; bz <= bz1; bz++)
+                        for (int by = Math.max(y - 1, 0) / B; by <= by1; by++)
+                            for (int bx = Math.max(x - 1, 0) / B; bx <= bx1; bx++)
+                                active[(bz * nby + by) * nbx + bx] = true;
+                }
+            }
+        }
+
+        int count = 0;
+        float background = Float.POSITIVE_INFINITY;
+        for (int b = 0; b < active.length; b++) {
+            if (active[b]) count++;
+            else background = Math.min(background, nearest[b]);
+        }
+        if (Float.isInfinite(background)) background = Math.max(band, 1f);   // nothing dropped
+
+        // pass 2: gather the kept bricks, one voxel row (C floats per voxel) at a time
+        int[] ids = new int[count];
+        final int brickFloats = B * B * B * C;
+        float[] data = new float[count * brickFloats];
+        FloatBuffer in = raw.duplicate();
+        for (int b = 0, s = 0; b < active.length; b++) {
+            if (!active[b]) continue;
+            ids[s] = b;
+            int bx = b % nbx, by = (b / nbx) % nby, bz = b / (nbx * nby);
+            int n = Math.min(B, W - bx * B);
+            for (int lz = 0; lz < B && bz * B + lz < D; lz++) {
+                for (int ly = 0; ly < B && by * B + ly < H; ly++) {
+                    int src = ((bz * B + lz) * HW + (by * B + ly) * W + bx * B) * C;
+                    in.position(base + src);
+                    in.get(data, s * brickFloats + (lz * B + ly) * B * C, n * C);
+                }
+            }
+            s++;
+        }
+
+        return new SparseGrid(D, H, W, C, B, iso, band, background, ids, inside, FloatBuffer.wrap(data));
+    }
+
+    /** Dense D×H×W×C copy; dropped bricks read back as iso ∓ background (offsets 0) */
+    public float[] toDense() {
+        float[] out = new float[D * H * W * C];
+        for (int z = 0, i = 0; z < D; z++)
+            for (int y = 0; y < H; y++)
+                for (int x = 0; x < W; x++, i += C) {
+                    int b = brickOf(x, y, z), s = slotOf[b];
+                    if (s < 0) {
+                        out[i] = fill(b);
+                    } else {
+                        int at = voxelAt(s, x, y, z);
+                        for (int c = 0; c < C; c++) out[i + c] = data.get(at + c);
+                    }
+                }
+        return out;
+    }
+
+    /* ---------------- extraction ---------------- */
+
+    /**
+     * Marches every kept brick through a small dense window (brick plus a
+     * one-voxel apron below and two above, for the cells' far corners and
+     * the normal stencil).
+     *
+     * @param useOffsets displace vertices by channels 1..3 (64³ path)
+     */
+    void march(MarchingCubesCore.MeshSink out, boolean useOffsets) {
+        if (useOffsets && C < 4) throw new IllegalStateException("grid has no offsets (channels " + C + ")");
+        final int B = brickSize, n = B + 3;
+        float[] sdf = new float[n * n * n];
+        float[][] offsets = useOffsets ? new float[n * n * n][3] : null;
+
+        for (int id : ids) {
+            int bx = id % nbx, by = (id / nbx) % nby, bz = id / (nbx * nby);
+            // window voxels [x0, x1], clipped to the grid
+            int x0 = Math.max(bx * B - 1, 0), x1 = Math.min(bx * B + B + 1, W - 1);
+            int y0 = Math.max(by * B - 1, 0), y1 = Math.min(by * B + B + 1, H - 1);
+            int z0 = Math.max(bz * B - 1, 0), z1 = Math.min(bz * B + B + 1, D - 1);
+            int ww = x1 - x0 + 1, wh = y1 - y0 + 1, wd = z1 - z0 + 1;
+
+            for (int z = z0, i = 0; z <= z1; z++)
+                for (int y = y0; y <= y1; y++)
+                    for (int x = x0; x <= x1; x++, i++) {
+                        int b = brickOf(x, y, z), s = slotOf[b];
+                        if (s < 0) {
+                            sdf[i] = fill(b);
+                            if (offsets != null) Arrays.fill(offsets[i], 0f);
+                        } else {
+                            int at = voxelAt(s, x, y, z);
+                            sdf[i] = data.get(at);
+                            if (offsets != null) {
+                                float[] o = offsets[i];
+                                o[0] = data.get(at + 1);
+                                o[1] = data.get(at + 2);
+                                o[2] = data.get(at + 3);
+                            }
+                        }
+                    }
+
+            MarchingCubesCore core = new MarchingCubesCore(sdf, offsets, wd, wh, ww, iso, x0, y0, z0, H, W);
+            // this brick's cells, in window coordinates
+            core.march(new CellBox(
+                    bx * B - x0, by * B - y0, bz * B - z0,
+                    Math.min(bx * B + B, W - 1) - x0,
+                    Math.min(by * B + B, H - 1) - y0,
+                    Math.min(bz * B + B, D - 1) - z0), out);
+        }
+    }
+
+    /* ---------------- file I/O ---------------- */
+
+    public void write(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            FileChannel ch = raf.getChannel();
+            try (ChannelWriter w = new ChannelWriter(ch)) {
+                long dataOffset = align(HEADER_BYTES + ids.length * 4L + inside.length);
+                w.reserve(HEADER_BYTES)
+                        .putInt(MAGIC).putInt(VERSION)
+                        .putInt(D).putInt(H).putInt(W).putInt(C)
+                        .putInt(brickSize).putInt(ids.length)
+                        .putFloat(iso).putFloat(band).putFloat(background).putInt(0)
+                        .putLong(dataOffset).putLong(0);
+                w.putInts(ids, 0, ids.length);
+                w.put(inside);
+                w.putZeros((int) (dataOffset - w.position()));
+                w.putFloats(data);
+            }
+        }
+    }
+
+    /** Maps a .sgrid file; brick data stays in the mapping */
+    public static SparseGrid open(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return open(in.getChannel());
+        }
+    }
+
+    public static SparseGrid open(Context ctx, Uri uri) throws IOException {
+        ParcelFileDescriptor pfd = ctx.getContentResolver().openFileDescriptor(uri, "r");
+        if (pfd == null) throw new FileNotFoundException("Cannot open " + uri);
+        try (FileInputStream in = new FileInputStream(pfd.getFileDescriptor())) {
+            return open(in.getChannel());
+        } finally {
+            pfd.close();
+        }
+    }
+
+    public static SparseGrid open(FileChannel ch) throws IOException {
+        long size = ch.size();
+        if (size > Integer.MAX_VALUE) throw new IOException("Sparse grid over 2 GB: " + size);
+        ByteBuffer map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+        if (size < HEADER_BYTES || map.getInt(0) != MAGIC) {
+            throw new IOException("Not a sparse grid file (magic mismatch)");
+        }
+        int version = map.getInt(4);
+        if (version != VERSION) throw new IOException("Unsupported sparse grid version " + version);
+        int D = map.getInt(8), H = map.getInt(12), W = map.getInt(16), C = map.getInt(20);
+        int B = map.getInt(24), count = map.getInt(28);
+        float iso = map.getFloat(32), band = map.getFloat(36), background = map.getFloat(40);
+        long dataOffset = map.getLong(48);
+        if (D < 2 || H < 2 || W < 2 || C <= 0 || B <= 0 || count < 0) {
+            throw new IOException("Bad sparse grid header");
+        }
+        long bricks = (long) ((W + B - 1) / B) * ((H + B - 1) / B) * ((D + B - 1) / B);
+        long brickFloats = (long) B * B * B * C;
+        if (count > bricks || dataOffset < HEADER_BYTES + count * 4L + (bricks + 7) / 8
+                || dataOffset + count * brickFloats * 4 > size) {
+            throw new IOException("Sparse grid truncated (data past end of file)");
+        }
+
+        int[] ids = new int[count];
+        map.position(HEADER_BYTES);
+        IntBuffer ib = map.asIntBuffer();
+        ib.get(ids);
+        for (int s = 0; s < count; s++) {
+            if (ids[s] < 0 || ids[s] >= bricks || (s > 0 && ids[s] <= ids[s - 1])) {
+                throw new IOException("Bad brick id " + ids[s]);
+            }
+        }
+        byte[] inside = new byte[(int) ((bricks + 7) / 8)];
+        map.position(HEADER_BYTES + count * 4);
+        map.get(inside);
+
+        ByteBuffer payload = map.duplicate();
+        payload.limit((int) (dataOffset + count * brickFloats * 4)).position((int) dataOffset);
+        FloatBuffer data = payload.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        return new SparseGrid(D, H, W, C, B, iso, band, background, ids, inside, data);
+    }
+
+    /* ---------------- info ---------------- */
+
+    public int depth() { return D; }
+
+    public int height() { return H; }
+
+    public int width() { return W; }
+
+    public int channels() { return C; }
+
+    public float iso() { return iso; }
+
+    public int brickSize() { return brickSize; }
+
+    public int activeBricks() { return ids.length; }
+
+    public int totalBricks() { return slotOf.length; }
+
+    /** Bytes of brick data plus index, as held in memory or on disk */
+    public long sizeBytes() {
+        return (long) ids.length * brickSize * brickSize * brickSize * C * 4 + ids.length * 4L + inside.length;
+    }
+
+    public long denseBytes() {
+        return (long) D * H * W * C * 4;
+    }
+
+    public String stats() {
+        return String.format("SparseGrid %dx%dx%d, %d / %d bricks of %d³, %.2f MB (dense %.2f MB, %.1fx smaller)",
+                W, H, D, ids.length, slotOf.length, brickSize,
+                sizeBytes() / 1048576.0, denseBytes() / 1048576.0, (double) denseBytes() / Math.max(sizeBytes(), 1));
+    }
+
+    /* ---------------- internals ---------------- */
+
+    private int brickOf(int x, int y, int z) {
+        return ((z / brickSize) * nby + y / brickSize) * nbx + x / brickSize;
+    }
+
+    /** Float index of voxel (x,y,z), channel 0, inside kept brick slot s */
+    private int voxelAt(int s, int x, int y, int z) {
+        int B = brickSize;
+        return ((s * B + z % B) * B * B + (y % B) * B + x % B) * C;
+    }
+
+    private float fill(int brick) {
+        boolean in = (inside[brick >> 3] & (1 << (brick & 7))) != 0;
+        return in ? iso - background : iso + background;
+    }
+
+    private static long align(long offset) {
+        return (offset + ALIGN - 1) / ALIGN * ALIGN;
+    }
+}
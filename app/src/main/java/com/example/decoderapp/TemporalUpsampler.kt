@@ -0,0 +1,221 @@
+package com.example.decoderapp
+
+import android.util.Log
+import kotlin.math.abs
+import kotlin.math.floor
+
+/**
+ * Arbitrary-rate temporal upsampling of a keyframe latent sequence.
+ *
+ * One interpolator run on (A, B) yields the latents at 1/4, 1/2 and 3/4
+ * of the way from A to B. Running it again on a sub-interval refines
+ * recursively, so every time i + n/4^L (L ≤ maxDepth) is reachable:
+ * 2× and 4× are model frames after one run per interval, 8× and 16×
+ * after two levels. Any other time (3×, 72-from-30 Hz) is shown at
+ * exactly that time: the two model frames around it at blendLevel
+ * (a quarter interval apart by default) are blended at the exact
+ * fraction with LatentBlend, so frame spacing stays even. Snapping to a
+ * nearby reachable time instead is opt-in: with tolerance > 0, a time
+ * within tolerance keyframe intervals of a reachable one shows that
+ * frame (Frame.time tells which).
+ *
+ * Runs are scheduled level by level: every interval needed at a level
+ * goes to the interpolator as one batch (Interpolator.interpolatePairs
+ * pipelines it). All three outputs of every run are cached, so
+ * overlapping requests (a second rate, the next window of a long
+ * sequence) reuse them instead of running the model again. The cache is
+ * LRU by bytes, like FrameCache: after each request the least recently
+ * used frames are evicted down to maxCacheBytes, which drops the frames
+ * behind a window sliding along a long sequence. Frames a request
+ * depends on are never evicted while it is being scheduled.
+ *
+ * Generated frames are fed back to the model as inputs, so interpolate
+ * must return frames in the layout it takes: keyframes are NCDHW and
+ * Interpolator.interpolatePairsNcdhw is the matching function.
+ *
+ * Usage:
+ *   val up = TemporalUpsampler(keyframesNcdhw, interpolator::interpolatePairsNcdhw)
+ *   val frames = up.resample(TemporalUpsampler.ratio(30.0, 90.0))
+ */
+class TemporalUpsampler(
+    private val keyframes: List<FloatArray>,
+    private val interpolate: (List<Pair<FloatArray, FloatArray>>) -> List<List<FloatArray>>,
+    private val tolerance: Double = DEFAULT_TOLERANCE,
+    private val maxDepth: Int = DEFAULT_MAX_DEPTH,
+    private val maxCacheBytes: Long = DEFAULT_CACHE_BYTES,
+    private val blendLevel: Int = minOf(DEFAULT_BLEND_LEVEL, maxDepth),
+    private val blendMode: LatentBlend.Mode = LatentBlend.Mode.SLERP
+) {
+
+    /**
+     * Output frame: the time it was requested for, the time it shows (the
+     * same unless snapped within tolerance) and whether it was blended
+     * between two model frames rather than produced by the model
+     */
+    class Frame(val requested: Double, val time: Double, val latent: FloatArray, val blended: Boolean = false)
+
+    /* a requested time: the frame at key, or frac of the way from key to hi */
+    private class Pick(val key: Long, val hi: Long = key, val frac: Double = 0.0)
+
+    /* time i + p/SPAN as i*SPAN + p → latent, in access order; keyframes are not stored */
+    private val cache = LinkedHashMap<Long, FloatArray>(64, 0.75f, true)
+    private var cacheBytes = 0L
+
+    /** Interpolator runs (pairs) issued so far */
+    var modelRuns = 0
+        private set
+
+    init {
+        require(keyframes.isNotEmpty()) { "need at least one keyframe" }
+        require(maxDepth in 0..MAX_LEVEL) { "maxDepth must be in 0..$MAX_LEVEL: $maxDepth" }
+        require(maxCacheBytes >= 0) { "maxCacheBytes must be >= 0: $maxCacheBytes" }
+        require(tolerance >= 0) { "tolerance must be >= 0: $tolerance" }
+        require(blendLevel in 0..maxDepth) { "blendLevel must be in 0..maxDepth: $blendLevel" }
+    }
+
+    /** factor× frames per keyframe interval, keyframes included */
+    fun upsample(factor: Int): List<Frame> {
+        require(factor >= 1) { "factor must be >= 1: $factor" }
+        return resample(factor.toDouble())
+    }
+
+    /** Frames at k / ratio keyframe intervals, from the first keyframe to the last */
+    fun resample(ratio: Double): List<Frame> {
+        require(ratio > 0) { "ratio must be > 0: $ratio" }
+        val count = floor((keyframes.size - 1) * ratio + 1e-9).toInt() + 1
+        return at(List(count) { it / ratio })
+    }
+
+    /** Frames at arbitrary times, in keyframe units (0 = first keyframe) */
+    fun at(times: List<Double>): List<Frame> {
+        val picks = times.map { pick(it) }
+        schedule(picks.flatMap { if (it.frac == 0.0) listOf(it.key) else listOf(it.key, it.hi) })
+        val frames = times.indices.map {
+            val p = picks[it]
+            if (p.frac == 0.0) Frame(times[it], timeOf(p.key), latent(p.key))
+            else Frame(times[it], times[it], blend(p), blended = true)
+        }
+        trim()
+        return frames
+    }
+
+    fun clearCache() {
+        cache.clear()
+        cacheBytes = 0
+    }
+
+    val cachedFrames: Int get() = cache.size
+
+    val cachedBytes: Long get() = cacheBytes
+
+    /* ---------------- scheduling ---------------- */
+
+    /** Coarsest reachable time within tolerance of t, else the blendLevel frames around t */
+    private fun pick(t: Double): Pick {
+        val last = keyframes.size - 1
+        require(t >= -EPSILON && t <= last + EPSILON) { "time $t outside keyframes 0..$last" }
+        val seg = floor(t).toInt().coerceIn(0, maxOf(last - 1, 0))
+        val frac = (t - seg).coerceIn(0.0, 1.0)
+        for (level in 0..maxDepth) {
+            val steps = 1L shl (2 * level)
+            val n = Math.round(frac * steps)
+            if (abs(n.toDouble() / steps - frac) <= tolerance + EPSILON) {
+                return Pick(seg * SPAN + n * (SPAN / steps))
+            }
+        }
+        val steps = 1L shl (2 * blendLevel)
+        val n = floor(frac * steps).toLong().coerceAtMost(steps - 1)
+        val lo = seg * SPAN + n * (SPAN / steps)
+        return Pick(lo, lo + SPAN / steps, frac * steps - n)
+    }
+
+    /* off-grid frames are not cached: a blend costs less than the lookup it would save */
+    private fun blend(p: Pick): FloatArray {
+        val a = latent(p.key)
+        return LatentBlend.blend(a, latent(p.hi), a.size / Latent.SPATIAL, p.frac.toFloat(),
+            blendMode, Latent.Layout.NCDHW, null)
+    }
+
+    /** Runs the model for every missing key and the interval ends they depend on, coarse to fine */
+    private fun schedule(keys: List<Long>) {
+        val byLevel = HashMap<Int, MutableSet<Long>>()   // level → interval start
+        val pending = ArrayDeque(keys)
+        val seen = HashSet<Long>()
+        while (pending.isNotEmpty()) {
+            val key = pending.removeFirst()
+            if (key % SPAN == 0L || key in cache || !seen.add(key)) continue
+            val level = levelOf(key)
+            val width = widthOf(level)
+            val lo = key - key % width
+            byLevel.getOrPut(level) { HashSet() }.add(lo)
+            pending.add(lo)
+            pending.add(lo + width)
+        }
+
+        for (level in 1..MAX_LEVEL) {
+            val starts = byLevel[level]?.sorted() ?: continue
+            val width = widthOf(level)
+            val frames = interpolate(starts.map { latent(it) to latent(it + width) })
+            modelRuns += starts.size
+            for ((i, lo) in starts.withIndex()) {
+                val out = frames[i]
+                check(out.size >= 3) { "interpolator returned ${out.size} frames, need 3" }
+                for (q in 1..3) put(lo + q * (width / 4), out[q - 1])
+            }
+            Log.d("TemporalUpsampler", "level $level: ${starts.size} run(s), ${cache.size} cached")
+        }
+    }
+
+    private fun put(key: Long, latent: FloatArray) {
+        cache.put(key, latent)?.let { cacheBytes -= it.size * 4L }
+        cacheBytes += latent.size * 4L
+    }
+
+    /** Evicts least recently used frames until at most maxCacheBytes remain */
+    private fun trim() {
+        val it = cache.values.iterator()
+        while (cacheBytes > maxCacheBytes && it.hasNext()) {
+            cacheBytes -= it.next().size * 4L
+            it.remove()
+        }
+    }
+
+    /** Smallest L with key on the 4^-L grid */
+    internal fun levelOf(key: Long): Int {
+        var level = MAX_LEVEL
+        var step = 1L
+        while (level > 0 && (key % SPAN) % (step * 4) == 0L) {
+            step *= 4
+            level--
+        }
+        return level
+    }
+
+    /** Width of the interval whose run yields the frames of a level (≥ 1), in key units */
+    internal fun widthOf(level: Int): Long = SPAN shr (2 * (level - 1))
+
+    private fun latent(key: Long): FloatArray =
+        if (key % SPAN == 0L) keyframes[(key / SPAN).toInt()]
+        else cache[key] ?: throw IllegalStateException("frame at ${timeOf(key)} not computed")
+
+    private fun timeOf(key: Long): Double = key.toDouble() / SPAN
+
+    companion object {
+        /** Deepest refinement supported (4^8 steps per interval) */
+        const val MAX_LEVEL = 8
+        const val DEFAULT_MAX_DEPTH = 3
+        /** Only exactly reachable times show a model frame; others are blended (no snapping) */
+        const val DEFAULT_TOLERANCE = 0.0
+        /** Off-grid times blend between quarter-interval model frames: one run per interval */
+        const val DEFAULT_BLEND_LEVEL = 1
+        /** 16 MB: 512 cached frames of 128 channels, 1024 of 64 */
+        const val DEFAULT_CACHE_BYTES = 16L shl 20
+
+        /** Keys per keyframe interval: time i + p/SPAN is key i*SPAN + p */
+        internal const val SPAN = 1L shl (2 * MAX_LEVEL)
+        private const val EPSILON = 1e-9
+
+        /** Upsampling ratio from a capture rate to a display rate, e.g. 30 → 90 Hz = 3.0 */
+        fun ratio(captureFps: Double, displayFps: Double): Double = displayFps / captureFps
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.decoderapp
+
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Per-frame budget decision and the model-failure fallback. The fake
+ * model sleeps a set time per pair and fills its frames with MODEL, so
+ * a frame's values tell which path produced it.
+ */
+class InterpolationSchedulerTest {
+
+    private val channels = 8
+    private val a = FloatArray(channels * Latent.SPATIAL) { it % 5 - 2f }
+    private val b = FloatArray(channels * Latent.SPATIAL) { 2f - it % 3 }
+
+    /* model stand-in: msPerPair of work per pair, records each batch size */
+    private val batches = mutableListOf<Int>()
+
+    private fun model(msPerPair: Long): (List<Pair<FloatArray, FloatArray>>) -> List<List<FloatArray>> = { pairs ->
+        batches.add(pairs.size)
+        Thread.sleep(msPerPair * pairs.size)
+        pairs.map { List(InterpolationScheduler.FRAMES_PER_PAIR) { FloatArray(a.size) { MODEL } } }
+    }
+
+    private fun pairs(n: Int) = List(n) { a to b }
+
+    private fun assertModel(frames: List<List<FloatArray>>) {
+        for (pair in frames) for (f in pair) assertEquals(MODEL, f[0], 0f)
+    }
+
+    private fun assertBlended(frames: List<List<FloatArray>>, layout: Latent.Layout) {
+        val expected = LatentBlend.interpolate(a, b, channels, LatentBlend.Mode.SLERP, layout)
+        for (pair in frames) {
+            assertEquals(InterpolationScheduler.FRAMES_PER_PAIR, pair.size)
+            for (k in pair.indices) assertArrayEquals(expected[k], pair[k], 0f)
+        }
+    }
+
+    @Test
+    fun withinBudgetKeepsTheModel() {
+        val s = InterpolationScheduler(model(1), channels, frameBudgetMs = 1000.0)
+        repeat(5) { assertModel(s.interpolatePairs(pairs(2))) }
+        assertEquals(10, s.neuralPairs)
+        assertEquals(0, s.analyticPairs)
+    }
+
+    @Test
+    fun overBudgetBlendsAfterTheFirstMeasurement() {
+        // 30 ms per pair is 10 ms per frame against a 2 ms budget
+        val s = InterpolationScheduler(model(30), channels, frameBudgetMs = 2.0)
+        assertModel(s.interpolatePairs(pairs(1)))
+        val frames = s.interpolatePairs(pairs(3))
+        assertEquals(3, frames.size)
+        assertBlended(frames, Latent.Layout.DHWC)
+        assertEquals(listOf(1), batches)
+        assertEquals(1, s.neuralPairs)
+        assertEquals(3, s.analyticPairs)
+    }
+
+    @Test
+    fun decisionDoesNotDependOnBatchSize() {
+        // 12 ms per pair is 4 ms per frame: inside 10 ms, whether runs hold 1 pair or 8
+        val s = InterpolationScheduler(model(12), channels, frameBudgetMs = 10.0)
+        for (n in listOf(1, 8, 1, 8)) assertModel(s.interpolatePairs(pairs(n)))
+        assertEquals(listOf(1, 8, 1, 8), batches)
+        assertEquals(0, s.analyticPairs)
+        val perFrame = s.neuralMsPerPair / InterpolationScheduler.FRAMES_PER_PAIR
+        assertTrue("ms per frame $perFrame", perFrame in 4.0..10.0)
+    }
+
+    @Test
+    fun probesOnePairEveryProbeEveryBatches() {
+        val s = InterpolationScheduler(model(30), channels, frameBudgetMs = 2.0)
+        s.interpolatePairs(pairs(1))
+        repeat(InterpolationScheduler.PROBE_EVERY - 1) { s.interpolatePairs(pairs(4)) }
+        assertEquals(listOf(1), batches)
+
+        val frames = s.interpolatePairs(pairs(4))
+        assertEquals(listOf(1, 1), batches)
+        assertModel(frames.take(1))
+        assertBlended(frames.drop(1), Latent.Layout.DHWC)
+        assertEquals(2, s.neuralPairs)
+    }
+
+    @Test
+    fun failingModelFallsBackInItsLayout() {
+        var calls = 0
+        val failing: (List<Pair<FloatArray, FloatArray>>) -> List<List<FloatArray>> = {
+            calls++
+            throw IllegalStateException("Model not initialized")
+        }
+        val s = InterpolationScheduler(failing, channels, Latent.Layout.NCDHW)
+        val frames = s.interpolatePairs(pairs(2))
+        assertEquals(2, frames.size)
+        assertBlended(frames, Latent.Layout.NCDHW)
+        assertEquals(0, s.neuralPairs)
+        assertEquals(2, s.analyticPairs)
+
+        // a failed model is only probed from then on
+        repeat(InterpolationScheduler.PROBE_EVERY - 1) { assertBlended(s.interpolatePairs(pairs(1)), Latent.Layout.NCDHW) }
+        assertEquals(1, calls)
+        s.interpolatePairs(pairs(1))
+        assertEquals(2, calls)
+    }
+
+    @Test
+    fun fixedModesIgnoreTheBudget() {
+        val s = InterpolationScheduler(model(30), channels, frameBudgetMs = 2.0, mode = InterpolationScheduler.Mode.NEURAL)
+        repeat(3) { assertModel(s.interpolatePairs(pairs(1))) }
+        s.mode = InterpolationScheduler.Mode.ANALYTIC
+        assertBlended(s.interpolatePairs(pairs(1)), Latent.Layout.DHWC)
+        assertEquals(3, batches.size)
+    }
+
+    companion object {
+        private const val MODEL = 42f
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.decoderapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH cost of the analytic interpolation fallback: one (A, B) pair, three
+ * frames, as Interpolator.interpolateSimple produces them.
+ *
+ * The transformer itself needs the Android runtime; compare against the
+ * "Interpolate" timing on the device, or the "Compare Interpolator vs
+ * Blend" button, which also reports the error of each mode.
+ *
+ * Run main() from the IDE (unit test source set), or
+ * java -cp &lt;test classpath&gt; com.example.decoderapp.LatentBlendBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LatentBlendBenchmark {
+
+    @Param({"64", "128"})
+    public int channels;
+
+    @Param({"LERP", "SLERP"})
+    public LatentBlend.Mode mode;
+
+    private float[] a, b;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random r = new Random(42);
+        a = new float[channels * 64];
+        b = new float[channels * 64];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = (float) r.nextGaussian();
+            b[i] = (float) r.nextGaussian();
+        }
+
+        // endpoints must be reproduced exactly enough, and DHWC output must be a reorder of NCDHW
+        float[] start = LatentBlend.blend(a, b, channels, 0f, mode, Latent.Layout.NCDHW, null);
+        for (int i = 0; i < a.length; i++) {
+            if (Math.abs(start[i] - a[i]) > 1e-4f) throw new IllegalStateException(mode + " at t=0 differs from A");
+        }
+        float[] nc = LatentBlend.blend(a, b, channels, 0.5f, mode, Latent.Layout.NCDHW, null);
+        float[] dhwc = LatentBlend.blend(a, b, channels, 0.5f, mode, Latent.Layout.DHWC, null);
+        if (!Arrays.equals(Latent.reorder(nc, channels, Latent.Layout.NCDHW, null), dhwc)) {
+            throw new IllegalStateException(mode + " DHWC output is not the NCDHW output reordered");
+        }
+    }
+
+    @Benchmark
+    public List<float[]> pair() {
+        return LatentBlend.interpolate(a, b, channels, mode);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(LatentBlendBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
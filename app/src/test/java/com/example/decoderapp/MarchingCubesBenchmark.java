@@ -0,0 +1,221 @@
+package com.example.decoderapp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison: rolling-slice core vs. the original per-cell generate() loop,
+ * and a brick-incremental update when only part of the surface moves.
+ *
+ * Run main() from the IDE (unit test source set), or
+ * java -cp &lt;test classpath&gt; com.example.decoderapp.MarchingCubesBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MarchingCubesBenchmark {
+
+    @Param({"64", "128"})
+    public int res;
+
+    private float[] sdf;
+    /* sdf with the small sphere moved, and the mesher alternating between the two */
+    private float[] moved;
+    private IncrementalMesher state;
+    private boolean flip;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // two overlapping spheres: a human-capture-sized surface through the grid
+        int n = res;
+        sdf = spheres(n, n * 0.70f);
+        moved = spheres(n, n * 0.72f);
+
+        // both paths must produce the same mesh
+        MarchingCubes.Result a = new MarchingCubes(sdf, null, n, n, n, 0.0f).generate();
+        MarchingCubes.Result b = legacyGenerate(sdf, n, n, n, 0.0f);
+        if (!Arrays.equals(a.vertices, b.vertices) || !Arrays.equals(a.faces, b.faces)) {
+            throw new IllegalStateException("rolling-slice output differs from legacy loop");
+        }
+
+        // with threshold 0, an incremental update must match a full remesh of the new frame;
+        // the last frame only changes the voxel plane x = n/2, which two bricks share
+        float[] seam = moved.clone();
+        for (int j = n / 2; j < seam.length; j += n) seam[j] -= 0.5f / n;
+        state = new IncrementalMesher(16, 0.0f);
+        new MarchingCubes(sdf, null, n, n, n, 0.0f).generateIncremental(state);
+        for (float[] frame : new float[][]{moved, seam}) {
+            MarchingCubes.Result inc = new MarchingCubes(frame, null, n, n, n, 0.0f).generateIncremental(state);
+            MarchingCubes.Result full = new MarchingCubes(frame, null, n, n, n, 0.0f).generate();
+            if (state.changedBricks().size() == state.brickCount()
+                    || !Arrays.equals(triangles(inc), triangles(full))) {
+                throw new IllegalStateException("incremental update differs from a full remesh");
+            }
+        }
+        new MarchingCubes(sdf, null, n, n, n, 0.0f).generateIncremental(state);
+    }
+
+    private static float[] spheres(int n, float cx2) {
+        float[] out = new float[n * n * n];
+        float r1 = n * 0.30f, r2 = n * 0.18f;
+        int i = 0;
+        for (int z = 0; z < n; z++)
+            for (int y = 0; y < n; y++)
+                for (int x = 0; x < n; x++) {
+                    float d1 = dist(x, y, z, n * 0.45f, n * 0.50f, n * 0.50f) - r1;
+                    float d2 = dist(x, y, z, cx2, n * 0.40f, n * 0.55f) - r2;
+                    out[i++] = Math.min(d1, d2) / n;
+                }
+        return out;
+    }
+
+    /* triangles as sorted "x,y,z x,y,z x,y,z" keys: brick order and vertex numbering differ */
+    private static String[] triangles(MarchingCubes.Result m) {
+        String[] out = new String[m.faces.length / 3];
+        for (int t = 0; t < out.length; t++) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < 3; k++) {
+                int v = m.faces[t * 3 + k] * 3;
+                sb.append(m.vertices[v]).append(',').append(m.vertices[v + 1]).append(',').append(m.vertices[v + 2]).append(' ');
+            }
+            out[t] = sb.toString();
+        }
+        Arrays.sort(out);
+        return out;
+    }
+
+    private static float dist(int x, int y, int z, float cx, float cy, float cz) {
+        float dx = x - cx, dy = y - cy, dz = z - cz;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Benchmark
+    public MarchingCubes.Result rollingSlices() {
+        return new MarchingCubes(sdf, null, res, res, res, 0.0f).generate();
+    }
+
+    @Benchmark
+    public MarchingCubes.Result incremental() {
+        flip = !flip;
+        return new MarchingCubes(flip ? moved : sdf, null, res, res, res, 0.0f).generateIncremental(state);
+    }
+
+    @Benchmark
+    public MarchingCubes.Result legacyLoop() {
+        return legacyGenerate(sdf, res, res, res, 0.0f);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .include(MarchingCubesBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+
+    /* ---------------------------------------------------------------
+     * Original MarchingCubes.generate() loop, kept verbatim as baseline
+     * --------------------------------------------------------------- */
+    static MarchingCubes.Result legacyGenerate(float[] sdf, int D, int H, int W, float iso) {
+        List<Float> verts = new ArrayList<>();
+        List<Integer> faces = new ArrayList<>();
+
+        for (int z=0; z<D-1; z++) {
+            for (int y=0; y<H-1; y++) {
+                for (int x=0; x<W-1; x++) {
+                    int[] cornerIndex = new int[]{
+                            idx(z, y, x, H, W),
+                            idx(z, y, x+1, H, W),
+                            idx(z, y+1, x+1, H, W),
+                            idx(z, y+1, x, H, W),
+                            idx(z+1, y, x, H, W),
+                            idx(z+1, y, x+1, H, W),
+                            idx(z+1, y+1, x+1, H, W),
+                            idx(z+1, y+1, x, H, W)
+                    };
+                    float[] val = new float[8];
+                    for (int i=0;i<8;i++) val[i] = sdf[cornerIndex[i]];
+
+                    int cubeIndex = 0;
+                    if (val[0] < iso) cubeIndex |= 1;
+                    if (val[1] < iso) cubeIndex |= 2;
+                    if (val[2] < iso) cubeIndex |= 4;
+                    if (val[3] < iso) cubeIndex |= 8;
+                    if (val[4] < iso) cubeIndex |= 16;
+                    if (val[5] < iso) cubeIndex |= 32;
+                    if (val[6] < iso) cubeIndex |= 64;
+                    if (val[7] < iso) cubeIndex |= 128;
+
+                    int edgeMask = MarchingCubes.edgeTable[cubeIndex];
+                    if (edgeMask == 0) continue;
+
+                    float[][] vertList = new float[12][3];
+
+                    if ((edgeMask & 1) != 0)    vertList[0]  = vertInterp(x, y, z,     x+1, y,   z,     val[0], val[1], iso);
+                    if ((edgeMask & 2) != 0)    vertList[1]  = vertInterp(x+1, y, z,   x+1, y+1, z,     val[1], val[2], iso);
+                    if ((edgeMask & 4) != 0)    vertList[2]  = vertInterp(x+1, y+1, z, x,   y+1, z,     val[2], val[3], iso);
+                    if ((edgeMask & 8) != 0)    vertList[3]  = vertInterp(x,   y+1, z, x,   y,   z,     val[3], val[0], iso);
+                    if ((edgeMask & 16) != 0)   vertList[4]  = vertInterp(x,   y,   z+1, x+1, y,   z+1, val[4], val[5], iso);
+                    if ((edgeMask & 32) != 0)   vertList[5]  = vertInterp(x+1, y, z+1, x+1, y+1, z+1, val[5], val[6], iso);
+                    if ((edgeMask & 64) != 0)   vertList[6]  = vertInterp(x+1, y+1,z+1, x,   y+1, z+1, val[6], val[7], iso);
+                    if ((edgeMask & 128) != 0)  vertList[7]  = vertInterp(x,   y+1,z+1, x,   y,   z+1, val[7], val[4], iso);
+                    if ((edgeMask & 256) != 0)  vertList[8]  = vertInterp(x,   y, z,    x,   y,   z+1, val[0], val[4], iso);
+                    if ((edgeMask & 512) != 0)  vertList[9]  = vertInterp(x+1, y, z,   x+1, y,   z+1, val[1], val[5], iso);
+                    if ((edgeMask & 1024) != 0) vertList[10] = vertInterp(x+1, y+1,z,  x+1, y+1,z+1, val[2], val[6], iso);
+                    if ((edgeMask & 2048) != 0) vertList[11] = vertInterp(x,   y+1,z,  x,   y+1, z+1, val[3], val[7], iso);
+
+                    int[] tri = MarchingCubes.triTable[cubeIndex];
+                    for (int t=0; t<tri.length && tri[t]!=-1; t+=3) {
+                        int ia = addVertex(verts, vertList[tri[t]]);
+                        int ib = addVertex(verts, vertList[tri[t+1]]);
+                        int ic = addVertex(verts, vertList[tri[t+2]]);
+                        faces.add(ia); faces.add(ib); faces.add(ic);
+                    }
+                }
+            }
+        }
+
+        float[] vOut = new float[verts.size()];
+        for (int i = 0; i < verts.size(); i++) vOut[i] = verts.get(i);
+
+        int[] fOut = new int[faces.size()];
+        for (int i = 0; i < faces.size(); i++) fOut[i] = faces.get(i);
+
+        return new MarchingCubes.Result(vOut, fOut);
+    }
+
+    private static int idx(int z, int y, int x, int H, int W) { return z*H*W + y*W + x; }
+
+    private static int addVertex(List<Float> vs, float[] p) {
+        int idx = vs.size()/3;
+        vs.add(p[0]); vs.add(p[1]); vs.add(p[2]);
+        return idx;
+    }
+
+    private static float[] vertInterp(int x1,int y1,int z1, int x2,int y2,int z2,
+                                      float v1,float v2, float iso) {
+        float t = (iso - v1) / (v2 - v1 + 1e-12f);
+        float px = x1 + t * (x2 - x1);
+        float py = y1 + t * (y2 - y1);
+        float pz = z1 + t * (z2 - z1);
+        return new float[]{px, py, pz};
+    }
+}
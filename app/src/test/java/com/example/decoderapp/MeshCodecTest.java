@@ -0,0 +1,86 @@
+package com.example.decoderapp;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * decode(encode(mesh)) on a real marching cubes mesh: every face kept,
+ * corners within the quantisation bound, and only exact copies welded.
+ */
+public class MeshCodecTest {
+
+    /* two spheres and a sheet 0.02 voxels thick, whose two faces are far closer than a step */
+    private static MarchingCubes.Result mesh(int n) {
+        float[] sdf = new float[n * n * n];
+        int i = 0;
+        for (int z = 0; z < n; z++)
+            for (int y = 0; y < n; y++)
+                for (int x = 0; x < n; x++) {
+                    float d1 = dist(x, y, z, n * 0.45f, n * 0.50f, n * 0.50f) - n * 0.30f;
+                    float d2 = dist(x, y, z, n * 0.70f, n * 0.40f, n * 0.55f) - n * 0.18f;
+                    float sheet = Math.max(Math.abs(y - n * 0.78f - 0.3f) - 0.01f,
+                            Math.max(Math.abs(x - n * 0.5f), Math.abs(z - n * 0.5f)) - n * 0.25f);
+                    sdf[i++] = Math.min(Math.min(d1, d2), sheet) / n;
+                }
+        return new MarchingCubes(sdf, null, n, n, n, 0.0f).generate();
+    }
+
+    private static float dist(int x, int y, int z, float cx, float cy, float cz) {
+        float dx = x - cx, dy = y - cy, dz = z - cz;
+        return (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    @Test
+    public void roundTripKeepsFacesWithinQuantisationBound() throws Exception {
+        MarchingCubes.Result src = mesh(64);
+        MarchingCubes.Result out = MeshCodec.decode(ByteBuffer.wrap(MeshCodec.encode(src.vertices, src.faces)));
+
+        assertEquals("dropped faces", 0, src.faces.length / 3 - out.faces.length / 3);
+
+        // half a step per axis, plus float rounding of min + q * step
+        float[] bound = new float[3];
+        for (int k = 0; k < 3; k++) {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int v = k; v < src.vertices.length; v += 3) {
+                min = Math.min(min, src.vertices[v]);
+                max = Math.max(max, src.vertices[v]);
+            }
+            bound[k] = (max - min) / 65535 / 2 + Math.ulp(max) * 4;
+        }
+        float maxError = 0;
+        for (int c = 0; c < src.faces.length; c++) {
+            for (int k = 0; k < 3; k++) {
+                float e = Math.abs(out.vertices[out.faces[c] * 3 + k] - src.vertices[src.faces[c] * 3 + k]);
+                assertTrue("corner " + c + " axis " + k + " off by " + e, e <= bound[k]);
+                maxError = Math.max(maxError, e);
+            }
+        }
+        assertTrue(maxError > 0);
+
+        Set<String> points = new HashSet<>();
+        for (int v = 0; v < src.vertices.length; v += 3) {
+            points.add(src.vertices[v] + "," + src.vertices[v + 1] + "," + src.vertices[v + 2]);
+        }
+        assertEquals("vertices after welding", points.size(), out.vertices.length / 3);
+    }
+
+    @Test
+    public void verticesCloserThanAStepStayDistinct() throws Exception {
+        float[] v = {
+                0, 0, 0,   64, 0, 0,   0, 64, 0,
+                32, 32, 1,   32, 32, 1.0001f,
+                64, 64, 64,
+        };
+        int[] f = {0, 1, 3,   1, 2, 4,   3, 4, 5};
+        MarchingCubes.Result out = MeshCodec.decode(ByteBuffer.wrap(MeshCodec.encode(v, f)));
+        assertEquals(6, out.vertices.length / 3);
+        assertEquals(3, out.faces.length / 3);
+        assertTrue(out.faces[6] != out.faces[7]);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.decoderapp;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Sparse extraction must give the dense mesh: same triangles, positions
+ * and normals, for surfaces that cross brick boundaries and grids whose
+ * size is not a multiple of the brick; .sgrid files must read back as written.
+ */
+public class SparseGridTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /*
+     * SDF + offsets (DHWC, 4 channels): a sphere, a wavy plane whose
+     * crossing cells end one voxel short of the brick seam x = 16 (only
+     * their normal stencil reaches the next brick) and a slab one voxel thick
+     */
+    private static float[] grid(int n) {
+        float[] raw = new float[n * n * n * 4];
+        int i = 0;
+        for (int z = 0; z < n; z++)
+            for (int y = 0; y < n; y++)
+                for (int x = 0; x < n; x++, i += 4) {
+                    float dx = x - n * 0.55f, dy = y - n * 0.45f, dz = z - n * 0.5f;
+                    float sphere = (float) Math.sqrt(dx * dx + dy * dy + dz * dz) - n * 0.3f;
+                    float plane = x - 14.5f + 0.25f * (float) Math.sin(y * 0.7f + z * 0.3f);
+                    float slab = Math.abs(z - n * 0.8f) - 0.5f;
+                    raw[i] = Math.min(Math.min(sphere, Math.max(plane, -y + n * 0.6f)), slab);
+                    raw[i + 1] = 0.1f * (float) Math.sin(x + y);
+                    raw[i + 2] = 0.1f * (float) Math.cos(y - z);
+                    raw[i + 3] = 0.05f * (float) Math.sin(x * z);
+                }
+        return raw;
+    }
+
+    /* one sorted "x,y,z/nx,ny,nz ..." key per triangle: sparse output comes brick by brick */
+    private static final class Triangles implements MarchingCubesCore.MeshSink {
+        final List<String> keys = new ArrayList<>();
+
+        @Override
+        public boolean wantsNormals() {
+            return true;
+        }
+
+        @Override
+        public void triangle(float[] pos, float[] nrm, int[] key, int a, int b, int c) {
+            StringBuilder sb = new StringBuilder();
+            for (int e : new int[]{a, b, c}) {
+                sb.append(pos[e * 3]).append(',').append(pos[e * 3 + 1]).append(',').append(pos[e * 3 + 2])
+                        .append('/').append(nrm[e * 3]).append(',').append(nrm[e * 3 + 1]).append(',').append(nrm[e * 3 + 2])
+                        .append(' ');
+            }
+            keys.add(sb.toString());
+        }
+
+        List<String> sorted() {
+            Collections.sort(keys);
+            return keys;
+        }
+    }
+
+    private static List<String> dense(float[] raw, int n, boolean useOffsets) {
+        float[] sdf = new float[n * n * n];
+        float[][] offsets = useOffsets ? new float[n * n * n][] : null;
+        for (int i = 0; i < sdf.length; i++) {
+            sdf[i] = raw[i * 4];
+            if (offsets != null) offsets[i] = new float[]{raw[i * 4 + 1], raw[i * 4 + 2], raw[i * 4 + 3]};
+        }
+        Triangles t = new Triangles();
+        new MarchingCubesCore(sdf, offsets, n, n, n, 0f).march(0, n - 1, t);
+        return t.sorted();
+    }
+
+    private static List<String> sparse(SparseGrid g, boolean useOffsets) {
+        Triangles t = new Triangles();
+        g.march(t, useOffsets);
+        return t.sorted();
+    }
+
+    private static void assertSameMesh(int n, int brick, float band) {
+        float[] raw = grid(n);
+        SparseGrid g = SparseGrid.fromDense(FloatBuffer.wrap(raw), n, n, n, 4, 0f, band, brick);
+        assertTrue("nothing dropped: " + g.stats(), g.activeBricks() < g.totalBricks());
+        for (boolean useOffsets : new boolean[]{false, true}) {
+            List<String> expected = dense(raw, n, useOffsets);
+            List<String> actual = sparse(g, useOffsets);
+            assertEquals("triangle count, n " + n + " brick " + brick + " band " + band,
+                    expected.size(), actual.size());
+            assertEquals("triangles, n " + n + " brick " + brick + " band " + band, expected, actual);
+        }
+    }
+
+    @Test
+    public void sparseMatchesDenseAcrossBrickSeams() {
+        assertSameMesh(48, 8, 0f);
+    }
+
+    @Test
+    public void sparseMatchesDenseWithPartialBricks() {
+        assertSameMesh(45, 8, 0f);
+        assertSameMesh(41, 5, 0f);
+    }
+
+    @Test
+    public void sparseMatchesDenseWithBand() {
+        assertSameMesh(48, 8, 2f);
+    }
+
+    @Test
+    public void generateSparseMatchesGenerate() {
+        float[] raw = grid(40);
+        float[] sdf = new float[40 * 40 * 40];
+        for (int i = 0; i < sdf.length; i++) sdf[i] = raw[i * 4];
+        MarchingCubes.Result d = new MarchingCubes(sdf, null, 40, 40, 40, 0f).generate();
+        MarchingCubes.Result s = MarchingCubes.generateSparse(
+                SparseGrid.fromDense(FloatBuffer.wrap(raw), 40, 40, 40, 4, 0f, 0f, 8));
+        assertEquals(d.vertices.length, s.vertices.length);
+        assertEquals(d.faces.length, s.faces.length);
+    }
+
+    @Test
+    public void writeOpenRoundTrip() throws IOException {
+        int n = 45;
+        SparseGrid g = SparseGrid.fromDense(FloatBuffer.wrap(grid(n)), n, n, n, 4, 0f, 1f, 8);
+        File f = tmp.newFile("grid.sgrid");
+        g.write(f);
+
+        SparseGrid back = SparseGrid.open(f);
+        assertEquals(n, back.depth());
+        assertEquals(n, back.height());
+        assertEquals(n, back.width());
+        assertEquals(4, back.channels());
+        assertEquals(8, back.brickSize());
+        assertEquals(g.activeBricks(), back.activeBricks());
+        assertEquals(g.sizeBytes(), back.sizeBytes());
+        assertArrayEquals(g.toDense(), back.toDense(), 0f);
+        assertEquals(sparse(g, true), sparse(back, true));
+    }
+
+    @Test
+    public void truncatedFileIsRejected() throws IOException {
+        int n = 24;
+        File f = tmp.newFile("short.sgrid");
+        SparseGrid.fromDense(FloatBuffer.wrap(grid(n)), n, n, n, 4, 0f, 0f, 8).write(f);
+        try (RandomAccessFile raf = new RandomAccessFile(f, "rw")) {
+            raf.setLength(raf.length() - 4);
+        }
+        try {
+            SparseGrid.open(f);
+            fail("truncated file opened");
+        } catch (IOException expected) {
+            // data past end of file
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.decoderapp
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * Level / interval scheduling, exact off-grid times and the cache byte
+ * bound. Every latent is filled with its own time and the fake model
+ * lerps, so a frame's values tell which time it really holds.
+ */
+class TemporalUpsamplerTest {
+
+    private val channels = 64
+    private val frameBytes = channels * Latent.SPATIAL * 4L
+
+    /* model stand-in: records each batch as (start, end) time pairs */
+    private val batches = mutableListOf<List<Pair<Float, Float>>>()
+
+    private fun model(pairs: List<Pair<FloatArray, FloatArray>>): List<List<FloatArray>> {
+        batches.add(pairs.map { it.first[0] to it.second[0] })
+        return pairs.map { (a, b) -> listOf(0.25f, 0.5f, 0.75f).map { t -> FloatArray(a.size) { a[it] + t * (b[it] - a[it]) } } }
+    }
+
+    private fun keyframes(n: Int) = List(n) { i -> FloatArray(channels * Latent.SPATIAL) { i.toFloat() } }
+
+    private fun upsampler(n: Int, tolerance: Double = TemporalUpsampler.DEFAULT_TOLERANCE,
+                          cacheBytes: Long = TemporalUpsampler.DEFAULT_CACHE_BYTES) =
+        TemporalUpsampler(keyframes(n), ::model, tolerance, maxCacheBytes = cacheBytes)
+
+    @Test
+    fun levelAndIntervalOfKeys() {
+        val up = upsampler(2)
+        val span = TemporalUpsampler.SPAN
+        assertEquals(0, up.levelOf(0))
+        assertEquals(1, up.levelOf(span / 2))
+        assertEquals(1, up.levelOf(span * 3 / 4))
+        assertEquals(2, up.levelOf(span / 16))
+        assertEquals(2, up.levelOf(span * 5 / 16))
+        assertEquals(TemporalUpsampler.MAX_LEVEL, up.levelOf(1))
+        assertEquals(span, up.widthOf(1))
+        assertEquals(span / 4, up.widthOf(2))
+        assertEquals(4, up.widthOf(TemporalUpsampler.MAX_LEVEL))
+    }
+
+    @Test
+    fun fourTimesIsOneBatchOfOneRunPerInterval() {
+        val up = upsampler(3)
+        val frames = up.upsample(4)
+        assertEquals(9, frames.size)
+        assertEquals(listOf(listOf(0f to 1f, 1f to 2f)), batches)
+        assertEquals(2, up.modelRuns)
+        for (f in frames) {
+            assertEquals(f.requested, f.time, 0.0)
+            assertEquals(f.time.toFloat(), f.latent[0], 0f)
+            assertFalse(f.blended)
+        }
+    }
+
+    @Test
+    fun deeperLevelsRunOnTheEnclosingInterval() {
+        val up = upsampler(2)
+        val f = up.at(listOf(5.0 / 16)).single()
+        // 5/16 is on level 2: run (0, 1) for 1/4 and 1/2, then (1/4, 1/2)
+        assertEquals(listOf(listOf(0f to 1f), listOf(0.25f to 0.5f)), batches)
+        assertEquals(5f / 16, f.latent[0], 0f)
+
+        // 16× reuses both runs: level 1 has nothing left, level 2 runs the other three quarters
+        batches.clear()
+        up.upsample(16)
+        assertEquals(listOf(listOf(0f to 0.25f, 0.5f to 0.75f, 0.75f to 1f)), batches)
+        assertEquals(5, up.modelRuns)
+    }
+
+    @Test
+    fun offGridTimesAreExactAndEvenlySpaced() {
+        val up = upsampler(3)
+        val frames = up.resample(TemporalUpsampler.ratio(30.0, 90.0))
+        assertEquals(7, frames.size)
+        assertEquals(2, up.modelRuns)   // quarter frames only: one run per interval
+        for ((k, f) in frames.withIndex()) {
+            assertEquals(k / 3.0, f.requested, 1e-12)
+            assertEquals(f.requested, f.time, 0.0)
+            assertEquals(f.requested.toFloat(), f.latent[0], 1e-6f)
+            assertEquals(k % 3 != 0, f.blended)
+        }
+    }
+
+    @Test
+    fun snappingIsOptIn() {
+        val exact = upsampler(2).at(listOf(1.0 / 3)).single()
+        assertTrue(exact.blended)
+        assertEquals(1.0 / 3, exact.time, 0.0)
+
+        val snapped = upsampler(2, tolerance = 1.0 / 32).at(listOf(1.0 / 3)).single()
+        assertFalse(snapped.blended)
+        assertEquals(5.0 / 16, snapped.time, 0.0)   // coarsest reachable time within 1/32
+        assertEquals(5f / 16, snapped.latent[0], 0f)
+    }
+
+    @Test
+    fun cacheStaysWithinItsByteBound() {
+        val bound = 10 * frameBytes
+        val up = upsampler(9, cacheBytes = bound)
+        val frames = up.upsample(16)
+        assertEquals(8 * 16 + 1, frames.size)
+        for (f in frames) assertEquals(f.time.toFloat(), f.latent[0], 0f)
+        assertTrue("${up.cachedBytes} > $bound", up.cachedBytes <= bound)
+        assertEquals(10, up.cachedFrames)
+
+        // the most recently used frames survive: the tail of the last interval needs no run
+        val runs = up.modelRuns
+        up.at(listOf(8 - 1.0 / 16))
+        assertEquals(runs, up.modelRuns)
+    }
+
+    @Test
+    fun zeroCacheStillAnswersEachRequest() {
+        val up = upsampler(3, cacheBytes = 0)
+        val frames = up.upsample(16)
+        for (f in frames) assertEquals(f.time.toFloat(), f.latent[0], 0f)
+        assertEquals(0L, up.cachedBytes)
+        assertEquals(0, up.cachedFrames)
+    }
+}